@@ -0,0 +1,134 @@
+/*******************************************************************************
+ * Copyright 2018
+ * Language Technology Lab
+ * University of Duisburg-Essen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package de.unidue.ltl.recommender.core.features;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.uima.fit.descriptor.ConfigurationParameter;
+import org.apache.uima.jcas.JCas;
+import org.dkpro.tc.api.exception.TextClassificationException;
+import org.dkpro.tc.api.features.Feature;
+import org.dkpro.tc.api.features.FeatureExtractor;
+import org.dkpro.tc.api.features.FeatureExtractorResource_ImplBase;
+import org.dkpro.tc.api.features.FeatureType;
+import org.dkpro.tc.api.type.TextClassificationTarget;
+
+/**
+ * Character n-grams of the target which are hashed into a fixed number of buckets instead of
+ * being looked up in a top-k vocabulary. No counting pass over the training data is required and
+ * the model does not carry a vocabulary. Each n-gram adds +1 or -1 (sign hashing) to its bucket,
+ * which reduces the bias introduced by collisions. Only non-zero buckets are emitted.
+ */
+public class HashedCharacterNGram
+    extends FeatureExtractorResource_ImplBase
+    implements FeatureExtractor
+{
+    public static final String PARAM_NGRAM_MIN_N = "hashedNgramMinN";
+    @ConfigurationParameter(name = PARAM_NGRAM_MIN_N, mandatory = true, defaultValue = "2")
+    private int ngramMinN;
+
+    public static final String PARAM_NGRAM_MAX_N = "hashedNgramMaxN";
+    @ConfigurationParameter(name = PARAM_NGRAM_MAX_N, mandatory = true, defaultValue = "4")
+    private int ngramMaxN;
+
+    public static final String PARAM_NGRAM_LOWER_CASE = "hashedNgramLowerCase";
+    @ConfigurationParameter(name = PARAM_NGRAM_LOWER_CASE, mandatory = true, defaultValue = "true")
+    private boolean lowerCase;
+
+    public static final String PARAM_NUMBER_OF_BUCKETS = "hashedNgramBuckets";
+    @ConfigurationParameter(name = PARAM_NUMBER_OF_BUCKETS, mandatory = true, defaultValue = "4096")
+    private int buckets;
+
+    public static final String PARAM_SIGNED_HASHING = "hashedNgramSigned";
+    @ConfigurationParameter(name = PARAM_SIGNED_HASHING, mandatory = true, defaultValue = "true")
+    private boolean signed;
+
+    public static final String FEATURE_PREFIX = "hcng_";
+
+    private static final int SIGN_SEED = 0x9747b28c;
+
+    @Override
+    public Set<Feature> extract(JCas aView, TextClassificationTarget aTarget)
+        throws TextClassificationException
+    {
+        String text = aTarget.getCoveredText();
+        if (lowerCase) {
+            text = text.toLowerCase();
+        }
+        // same boundary markers as DKPro TC's CharacterNGram
+        text = "^" + text + "$";
+
+        int maxNgrams = 0;
+        for (int n = ngramMinN; n <= ngramMaxN; n++) {
+            maxNgrams += Math.max(0, text.length() - n + 1);
+        }
+
+        // bucket and sign are packed into one int each, sorting groups equal buckets
+        int[] hashed = new int[maxNgrams];
+        int k = 0;
+        for (int n = ngramMinN; n <= ngramMaxN; n++) {
+            for (int i = 0; i + n <= text.length(); i++) {
+                int h = hash(text, i, i + n);
+                int bucket = Math.floorMod(mix(h), buckets);
+                int sign = !signed || (mix(h ^ SIGN_SEED) & 1) == 0 ? 0 : 1;
+                hashed[k++] = bucket << 1 | sign;
+            }
+        }
+        Arrays.sort(hashed, 0, k);
+
+        Set<Feature> features = new HashSet<>();
+        int i = 0;
+        while (i < k) {
+            int bucket = hashed[i] >>> 1;
+            int value = 0;
+            while (i < k && hashed[i] >>> 1 == bucket) {
+                value += (hashed[i] & 1) == 0 ? 1 : -1;
+                i++;
+            }
+            if (value != 0) {
+                features.add(new Feature(FEATURE_PREFIX + bucket, value,
+                        FeatureType.NUMERIC_INTEGER));
+            }
+        }
+        return features;
+    }
+
+    private static int hash(String s, int begin, int end)
+    {
+        // String.hashCode() on the substring, without creating it
+        int h = 0;
+        for (int i = begin; i < end; i++) {
+            h = 31 * h + s.charAt(i);
+        }
+        return h;
+    }
+
+    private static int mix(int h)
+    {
+        // finalizer of MurmurHash3
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
@@ -0,0 +1,406 @@
+/*******************************************************************************
+ * Copyright 2018
+ * Language Technology Lab
+ * University of Duisburg-Essen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package de.unidue.ltl.recommender.core.predict;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.uima.UimaContext;
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.Type;
+import org.apache.uima.cas.TypeSystem;
+import org.apache.uima.cas.text.AnnotationFS;
+import org.apache.uima.fit.component.JCasAnnotator_ImplBase;
+import org.apache.uima.fit.descriptor.ConfigurationParameter;
+import org.apache.uima.fit.factory.AnalysisEngineFactory;
+import org.apache.uima.fit.util.CasUtil;
+import org.apache.uima.fit.util.JCasUtil;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.util.CasCopier;
+import org.apache.uima.util.CasCreationUtils;
+import org.dkpro.tc.api.type.TextClassificationOutcome;
+import org.dkpro.tc.api.type.TextClassificationSequence;
+import org.dkpro.tc.api.type.TextClassificationTarget;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.tudarmstadt.ukp.dkpro.core.api.metadata.type.DocumentMetaData;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
+
+/**
+ * Labels the sequences of a document with the model on several threads. The
+ * {@link TextClassificationSequence}s are partitioned into one contiguous shard per thread of
+ * about the same length. Each shard is copied into a CAS of its own with the annotations it
+ * covers, the shards are labeled on a {@link ForkJoinPool} with one model instance per thread and
+ * the outcomes are copied back into the document afterwards. Copying happens on the calling
+ * thread, the document CAS is never accessed concurrently.
+ * <p>
+ * The context features read the targets next to a token across sequence boundaries. Each shard
+ * therefore also receives the {@link SentenceLabelMemo#CONTEXT_TOKENS} targets before and after
+ * it, with their tokens. These are in no sequence of the shard and are not labeled, so the labels
+ * do not depend on the number of threads.
+ * <p>
+ * Model instances are pooled per model version across documents and requests, a model is loaded
+ * at most once per thread which labels with it concurrently. Documents with too few targets to
+ * fill two shards are labeled directly with a single model instance, like in the sequential
+ * pipeline.
+ */
+public class ParallelSequenceLabeler
+    extends JCasAnnotator_ImplBase
+{
+    public static final String PARAM_TC_MODEL_LOCATION = "tcModel";
+    @ConfigurationParameter(name = PARAM_TC_MODEL_LOCATION, mandatory = true)
+    private File model;
+
+    /**
+     * Number of threads and model instances, 0 (default) uses one per available processor
+     */
+    public static final String PARAM_THREADS = "threads";
+    @ConfigurationParameter(name = PARAM_THREADS, mandatory = true, defaultValue = "0")
+    private int threads;
+
+    /**
+     * Minimum number of targets in a shard, smaller shards do not pay off the copying
+     */
+    public static final String PARAM_MIN_TARGETS_PER_SHARD = "minTargetsPerShard";
+    @ConfigurationParameter(name = PARAM_MIN_TARGETS_PER_SHARD, mandatory = true, defaultValue = "500")
+    private int minTargetsPerShard;
+
+    private static final Logger logger = LoggerFactory
+            .getLogger(ParallelSequenceLabeler.class.getName());
+
+    /** number of model versions whose idle instances are kept */
+    static final int MAX_POOLED_MODELS = 4;
+
+    /** idle model instances by model version, the least recently used versions are dropped */
+    private static final Map<String, Deque<AnalysisEngine>> pooledEngines =
+            new LinkedHashMap<String, Deque<AnalysisEngine>>(16, 0.75f, true)
+    {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Deque<AnalysisEngine>> eldest)
+        {
+            if (size() <= MAX_POOLED_MODELS) {
+                return false;
+            }
+            destroyAll(eldest.getValue());
+            return true;
+        }
+    };
+
+    private static final AtomicLong labelings = new AtomicLong();
+
+    private JCas[] shards;
+    private TypeSystem shardTypeSystem;
+    private ForkJoinPool pool;
+
+    @Override
+    public void initialize(final UimaContext context) throws ResourceInitializationException
+    {
+        super.initialize(context);
+        if (threads <= 0) {
+            threads = Runtime.getRuntime().availableProcessors();
+        }
+        shards = new JCas[threads];
+        pool = new ForkJoinPool(threads);
+        logger.debug("Labeling with up to [" + threads + "] threads");
+    }
+
+    @Override
+    public void process(JCas aJCas) throws AnalysisEngineProcessException
+    {
+        List<TextClassificationSequence> sequences = new ArrayList<>(
+                JCasUtil.select(aJCas, TextClassificationSequence.class));
+        int targets = aJCas.getAnnotationIndex(TextClassificationTarget.type).size();
+        int numShards = Math.min(Math.min(threads, sequences.size()),
+                targets / Math.max(1, minTargetsPerShard));
+        if (numShards <= 1) {
+            label(aJCas);
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        int[] bounds = partition(sequences, numShards);
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int i = 0; i < numShards; i++) {
+            JCas shard = shard(aJCas, i, sequences.get(bounds[i]),
+                    sequences.get(bounds[i + 1] - 1));
+            tasks.add(() -> {
+                AnalysisEngine engine = borrowEngine(model);
+                try {
+                    engine.process(shard);
+                }
+                finally {
+                    returnEngine(model, engine);
+                }
+                return null;
+            });
+        }
+
+        for (Future<Void> f : pool.invokeAll(tasks)) {
+            try {
+                f.get();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new AnalysisEngineProcessException(e);
+            }
+            catch (ExecutionException e) {
+                throw new AnalysisEngineProcessException(e.getCause());
+            }
+        }
+
+        for (int i = 0; i < numShards; i++) {
+            int begin = sequences.get(bounds[i]).getBegin();
+            int end = sequences.get(bounds[i + 1] - 1).getEnd();
+            copyOutcomes(shards[i], aJCas, begin, end);
+        }
+        // the model provider does not retain the targets, neither do the shards
+        aJCas.getCas().getIndexRepository().removeAllIncludingSubtypes(
+                CasUtil.getType(aJCas.getCas(), TextClassificationTarget.class));
+
+        logger.debug("Labeled [" + sequences.size() + "] sequences with [" + targets
+                + "] targets in [" + numShards + "] shards in ["
+                + (System.currentTimeMillis() - start) + "] ms");
+    }
+
+    /**
+     * Splits the sequences into contiguous shards of about the same number of characters
+     *
+     * @return the index of the first sequence of each shard followed by the number of sequences
+     */
+    static int[] partition(List<TextClassificationSequence> sequences, int numShards)
+    {
+        long total = 0;
+        for (TextClassificationSequence s : sequences) {
+            total += s.getEnd() - s.getBegin();
+        }
+
+        int[] bounds = new int[numShards + 1];
+        int shard = 1;
+        long length = 0;
+        for (int i = 0; i < sequences.size() && shard < numShards; i++) {
+            length += sequences.get(i).getEnd() - sequences.get(i).getBegin();
+            // leave at least one sequence for each remaining shard
+            if (length * numShards >= total * shard
+                    || sequences.size() - (i + 1) == numShards - shard) {
+                bounds[shard++] = i + 1;
+            }
+        }
+        bounds[numShards] = sequences.size();
+        return bounds;
+    }
+
+    /**
+     * Labels the document with a single pooled model instance. The context features of DKPro TC
+     * cache the targets of the last document by its id, which is made unique for the call as the
+     * instance may have seen a document of the same id before.
+     */
+    private void label(JCas aJCas) throws AnalysisEngineProcessException
+    {
+        DocumentMetaData metadata = JCasUtil.exists(aJCas, DocumentMetaData.class)
+                ? DocumentMetaData.get(aJCas) : null;
+        String documentId = metadata != null ? metadata.getDocumentId() : null;
+        if (metadata != null) {
+            metadata.setDocumentId(uniqueDocumentId(documentId));
+        }
+
+        AnalysisEngine engine = borrowEngine(model);
+        try {
+            engine.process(aJCas);
+        }
+        finally {
+            returnEngine(model, engine);
+            if (metadata != null) {
+                metadata.setDocumentId(documentId);
+            }
+        }
+    }
+
+    private static String uniqueDocumentId(String documentId)
+    {
+        return documentId + "#" + labelings.incrementAndGet();
+    }
+
+    private static String modelVersion(File model)
+    {
+        return model.getAbsolutePath() + "@" + model.lastModified();
+    }
+
+    private static AnalysisEngine borrowEngine(File model) throws AnalysisEngineProcessException
+    {
+        synchronized (pooledEngines) {
+            Deque<AnalysisEngine> idle = pooledEngines.get(modelVersion(model));
+            if (idle != null && !idle.isEmpty()) {
+                return idle.pop();
+            }
+        }
+
+        try {
+            logger.debug("Loading an instance of model [" + model.getAbsolutePath() + "]");
+            return AnalysisEngineFactory
+                    .createEngine(PredictionWithModel.getModelAnnotator(model));
+        }
+        catch (ResourceInitializationException e) {
+            throw new AnalysisEngineProcessException(e);
+        }
+    }
+
+    /**
+     * Keeps an instance for the next document unless the pool of the model is full. The
+     * instances of other versions of the same model folder are dropped.
+     */
+    private static void returnEngine(File model, AnalysisEngine engine)
+    {
+        String version = modelVersion(model);
+        String folder = model.getAbsolutePath() + "@";
+        synchronized (pooledEngines) {
+            Iterator<Map.Entry<String, Deque<AnalysisEngine>>> it = pooledEngines.entrySet()
+                    .iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, Deque<AnalysisEngine>> e = it.next();
+                if (e.getKey().startsWith(folder) && !e.getKey().equals(version)) {
+                    destroyAll(e.getValue());
+                    it.remove();
+                }
+            }
+
+            Deque<AnalysisEngine> idle = pooledEngines.computeIfAbsent(version,
+                    k -> new ArrayDeque<>());
+            if (idle.size() < Runtime.getRuntime().availableProcessors()) {
+                idle.push(engine);
+                return;
+            }
+        }
+        engine.destroy();
+    }
+
+    private static void destroyAll(Deque<AnalysisEngine> engines)
+    {
+        for (AnalysisEngine engine : engines) {
+            engine.destroy();
+        }
+        engines.clear();
+    }
+
+    /**
+     * Fills the CAS of a shard with the document text and metadata, copies of all annotations
+     * in the range of the shard and the targets and tokens of the context before and after it
+     */
+    private JCas shard(JCas aJCas, int i, TextClassificationSequence firstSequence,
+            TextClassificationSequence lastSequence)
+        throws AnalysisEngineProcessException
+    {
+        int begin = firstSequence.getBegin();
+        int end = lastSequence.getEnd();
+        try {
+            if (shardTypeSystem != aJCas.getTypeSystem()) {
+                shardTypeSystem = aJCas.getTypeSystem();
+                for (int j = 0; j < shards.length; j++) {
+                    shards[j] = null;
+                }
+            }
+            if (shards[i] == null) {
+                shards[i] = CasCreationUtils.createCas(shardTypeSystem, null, null, null)
+                        .getJCas();
+            }
+        }
+        catch (Exception e) {
+            throw new AnalysisEngineProcessException(e);
+        }
+
+        JCas shard = shards[i];
+        shard.reset();
+        shard.setDocumentText(aJCas.getDocumentText());
+        shard.setDocumentLanguage(aJCas.getDocumentLanguage());
+        if (JCasUtil.exists(aJCas, DocumentMetaData.class)) {
+            DocumentMetaData copy = DocumentMetaData.copy(aJCas, shard);
+            copy.setDocumentId(uniqueDocumentId(copy.getDocumentId()));
+        }
+
+        CAS source = aJCas.getCas();
+        CAS target = shard.getCas();
+        Type documentAnnotation = source.getDocumentAnnotation().getType();
+        CasCopier copier = new CasCopier(source, target);
+        for (AnnotationFS a : CasUtil.selectCovered(source, source.getAnnotationType(), begin,
+                end)) {
+            if (a.getType() == documentAnnotation) {
+                continue;
+            }
+            target.addFsToIndexes(copier.copyFs(a));
+        }
+
+        List<TextClassificationTarget> context = new ArrayList<>();
+        context.addAll(JCasUtil.selectPreceding(aJCas, TextClassificationTarget.class,
+                firstSequence, SentenceLabelMemo.CONTEXT_TOKENS));
+        context.addAll(JCasUtil.selectFollowing(aJCas, TextClassificationTarget.class,
+                lastSequence, SentenceLabelMemo.CONTEXT_TOKENS));
+        for (TextClassificationTarget t : context) {
+            target.addFsToIndexes(copier.copyFs(t));
+            for (Token token : JCasUtil.selectCovered(aJCas, Token.class, t)) {
+                target.addFsToIndexes(copier.copyFs(token));
+            }
+        }
+        return shard;
+    }
+
+    /**
+     * Sets the labels of the outcomes in the shard on the outcomes at the same offsets in the
+     * document. Both are visited in index order.
+     */
+    private static void copyOutcomes(JCas shard, JCas aJCas, int begin, int end)
+    {
+        Iterator<TextClassificationOutcome> outcomes = JCasUtil
+                .selectCovered(aJCas, TextClassificationOutcome.class, begin, end).iterator();
+        TextClassificationOutcome outcome = outcomes.hasNext() ? outcomes.next() : null;
+        for (TextClassificationOutcome labeled : JCasUtil.select(shard,
+                TextClassificationOutcome.class)) {
+            while (outcome != null && outcome.getBegin() < labeled.getBegin()) {
+                outcome = outcomes.hasNext() ? outcomes.next() : null;
+            }
+            if (outcome != null && outcome.getBegin() == labeled.getBegin()
+                    && outcome.getEnd() == labeled.getEnd()) {
+                outcome.setOutcome(labeled.getOutcome());
+                outcome = outcomes.hasNext() ? outcomes.next() : null;
+            }
+        }
+    }
+
+    @Override
+    public void destroy()
+    {
+        // the model instances stay in the pool
+        pool.shutdown();
+        super.destroy();
+    }
+}
@@ -0,0 +1,102 @@
+/*******************************************************************************
+ * Copyright 2018
+ * Language Technology Lab
+ * University of Duisburg-Essen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package de.unidue.ltl.recommender.core.predict;
+
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
+
+/**
+ * Part of a document which is labeled, given either as character offsets or as sentence
+ * indices. Both bounds are inclusive-exclusive, a sentence is labeled if it overlaps the range.
+ */
+public class PredictionRange
+{
+    private final int begin;
+    private final int end;
+    private final boolean sentences;
+
+    PredictionRange(int begin, int end, boolean sentences)
+    {
+        if (begin < 0 || end < begin) {
+            throw new IllegalArgumentException(
+                    "Invalid range [" + begin + "] to [" + end + "]");
+        }
+        this.begin = begin;
+        this.end = end;
+        this.sentences = sentences;
+    }
+
+    public static PredictionRange characters(int begin, int end)
+    {
+        return new PredictionRange(begin, end, false);
+    }
+
+    public static PredictionRange sentences(int first, int end)
+    {
+        return new PredictionRange(first, end, true);
+    }
+
+    public int getBegin()
+    {
+        return begin;
+    }
+
+    public int getEnd()
+    {
+        return end;
+    }
+
+    public boolean isSentences()
+    {
+        return sentences;
+    }
+
+    /**
+     * @param s
+     *          a sentence
+     * @param index
+     *          the index of the sentence in the document
+     * @return whether the sentence overlaps the range
+     */
+    boolean overlaps(Sentence s, int index)
+    {
+        if (sentences) {
+            return index >= begin && index < end;
+        }
+        return s.getEnd() > begin && s.getBegin() < end;
+    }
+
+    /**
+     * Reads the range from the parameters of an annotator
+     *
+     * @return the range or null if the parameters do not define one
+     */
+    static PredictionRange fromParameters(int begin, int end, boolean sentences)
+    {
+        if (begin < 0) {
+            return null;
+        }
+        return new PredictionRange(begin, end, sentences);
+    }
+
+    @Override
+    public String toString()
+    {
+        return (sentences ? "sentences" : "characters") + " [" + begin + "] to [" + end + "]";
+    }
+}
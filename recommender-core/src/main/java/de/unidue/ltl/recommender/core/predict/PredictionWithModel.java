@@ -35,6 +35,8 @@ import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
 import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
 import de.tudarmstadt.ukp.dkpro.core.io.bincas.BinaryCasReader;
 import de.unidue.ltl.recommender.core.DKProTcSkeleton;
+import de.unidue.ltl.recommender.core.util.ModelMetadata;
+import de.unidue.ltl.recommender.core.util.SequenceWindows;
 
 public class PredictionWithModel
     extends DKProTcSkeleton
@@ -43,6 +45,10 @@ public class PredictionWithModel
             .getLogger(PredictionWithModel.class.getName());
 
     File predictionOutput;
+    PredictionRange range;
+    boolean skipAnnotatedTokens = false;
+    boolean crossSentence = false;
+    int threads = 1;
 
     public PredictionWithModel(File resultFolder) throws Exception
     {
@@ -50,6 +56,55 @@ public class PredictionWithModel
         predictionOutput = resultFolder;
     }
 
+    /**
+     * Restricts the following runs to the sentences which overlap the range. Sentences outside
+     * the range are neither sent to the model nor receive predictions.
+     *
+     * @param range
+     *          the range or null to label the whole document
+     */
+    public void setRange(PredictionRange range)
+    {
+        this.range = range;
+    }
+
+    /**
+     * Does not send sentences to the model which are completely annotated with a value of the
+     * target feature and omits predictions for annotated tokens from the result.
+     *
+     * @param skipAnnotatedTokens
+     *          true to skip annotated tokens, false (default) labels all tokens
+     */
+    public void setSkipAnnotatedTokens(boolean skipAnnotatedTokens)
+    {
+        this.skipAnnotatedTokens = skipAnnotatedTokens;
+    }
+
+    /**
+     * Packs consecutive sentences into one sequence. The {@link SentenceLabelMemo} is not used in
+     * this case as the labels of a sentence depend on its neighbours.
+     *
+     * @param crossSentence
+     *          true to label across sentence boundaries, false (default) labels each sentence on
+     *          its own
+     */
+    public void setCrossSentence(boolean crossSentence)
+    {
+        this.crossSentence = crossSentence;
+    }
+
+    /**
+     * Labels the sequences of a document on several threads, see
+     * {@link ParallelSequenceLabeler}. Each thread holds a model instance of its own.
+     *
+     * @param threads
+     *          number of threads, 1 (default) labels sequentially, 0 uses all processors
+     */
+    public void setThreads(int threads)
+    {
+        this.threads = threads;
+    }
+
     @Override
     public void run(String[] cas, String typesystem, String annotationName,
             String annotationFieldName, File model, String anchoringMode)
@@ -59,32 +114,64 @@ public class PredictionWithModel
 
         TypeSystemDescription typeSystem = prepare(cas, typesystem);
 
+        ModelMetadata metadata = ModelMetadata.load(model);
+        logger.debug("Model [" + model.getAbsolutePath() + "] was trained with profile ["
+                + metadata.get(ModelMetadata.KEY_PROFILE, "unknown") + "]");
+
+        // models without a recorded length were trained on whole sentences
+        int sequenceLength = metadata.getInt(ModelMetadata.KEY_MAX_SEQUENCE_LENGTH,
+                SequenceWindows.UNLIMITED);
+
         startPrediction(binCasInputFolder, typeSystem, model,
-                getResultWriter(anchoringMode, annotationName, annotationFieldName));
+                getResultWriter(anchoringMode, annotationName, annotationFieldName, metadata),
+                crossSentence ? null : modelVersion(model, anchoringMode, sequenceLength),
+                annotationName,
+                annotationFieldName, sequenceLength);
 
         cleanUp();
     }
 
+    /**
+     * In the "tokens" mode the per-token outcomes are decoded into one annotation per span with
+     * the label scheme the model was trained with. Models without a label scheme predict the
+     * plain value per token, runs of equal values are merged in this case.
+     */
     private AnalysisEngineDescription getResultWriter(String mode, String annotationName,
-            String annotationFieldName)
+            String annotationFieldName, ModelMetadata metadata)
         throws ResourceInitializationException
     {
         if(mode.equals("singleToken")) {
             return getSingleTokenLevelResultWriter(annotationName, annotationFieldName);
         }else if (mode.equals("tokens")) {
-            return getSingleTokenLevelResultWriter(annotationName, annotationFieldName);
+            return getMultiTokenSpanLevelResultWriter(annotationName, annotationFieldName,
+                    metadata.get(ModelMetadata.KEY_LABEL_SCHEME,
+                            TokenResultWriterAnnotator.LABEL_SCHEME_NONE));
         }
         throw new IllegalStateException("Received mode [" + mode
                 + "] which is not implemented - don't know what to do - failing");
     }
 
+    /**
+     * Identifies the model in the {@link SentenceLabelMemo}. Models in the repository are stored
+     * in a folder per version, the anchoring mode and sequence length are added as the same model
+     * might be used with different settings.
+     */
+    private static String modelVersion(File model, String anchoringMode, int sequenceLength)
+    {
+        return model.getAbsolutePath() + "@" + model.lastModified() + "/" + anchoringMode + "/"
+                + sequenceLength;
+    }
+
     private void startPrediction(File casPredictOutput, TypeSystemDescription typeSystem,
-            File model, AnalysisEngineDescription resultWriter)
+            File model, AnalysisEngineDescription resultWriter, String modelVersion,
+            String annotationName, String annotationFieldName, int sequenceLength)
         throws Exception
     {
 
         logger.info("Start prediction pipeline with model [" + model.getAbsolutePath()
-                + "], results will be stored at [" + predictionOutput.getAbsolutePath() + "]");
+                + "], results will be stored at [" + predictionOutput.getAbsolutePath() + "]"
+                + (range != null ? ", restricted to " + range : "") + ", sequences of at most ["
+                + sequenceLength + "] tokens" + (crossSentence ? " across sentences" : ""));
 
         CollectionReaderDescription reader = CollectionReaderFactory.createReaderDescription(
                 BinaryCasReader.class, BinaryCasReader.PARAM_MERGE_TYPE_SYSTEM, true,
@@ -92,21 +179,62 @@ public class PredictionWithModel
                 BinaryCasReader.PARAM_SOURCE_LOCATION, casPredictOutput.getAbsoluteFile(),
                 BinaryCasReader.PARAM_PATTERNS, "*.bin");
 
-        AnalysisEngineDescription tcAnnotation = AnalysisEngineFactory
-                .createEngineDescription(TargetSetterAnnotator.class);
+        AnalysisEngineDescription tcAnnotation = AnalysisEngineFactory.createEngineDescription(
+                TargetSetterAnnotator.class,
+                TargetSetterAnnotator.PARAM_MODEL_VERSION, modelVersion,
+                TargetSetterAnnotator.PARAM_RANGE_BEGIN, rangeBegin(),
+                TargetSetterAnnotator.PARAM_RANGE_END, rangeEnd(),
+                TargetSetterAnnotator.PARAM_RANGE_IN_SENTENCES, rangeInSentences(),
+                TargetSetterAnnotator.PARAM_SKIP_ANNOTATED_TOKENS, skipAnnotatedTokens,
+                TargetSetterAnnotator.PARAM_ANNOTATION_TARGET_NAME, annotationName,
+                TargetSetterAnnotator.PARAM_ANNOTATION_TARGET_FIELD_NAME, annotationFieldName,
+                TargetSetterAnnotator.PARAM_MAX_SEQUENCE_LENGTH, sequenceLength,
+                TargetSetterAnnotator.PARAM_CROSS_SENTENCE, crossSentence);
 
-        AnalysisEngineDescription annotator = AnalysisEngineFactory.createEngineDescription(
+        AnalysisEngineDescription annotator = threads == 1 ? getModelAnnotator(model)
+                : AnalysisEngineFactory.createEngineDescription(ParallelSequenceLabeler.class,
+                        ParallelSequenceLabeler.PARAM_TC_MODEL_LOCATION, model,
+                        ParallelSequenceLabeler.PARAM_THREADS, threads);
+
+        if (modelVersion == null) {
+            SimplePipeline.runPipeline(reader, tcAnnotation, annotator, resultWriter);
+            return;
+        }
+
+        AnalysisEngineDescription memoUpdater = AnalysisEngineFactory.createEngineDescription(
+                SentenceLabelMemoUpdater.class,
+                SentenceLabelMemoUpdater.PARAM_MODEL_VERSION, modelVersion);
+
+        SimplePipeline.runPipeline(reader, tcAnnotation, annotator, memoUpdater, resultWriter);
+    }
+    
+    static AnalysisEngineDescription getModelAnnotator(File model)
+        throws ResourceInitializationException
+    {
+        return AnalysisEngineFactory.createEngineDescription(
                 PreTrainedModelProviderSequenceMode.class,
                 PreTrainedModelProviderSequenceMode.PARAM_NAME_SEQUENCE_ANNOTATION,
                 Sentence.class.getName(),
                 PreTrainedModelProviderSequenceMode.PARAM_NAME_TARGET_ANNOTATION,
                 Token.class.getName(), PreTrainedModelProviderSequenceMode.PARAM_TC_MODEL_LOCATION,
                 model, PreTrainedModelProviderSequenceMode.PARAM_RETAIN_TARGETS, false);
+    }
 
+    private int rangeBegin()
+    {
+        return range != null ? range.getBegin() : -1;
+    }
 
-        SimplePipeline.runPipeline(reader, tcAnnotation, annotator, resultWriter);
+    private int rangeEnd()
+    {
+        return range != null ? range.getEnd() : -1;
     }
-    
+
+    private boolean rangeInSentences()
+    {
+        return range != null && range.isSentences();
+    }
+
     AnalysisEngineDescription getSingleTokenLevelResultWriter(String annotationName, String annotationFieldName) throws ResourceInitializationException {
         return AnalysisEngineFactory.createEngineDescription(
                 TokenResultWriterAnnotator.class, 
@@ -115,10 +243,14 @@ public class PredictionWithModel
                 TokenResultWriterAnnotator.PARAM_ANNOTATION_TARGET_FIELD_NAME,
                 annotationFieldName, 
                 TokenResultWriterAnnotator.PARAM_OUTPUT_FOLDER, predictionOutput,
+                TokenResultWriterAnnotator.PARAM_RANGE_BEGIN, rangeBegin(),
+                TokenResultWriterAnnotator.PARAM_RANGE_END, rangeEnd(),
+                TokenResultWriterAnnotator.PARAM_RANGE_IN_SENTENCES, rangeInSentences(),
+                TokenResultWriterAnnotator.PARAM_SKIP_ANNOTATED_TOKENS, skipAnnotatedTokens,
                 TokenResultWriterAnnotator.PARAM_MERGE_ADJACENT_ANNOTATIONS, false);
     }
     
-    AnalysisEngineDescription getMultiTokenSpanLevelResultWriter(String annotationName, String annotationFieldName) throws ResourceInitializationException {
+    AnalysisEngineDescription getMultiTokenSpanLevelResultWriter(String annotationName, String annotationFieldName, String labelScheme) throws ResourceInitializationException {
         return AnalysisEngineFactory.createEngineDescription(
                 TokenResultWriterAnnotator.class, 
                 TokenResultWriterAnnotator.PARAM_ANNOTATION_TARGET_NAME,
@@ -126,6 +258,11 @@ public class PredictionWithModel
                 TokenResultWriterAnnotator.PARAM_ANNOTATION_TARGET_FIELD_NAME,
                 annotationFieldName, 
                 TokenResultWriterAnnotator.PARAM_OUTPUT_FOLDER, predictionOutput,
+                TokenResultWriterAnnotator.PARAM_RANGE_BEGIN, rangeBegin(),
+                TokenResultWriterAnnotator.PARAM_RANGE_END, rangeEnd(),
+                TokenResultWriterAnnotator.PARAM_RANGE_IN_SENTENCES, rangeInSentences(),
+                TokenResultWriterAnnotator.PARAM_SKIP_ANNOTATED_TOKENS, skipAnnotatedTokens,
+                TokenResultWriterAnnotator.PARAM_LABEL_SCHEME, labelScheme,
                 TokenResultWriterAnnotator.PARAM_MERGE_ADJACENT_ANNOTATIONS, true);
     }
 }
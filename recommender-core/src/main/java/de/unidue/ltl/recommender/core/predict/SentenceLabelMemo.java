@@ -0,0 +1,132 @@
+/*******************************************************************************
+ * Copyright 2018
+ * Language Technology Lab
+ * University of Duisburg-Essen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package de.unidue.ltl.recommender.core.predict;
+
+import java.security.MessageDigest;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
+import de.unidue.ltl.recommender.core.util.CasFingerprint;
+
+/**
+ * Process-wide memo of the labels a model predicted for a sentence, keyed by the model version
+ * and a hash of the token sequence of the sentence and of the {@link #CONTEXT_TOKENS} tokens
+ * before and after it. Sentences found in the memo are not sent to the model again, see
+ * {@link TargetSetterAnnotator}. The memo is bounded, the least recently used sentences are
+ * evicted first.
+ */
+public class SentenceLabelMemo
+{
+    /**
+     * Number of neighbouring tokens on each side of a sentence which influence its labels. The
+     * context features of the training profiles read the surface form of up to two targets
+     * before and after a token, across sentence boundaries.
+     */
+    static final int CONTEXT_TOKENS = 2;
+
+    private static int maximumSize = 100000;
+
+    private static final Map<String, String[]> memo = new LinkedHashMap<String, String[]>(16,
+            0.75f, true)
+    {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String[]> eldest)
+        {
+            return size() > maximumSize;
+        }
+    };
+
+    /**
+     * @param size
+     *          maximal number of memorized sentences, 0 disables the memo
+     */
+    public static synchronized void setMaximumSize(int size)
+    {
+        if (size < 0) {
+            throw new IllegalArgumentException("Size must not be negative but was [" + size + "]");
+        }
+        maximumSize = size;
+        if (size == 0) {
+            memo.clear();
+        }
+    }
+
+    public static synchronized boolean isEnabled()
+    {
+        return maximumSize > 0;
+    }
+
+    /**
+     * @param sentence
+     *          index of the sentence in the given sentence tokens
+     * @return the labels of the tokens of the sentence or null if the sentence is not memorized
+     */
+    static String[] get(String modelVersion, SentenceTokens tokens, int sentence)
+    {
+        String key = key(modelVersion, tokens, sentence);
+        synchronized (SentenceLabelMemo.class) {
+            return memo.get(key);
+        }
+    }
+
+    static void put(String modelVersion, SentenceTokens tokens, int sentence, String[] labels)
+    {
+        String key = key(modelVersion, tokens, sentence);
+        synchronized (SentenceLabelMemo.class) {
+            if (maximumSize > 0) {
+                memo.put(key, labels);
+            }
+        }
+    }
+
+    static synchronized int size()
+    {
+        return memo.size();
+    }
+
+    static synchronized void clear()
+    {
+        memo.clear();
+    }
+
+    private static String key(String modelVersion, SentenceTokens tokens, int sentence)
+    {
+        int first = tokens.first(sentence);
+        int end = first + tokens.count(sentence);
+        int sentenceBegin = tokens.sentence(sentence).getBegin();
+
+        MessageDigest digest = CasFingerprint.sha256();
+        for (int i = first; i < end; i++) {
+            Token t = tokens.token(i);
+            // offsets relative to the sentence, the spacing is part of the surface form
+            CasFingerprint.update(digest, (t.getBegin() - sentenceBegin) + ":"
+                    + (t.getEnd() - sentenceBegin) + ":" + t.getCoveredText());
+        }
+        for (int i = Math.max(0, first - CONTEXT_TOKENS); i < first; i++) {
+            CasFingerprint.update(digest, "<" + tokens.token(i).getCoveredText());
+        }
+        for (int i = end; i < Math.min(tokens.numberOfTokens(), end + CONTEXT_TOKENS); i++) {
+            CasFingerprint.update(digest, ">" + tokens.token(i).getCoveredText());
+        }
+        return modelVersion + "#" + CasFingerprint.hex(digest.digest());
+    }
+}
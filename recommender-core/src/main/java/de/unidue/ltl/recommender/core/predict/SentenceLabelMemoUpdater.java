@@ -0,0 +1,80 @@
+/*******************************************************************************
+ * Copyright 2018
+ * Language Technology Lab
+ * University of Duisburg-Essen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package de.unidue.ltl.recommender.core.predict;
+
+import java.util.List;
+
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.apache.uima.fit.component.JCasAnnotator_ImplBase;
+import org.apache.uima.fit.descriptor.ConfigurationParameter;
+import org.apache.uima.fit.util.JCasUtil;
+import org.apache.uima.jcas.JCas;
+import org.dkpro.tc.api.type.TextClassificationOutcome;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
+
+/**
+ * Runs after the model and stores the predicted labels of all sentences which are not yet in the
+ * {@link SentenceLabelMemo}. {@link TargetSetterAnnotator} adds targets for the neighbouring
+ * tokens of every labeled sentence, the stored labels were thus predicted with the context the
+ * memo key describes.
+ */
+public class SentenceLabelMemoUpdater
+    extends JCasAnnotator_ImplBase
+{
+    public static final String PARAM_MODEL_VERSION = "modelVersion";
+    @ConfigurationParameter(name = PARAM_MODEL_VERSION, mandatory = true)
+    private String modelVersion;
+
+    private static final Logger logger = LoggerFactory
+            .getLogger(SentenceLabelMemoUpdater.class.getName());
+
+    @Override
+    public void process(JCas aJCas) throws AnalysisEngineProcessException
+    {
+        if (!SentenceLabelMemo.isEnabled()) {
+            return;
+        }
+
+        SentenceTokens sentences = new SentenceTokens();
+        sentences.collect(aJCas);
+
+        int stored = 0;
+        for (int k = 0; k < sentences.size(); k++) {
+            Sentence s = sentences.sentence(k);
+            List<TextClassificationOutcome> outcomes = JCasUtil.selectCovered(aJCas,
+                    TextClassificationOutcome.class, s);
+            if (outcomes.isEmpty() || outcomes.size() != sentences.count(k)
+                    || SentenceLabelMemo.get(modelVersion, sentences, k) != null) {
+                continue;
+            }
+            String[] labels = new String[outcomes.size()];
+            for (int i = 0; i < labels.length; i++) {
+                labels[i] = outcomes.get(i).getOutcome();
+            }
+            SentenceLabelMemo.put(modelVersion, sentences, k, labels);
+            stored++;
+        }
+        sentences.clear();
+        logger.debug("Memorized labels of [" + stored + "] sentences, memo holds ["
+                + SentenceLabelMemo.size() + "] sentences");
+    }
+}
@@ -0,0 +1,158 @@
+/*******************************************************************************
+ * Copyright 2018
+ * Language Technology Lab
+ * University of Duisburg-Essen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package de.unidue.ltl.recommender.core.predict;
+
+import java.util.Arrays;
+
+import org.apache.uima.cas.FSIterator;
+import org.apache.uima.fit.util.JCasUtil;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.jcas.tcas.Annotation;
+
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
+
+/**
+ * The tokens of the sentences of a document in document order, collected in a single sweep over
+ * the sentence and the token index. Tokens outside of any sentence never become targets and are
+ * left out. The buffers are reused across documents.
+ */
+class SentenceTokens
+{
+    private Sentence[] sentences = new Sentence[16];
+    /** index of the first token of each sentence in {@link #tokens} */
+    private int[] firsts = new int[16];
+    private int[] counts = new int[16];
+    /** position of the first token of each sentence among all tokens of the document */
+    private int[] positions = new int[16];
+    private int numSentences;
+
+    private Token[] tokens = new Token[64];
+    private int numTokens;
+    private int numDocumentTokens;
+
+    void collect(JCas aJCas)
+    {
+        clear();
+
+        FSIterator<Annotation> tokenIterator = aJCas.getAnnotationIndex(Token.type).iterator();
+        Token token = nextToken(tokenIterator);
+        int tokenPosition = 0;
+        for (Sentence s : JCasUtil.select(aJCas, Sentence.class)) {
+            // tokens before the sentence, or crossing its begin, belong to no sentence
+            while (token != null && token.getBegin() < s.getBegin()) {
+                token = nextToken(tokenIterator);
+                tokenPosition++;
+            }
+
+            if (numSentences == sentences.length) {
+                int size = 2 * numSentences;
+                sentences = Arrays.copyOf(sentences, size);
+                firsts = Arrays.copyOf(firsts, size);
+                counts = Arrays.copyOf(counts, size);
+                positions = Arrays.copyOf(positions, size);
+            }
+            sentences[numSentences] = s;
+            firsts[numSentences] = numTokens;
+            positions[numSentences] = tokenPosition;
+
+            while (token != null && token.getEnd() <= s.getEnd()) {
+                if (numTokens == tokens.length) {
+                    tokens = Arrays.copyOf(tokens, 2 * numTokens);
+                }
+                tokens[numTokens++] = token;
+                token = nextToken(tokenIterator);
+                tokenPosition++;
+            }
+            counts[numSentences] = numTokens - firsts[numSentences];
+            numSentences++;
+        }
+        while (token != null) {
+            token = nextToken(tokenIterator);
+            tokenPosition++;
+        }
+        numDocumentTokens = tokenPosition;
+    }
+
+    /**
+     * Releases the annotations of the last document
+     */
+    void clear()
+    {
+        Arrays.fill(sentences, 0, numSentences, null);
+        Arrays.fill(tokens, 0, numTokens, null);
+        numSentences = 0;
+        numTokens = 0;
+        numDocumentTokens = 0;
+    }
+
+    private static Token nextToken(FSIterator<Annotation> it)
+    {
+        if (!it.hasNext()) {
+            return null;
+        }
+        return (Token) it.next();
+    }
+
+    int size()
+    {
+        return numSentences;
+    }
+
+    Sentence sentence(int k)
+    {
+        return sentences[k];
+    }
+
+    int first(int k)
+    {
+        return firsts[k];
+    }
+
+    int count(int k)
+    {
+        return counts[k];
+    }
+
+    int position(int k)
+    {
+        return positions[k];
+    }
+
+    Token token(int i)
+    {
+        return tokens[i];
+    }
+
+    /**
+     * @return the number of tokens in sentences
+     */
+    int numberOfTokens()
+    {
+        return numTokens;
+    }
+
+    /**
+     * @return the number of all tokens of the document, including those outside of sentences
+     */
+    int numberOfDocumentTokens()
+    {
+        return numDocumentTokens;
+    }
+}
@@ -18,61 +18,218 @@
 
 package de.unidue.ltl.recommender.core.predict;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.BitSet;
 
 import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
 import org.apache.uima.fit.component.JCasAnnotator_ImplBase;
-import org.apache.uima.fit.util.JCasUtil;
+import org.apache.uima.fit.descriptor.ConfigurationParameter;
+import org.apache.uima.fit.util.CasUtil;
 import org.apache.uima.jcas.JCas;
 import org.dkpro.tc.api.type.TextClassificationOutcome;
-import org.dkpro.tc.api.type.TextClassificationSequence;
 import org.dkpro.tc.api.type.TextClassificationTarget;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import de.tudarmstadt.ukp.dkpro.core.api.featurepath.FeaturePathUtils;
 import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
 import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
+import de.unidue.ltl.recommender.core.util.SequenceWindows;
+import de.unidue.ltl.recommender.core.util.TokenIndex;
 
 public class TargetSetterAnnotator
     extends JCasAnnotator_ImplBase
 {
+    /**
+     * Version of the model the document is labeled with. If set, sentences whose labels are in
+     * the {@link SentenceLabelMemo} receive their memorized outcomes and are not sent to the
+     * model.
+     */
+    public static final String PARAM_MODEL_VERSION = "modelVersion";
+    @ConfigurationParameter(name = PARAM_MODEL_VERSION, mandatory = false)
+    private String modelVersion;
+
+    /**
+     * Restricts the labeling to the sentences overlapping a range, see {@link PredictionRange}.
+     * A negative begin (default) labels the whole document.
+     */
+    public static final String PARAM_RANGE_BEGIN = "rangeBegin";
+    @ConfigurationParameter(name = PARAM_RANGE_BEGIN, mandatory = true, defaultValue = "-1")
+    private int rangeBegin;
+
+    public static final String PARAM_RANGE_END = "rangeEnd";
+    @ConfigurationParameter(name = PARAM_RANGE_END, mandatory = true, defaultValue = "-1")
+    private int rangeEnd;
+
+    public static final String PARAM_RANGE_IN_SENTENCES = "rangeInSentences";
+    @ConfigurationParameter(name = PARAM_RANGE_IN_SENTENCES, mandatory = true, defaultValue = "false")
+    private boolean rangeInSentences;
+
+    /**
+     * Sentences of which every token is already annotated with a value of the target feature are
+     * not sent to the model. Partially annotated sentences are labeled completely, as the model
+     * needs the context, the result writer then suppresses the annotated tokens.
+     */
+    public static final String PARAM_SKIP_ANNOTATED_TOKENS = "skipAnnotatedTokens";
+    @ConfigurationParameter(name = PARAM_SKIP_ANNOTATED_TOKENS, mandatory = true, defaultValue = "false")
+    private boolean skipAnnotatedTokens;
+
+    public static final String PARAM_ANNOTATION_TARGET_NAME = "annotationName";
+    @ConfigurationParameter(name = PARAM_ANNOTATION_TARGET_NAME, mandatory = false)
+    private String annotation;
+
+    public static final String PARAM_ANNOTATION_TARGET_FIELD_NAME = "annotationFieldName";
+    @ConfigurationParameter(name = PARAM_ANNOTATION_TARGET_FIELD_NAME, mandatory = false)
+    private String annoValue;
+
+    /**
+     * Maximum number of tokens of a sequence sent to the model, see {@link SequenceWindows}.
+     * Must be the value the model was trained with.
+     */
+    public static final String PARAM_MAX_SEQUENCE_LENGTH = "maxSequenceLength";
+    @ConfigurationParameter(name = PARAM_MAX_SEQUENCE_LENGTH, mandatory = true, defaultValue = "0")
+    private int maxSequenceLength;
+
+    /**
+     * Packs consecutive sentences into one sequence, see {@link SequenceWindows}. The labels of a
+     * sentence then depend on its neighbours, the {@link SentenceLabelMemo} must not be used.
+     */
+    public static final String PARAM_CROSS_SENTENCE = "crossSentence";
+    @ConfigurationParameter(name = PARAM_CROSS_SENTENCE, mandatory = true, defaultValue = "false")
+    private boolean crossSentence;
+
+    static final String UNKNOWN_LABEL = "UNKNOWN-LABEL";
 
     int tcId = 0;
 
+    /** tokens of the sentences of the current document, reused across documents */
+    private final SentenceTokens sentenceTokens = new SentenceTokens();
+
     private static final Logger logger = LoggerFactory
             .getLogger(TargetSetterAnnotator.class.getName());
 
     /**
-     * Prepares the JCas for a prediction. Iterates the tokens and sets the annotations required by
-     * DKPro TC to work.
+     * Prepares the JCas for a prediction. Sets the annotations required by DKPro TC to work in a
+     * single sweep over the sentence and the token index: the tokens of the sentences are
+     * collected, then each sentence is either skipped, labeled from the memo or receives one
+     * target and outcome per token and is added to the sequences via {@link SequenceWindows}.
+     * <p>
+     * The context features of the model read the targets next to a token, also across sentence
+     * boundaries. The {@link SentenceLabelMemo#CONTEXT_TOKENS} tokens before and after a labeled
+     * sentence therefore receive a target as well if their sentence is not labeled. These
+     * targets are in no sequence and are not labeled themselves, a sentence is thus labeled with
+     * the same context regardless of which neighbours are skipped, memorized or out of range.
      */
     @Override
     public void process(JCas aJCas) throws AnalysisEngineProcessException
     {
+        boolean debug = logger.isDebugEnabled();
+        boolean useMemo = modelVersion != null && !crossSentence && SentenceLabelMemo.isEnabled();
+        PredictionRange range = PredictionRange.fromParameters(rangeBegin, rangeEnd,
+                rangeInSentences);
+        BitSet annotated = null;
+        if (skipAnnotatedTokens) {
+            annotated = annotatedTokens(aJCas, TokenIndex.build(aJCas), annotation, annoValue);
+        }
+
+        SequenceWindows windows = new SequenceWindows(aJCas, maxSequenceLength, crossSentence);
+        sentenceTokens.collect(aJCas);
+
+        // sentence tokens which have a target
+        BitSet targeted = new BitSet(sentenceTokens.numberOfTokens());
+        // tokens before this index are in the following context of a labeled sentence
+        int contextEnd = 0;
+        int memorized = 0;
+        int skipped = 0;
+        for (int k = 0; k < sentenceTokens.size(); k++) {
+            Sentence s = sentenceTokens.sentence(k);
+            int first = sentenceTokens.first(k);
+            int count = sentenceTokens.count(k);
+            int position = sentenceTokens.position(k);
+
+            boolean label = true;
+            if (range != null && !range.overlaps(s, k)) {
+                label = false;
+            }
+            else if (annotated != null && count > 0
+                    && annotated.nextClearBit(position) >= position + count) {
+                label = false;
+                skipped++;
+            }
+            else if (useMemo) {
+                String[] labels = SentenceLabelMemo.get(modelVersion, sentenceTokens, k);
+                if (labels != null) {
+                    for (int j = 0; j < count; j++) {
+                        Token t = sentenceTokens.token(first + j);
+                        TextClassificationOutcome outcome = new TextClassificationOutcome(aJCas,
+                                t.getBegin(), t.getEnd());
+                        outcome.setOutcome(labels[j]);
+                        outcome.addToIndexes();
+                    }
+                    label = false;
+                    memorized++;
+                }
+            }
 
-        List<Sentence> sents = new ArrayList<Sentence>(JCasUtil.select(aJCas, Sentence.class));
-        logger.debug("Detected [" + sents.size() + "] sentences");
-        for (int i=0; i < sents.size(); i++) {
-            Sentence s = sents.get(i);
-            TextClassificationSequence seq = new TextClassificationSequence(aJCas, s.getBegin(),
-                    s.getEnd());
-            seq.addToIndexes();
-
-            List<Token> tokens = new ArrayList<Token>(
-                    JCasUtil.selectCovered(aJCas, Token.class, s));
-            logger.debug("Detected [" + tokens.size() + "] tokens in sentence [" + (i + 1) + "]");
-            for (Token t : tokens) {
-                TextClassificationTarget aTarget = new TextClassificationTarget(aJCas, t.getBegin(),
-                        t.getEnd());
-                aTarget.setId(tcId++);
-                aTarget.addToIndexes();
+            if (!label) {
+                for (int j = first; j < Math.min(first + count, contextEnd); j++) {
+                    addTarget(aJCas, j, targeted);
+                }
+                windows.interrupt();
+                continue;
+            }
+
+            for (int j = Math.max(0, first - SentenceLabelMemo.CONTEXT_TOKENS); j < first; j++) {
+                if (!targeted.get(j)) {
+                    addTarget(aJCas, j, targeted);
+                }
+            }
+            for (int j = first; j < first + count; j++) {
+                Token t = sentenceTokens.token(j);
+                windows.addToken(t.getBegin(), t.getEnd());
+                addTarget(aJCas, j, targeted);
 
                 TextClassificationOutcome outcome = new TextClassificationOutcome(aJCas,
                         t.getBegin(), t.getEnd());
-                outcome.setOutcome("UNKNOWN-LABEL");
+                outcome.setOutcome(UNKNOWN_LABEL);
                 outcome.addToIndexes();
             }
+            contextEnd = first + count + SentenceLabelMemo.CONTEXT_TOKENS;
+            windows.endSentence();
         }
+        windows.close();
+
+        if (debug) {
+            logger.debug("Processed [" + sentenceTokens.size() + "] sentences with ["
+                    + sentenceTokens.numberOfDocumentTokens() + "] tokens, [" + memorized
+                    + "] taken from memo, [" + skipped + "] skipped as annotated completely, ["
+                    + windows.getNumberOfSequences() + "] sequences, ["
+                    + windows.getNumberOfSplitSentences() + "] sentences split as longer than ["
+                    + maxSequenceLength + "] tokens");
+        }
+        // do not keep the tokens of the last document reachable
+        sentenceTokens.clear();
+    }
+
+    private void addTarget(JCas aJCas, int token, BitSet targeted)
+    {
+        Token t = sentenceTokens.token(token);
+        TextClassificationTarget aTarget = new TextClassificationTarget(aJCas, t.getBegin(),
+                t.getEnd());
+        aTarget.setId(tcId++);
+        aTarget.addToIndexes();
+        targeted.set(token);
+    }
+
+    /**
+     * @return the positions of the tokens which are covered by an annotation of the target type
+     *         with a value of the target feature
+     */
+    static BitSet annotatedTokens(JCas aJCas, TokenIndex tokenIndex, String annotation,
+            String annoValue)
+    {
+        return tokenIndex.covered(aJCas.getCas(),
+                CasUtil.getAnnotationType(aJCas.getCas(), annotation),
+                FeaturePathUtils.getType(aJCas.getTypeSystem(), annotation)
+                        .getFeatureByBaseName(annoValue));
     }
 }
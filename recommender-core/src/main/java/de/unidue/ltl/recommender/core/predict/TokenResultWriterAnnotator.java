@@ -15,17 +15,20 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  ******************************************************************************/
-
 package de.unidue.ltl.recommender.core.predict;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 
 import org.apache.uima.UimaContext;
 import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.FSIterator;
 import org.apache.uima.cas.Feature;
 import org.apache.uima.cas.Type;
+import org.apache.uima.cas.TypeSystem;
 import org.apache.uima.cas.text.AnnotationFS;
 import org.apache.uima.fit.component.JCasAnnotator_ImplBase;
 import org.apache.uima.fit.descriptor.ConfigurationParameter;
@@ -41,9 +44,18 @@ import org.slf4j.LoggerFactory;
 import de.tudarmstadt.ukp.dkpro.core.api.featurepath.FeaturePathUtils;
 import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
 import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
+import de.unidue.ltl.recommender.core.train.MultipleTokenSpanLevelTrainingOutcomeAnnotator;
 import de.unidue.ltl.recommender.core.train.SingleTokenLevelTrainingOutcomeAnnotator;
 import de.unidue.ltl.recommender.core.util.CoreUtil;
-
+import de.unidue.ltl.recommender.core.util.TokenIndex;
+
+/**
+ * Turns the predicted outcomes into annotations of the target type and writes the CAS to the
+ * output folder. The outcomes are streamed in index order in a single pass, runs of adjacent
+ * outcomes with the same label within a sentence are merged into one annotation if enabled, see
+ * {@link #PARAM_LABEL_SCHEME} for outcomes in the BIO scheme.
+ * Afterwards all outcomes are removed from the CAS.
+ */
 public class TokenResultWriterAnnotator
     extends JCasAnnotator_ImplBase
 {
@@ -59,6 +71,42 @@ public class TokenResultWriterAnnotator
     @ConfigurationParameter(name = PARAM_MERGE_ADJACENT_ANNOTATIONS, mandatory = true, defaultValue = "true")
     private boolean mergeAdjacent;
 
+    public static final String LABEL_SCHEME_NONE = "none";
+
+    /**
+     * The scheme the outcomes are encoded in, either {@link #LABEL_SCHEME_NONE} or
+     * {@link MultipleTokenSpanLevelTrainingOutcomeAnnotator#LABEL_SCHEME_BIO}. With the BIO
+     * scheme an outcome with the begin prefix always starts a new annotation, the prefixes are
+     * removed from the written values.
+     */
+    public static final String PARAM_LABEL_SCHEME = "labelScheme";
+    @ConfigurationParameter(name = PARAM_LABEL_SCHEME, mandatory = true, defaultValue = LABEL_SCHEME_NONE)
+    private String labelScheme;
+
+    /**
+     * Only sentences overlapping the range are written, see {@link TargetSetterAnnotator}.
+     * Outcomes outside of any sentence are not written if a range is set.
+     */
+    public static final String PARAM_RANGE_BEGIN = "rangeBegin";
+    @ConfigurationParameter(name = PARAM_RANGE_BEGIN, mandatory = true, defaultValue = "-1")
+    private int rangeBegin;
+
+    public static final String PARAM_RANGE_END = "rangeEnd";
+    @ConfigurationParameter(name = PARAM_RANGE_END, mandatory = true, defaultValue = "-1")
+    private int rangeEnd;
+
+    public static final String PARAM_RANGE_IN_SENTENCES = "rangeInSentences";
+    @ConfigurationParameter(name = PARAM_RANGE_IN_SENTENCES, mandatory = true, defaultValue = "false")
+    private boolean rangeInSentences;
+
+    /**
+     * Suppresses the predictions for tokens which are already annotated with a value of the
+     * target feature, see {@link TargetSetterAnnotator#PARAM_SKIP_ANNOTATED_TOKENS}
+     */
+    public static final String PARAM_SKIP_ANNOTATED_TOKENS = "skipAnnotatedTokens";
+    @ConfigurationParameter(name = PARAM_SKIP_ANNOTATED_TOKENS, mandatory = true, defaultValue = "false")
+    private boolean skipAnnotatedTokens;
+
     public static final String PARAM_OUTPUT_FOLDER = "outputFolder";
     @ConfigurationParameter(name = PARAM_OUTPUT_FOLDER, mandatory = true)
     private File outputFolder;
@@ -70,6 +118,18 @@ public class TokenResultWriterAnnotator
     private static final Logger logger = LoggerFactory
             .getLogger(TokenResultWriterAnnotator.class.getName());
 
+    /** type system for which the handles below were resolved */
+    private TypeSystem typeSystem;
+    private Type annotationType;
+    private Feature valueFeature;
+    private Type outcomeType;
+
+    /** the run of outcomes which is not yet written */
+    private int runBegin;
+    private int runEnd;
+    private String runLabel;
+    private int written;
+
     @Override
     public void initialize(final UimaContext context) throws ResourceInitializationException
     {
@@ -81,34 +141,99 @@ public class TokenResultWriterAnnotator
     @Override
     public void process(JCas aJCas) throws AnalysisEngineProcessException
     {
-        List<Sentence> sentences = new ArrayList<Sentence>(JCasUtil.select(aJCas, Sentence.class));
-        logger.debug("Found [" + sentences.size() + "] sentences in CAS");
-        for (Sentence s : sentences) {
-            List<TextClassificationOutcome> outcomes = JCasUtil.selectCovered(aJCas,
-                    TextClassificationOutcome.class, s);
-            logger.debug("Found [" + outcomes.size() + "] "
-                    + TextClassificationOutcome.class.getSimpleName() + " in sentence");
-            for (int j = 0; j < outcomes.size(); j++) {
-
-                if (outcomes.get(j).getOutcome().equals(SingleTokenLevelTrainingOutcomeAnnotator.OTHER_OUTCOME)) {
-                    logger.debug("Prediction for [" + outcomes.get(j).getCoveredText()
-                            + "] suppressed - is internal placeholder");
-                    continue;
-                }
+        resolveTypes(aJCas);
+
+        PredictionRange range = PredictionRange.fromParameters(rangeBegin, rangeEnd,
+                rangeInSentences);
+        TokenIndex tokenIndex = null;
+        BitSet annotated = null;
+        if (skipAnnotatedTokens) {
+            tokenIndex = TokenIndex.build(aJCas);
+            annotated = TargetSetterAnnotator.annotatedTokens(aJCas, tokenIndex, annotation,
+                    annoValue);
+        }
 
-                int begin = outcomes.get(j).getBegin();
-                int end = outcomes.get(j).getEnd();
+        CAS cas = aJCas.getCas();
+        FSIterator<Annotation> sentences = aJCas.getAnnotationIndex(Sentence.type).iterator();
+        Sentence sentence = null;
+        int sentenceIndex = -1;
+        boolean inRange = range == null;
+        boolean inSentenceBefore = false;
+        boolean bio = MultipleTokenSpanLevelTrainingOutcomeAnnotator.LABEL_SCHEME_BIO
+                .equals(labelScheme);
+
+        runLabel = null;
+        written = 0;
+        FSIterator<Annotation> outcomes = aJCas.getAnnotationIndex(TextClassificationOutcome.type)
+                .iterator();
+        while (outcomes.hasNext()) {
+            TextClassificationOutcome o = (TextClassificationOutcome) outcomes.next();
+
+            if (sentence == null || o.getBegin() >= sentence.getEnd()) {
+                // outcomes never cross sentence boundaries, a new sentence ends a run
+                flush(cas);
+                while (sentences.hasNext()
+                        && (sentence == null || o.getBegin() >= sentence.getEnd())) {
+                    sentence = (Sentence) sentences.next();
+                    sentenceIndex++;
+                }
+                inRange = range == null
+                        || (sentence != null && range.overlaps(sentence, sentenceIndex));
+            }
+            boolean inSentence = sentence != null && o.getBegin() >= sentence.getBegin()
+                    && o.getBegin() < sentence.getEnd();
+            if (inSentence != inSentenceBefore) {
+                // an outcome outside of any sentence neither continues nor is continued by a run
+                // of a sentence
+                flush(cas);
+                inSentenceBefore = inSentence;
+            }
+            // with a range, outcomes outside of any sentence are out of range
+            if (!inRange || (range != null && !inSentence)) {
+                continue;
+            }
 
-                int adjacentLen = 0;
-                if (mergeAdjacent) {
-                    // Look-ahead to merge adjacent annotations of same feature value
-                    adjacentLen = collectNumberOfMergeCandidates(outcomes, j);
-                    end = outcomes.get(j + adjacentLen).getEnd();
+            String label = o.getOutcome();
+            if (SingleTokenLevelTrainingOutcomeAnnotator.OTHER_OUTCOME.equals(label)) {
+                flush(cas);
+                continue;
+            }
+            boolean begin = false;
+            if (bio) {
+                if (label.startsWith(MultipleTokenSpanLevelTrainingOutcomeAnnotator.BEGIN_PREFIX)) {
+                    label = label.substring(
+                            MultipleTokenSpanLevelTrainingOutcomeAnnotator.BEGIN_PREFIX.length());
+                    begin = true;
+                }
+                else if (label
+                        .startsWith(MultipleTokenSpanLevelTrainingOutcomeAnnotator.INSIDE_PREFIX)) {
+                    // an inside label without a preceding run of the same value starts a new one
+                    label = label.substring(
+                            MultipleTokenSpanLevelTrainingOutcomeAnnotator.INSIDE_PREFIX.length());
                 }
-                annotateTargetAnnotation(aJCas, begin, end, outcomes, j);
+            }
+            if (annotated != null) {
+                int idx = tokenIndex.indexOf(o.getBegin());
+                if (idx >= 0 && annotated.get(idx)) {
+                    flush(cas);
+                    continue;
+                }
+            }
 
-                j += adjacentLen;
+            if (mergeAdjacent && !begin && label.equals(runLabel)) {
+                runEnd = o.getEnd();
+                continue;
             }
+            flush(cas);
+            runBegin = o.getBegin();
+            runEnd = o.getEnd();
+            runLabel = label;
+        }
+        flush(cas);
+
+        cas.getIndexRepository().removeAllIncludingSubtypes(outcomeType);
+        if (logger.isDebugEnabled()) {
+            logger.debug("Wrote [" + written + "] annotations of type [" + annotation + "]");
         }
 
         debugSysOut(aJCas);
@@ -121,37 +246,32 @@ public class TokenResultWriterAnnotator
         }
     }
 
-    private void annotateTargetAnnotation(JCas aJCas, int begin, int end,
-            final List<TextClassificationOutcome> outcomes, final int currIdx)
+    private void resolveTypes(JCas aJCas)
     {
-        String value = outcomes.get(currIdx).getOutcome();
-
-        Type annotationType = CasUtil.getAnnotationType(aJCas.getCas(), annotation);
-        AnnotationFS targetAnno = aJCas.getCas().createAnnotation(annotationType, begin, end);
-        Feature featureByBaseName = FeaturePathUtils.getType(aJCas.getTypeSystem(), annotation)
+        if (typeSystem == aJCas.getTypeSystem()) {
+            return;
+        }
+        typeSystem = aJCas.getTypeSystem();
+        annotationType = CasUtil.getAnnotationType(aJCas.getCas(), annotation);
+        valueFeature = FeaturePathUtils.getType(typeSystem, annotation)
                 .getFeatureByBaseName(annoValue);
-        targetAnno.setFeatureValueFromString(featureByBaseName, value);
-        ((Annotation) targetAnno).addToIndexes();
-        logger.debug("Value [" + value + "] for text [" + targetAnno.getCoveredText()
-                + "] stored in [" + featureByBaseName.getName() + "]");
-        outcomes.get(currIdx).removeFromIndexes();
+        outcomeType = CasUtil.getType(aJCas.getCas(), TextClassificationOutcome.class);
     }
 
-    private int collectNumberOfMergeCandidates(List<TextClassificationOutcome> outcomes,
-            final int currIdx)
+    private void flush(CAS cas)
     {
-        int k = currIdx + 1;
-
-        while (k < outcomes.size()) {
-            if (outcomes.get(k - 1).getOutcome().equals(outcomes.get(k).getOutcome())) {
-                k++;
-            }
-            else {
-                break;
-            }
+        if (runLabel == null) {
+            return;
         }
-
-        return k - currIdx - 1;
+        AnnotationFS targetAnno = cas.createAnnotation(annotationType, runBegin, runEnd);
+        targetAnno.setFeatureValueFromString(valueFeature, runLabel);
+        cas.addFsToIndexes(targetAnno);
+        if (logger.isDebugEnabled()) {
+            logger.debug("Value [" + runLabel + "] for text [" + targetAnno.getCoveredText()
+                    + "] stored in [" + valueFeature.getName() + "]");
+        }
+        runLabel = null;
+        written++;
     }
 
     private void debugSysOut(JCas aJCas)
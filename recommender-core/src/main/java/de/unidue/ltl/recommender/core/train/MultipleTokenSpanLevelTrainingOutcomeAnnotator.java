@@ -18,17 +18,13 @@
 
 package de.unidue.ltl.recommender.core.train;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.BitSet;
 
-import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
-import org.apache.uima.cas.Type;
-import org.apache.uima.fit.util.JCasUtil;
 import org.apache.uima.jcas.JCas;
 import org.dkpro.tc.api.type.TextClassificationOutcome;
 import org.dkpro.tc.api.type.TextClassificationTarget;
 
-import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
+import de.unidue.ltl.recommender.core.util.TokenIndex;
 
 /**
  * This annotator sets up the CAS with the required annotation for DKPro TC for training a model.
@@ -38,37 +34,45 @@ import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
 public class MultipleTokenSpanLevelTrainingOutcomeAnnotator
     extends SingleTokenLevelTrainingOutcomeAnnotator
 {
+    /**
+     * Name of the label scheme in the {@link de.unidue.ltl.recommender.core.util.ModelMetadata}
+     * of models trained with this annotator
+     */
+    public static final String LABEL_SCHEME_BIO = "BIO";
+    public static final String BEGIN_PREFIX = "B-";
+    public static final String INSIDE_PREFIX = "I-";
 
+    /**
+     * Labels the tokens of an annotation in the BIO scheme, i.e. the first token with the prefix
+     * {@link #BEGIN_PREFIX} and all further ones with {@link #INSIDE_PREFIX}. This keeps two
+     * adjacent annotations with the same value apart when the spans are decoded again.
+     */
     @Override
-    public void process(JCas aJCas) throws AnalysisEngineProcessException
+    protected String outcomeLabel(String value, boolean first)
     {
-        super.process(aJCas);
-        List<Token> tokens = new ArrayList<Token>(JCasUtil.select(aJCas, Token.class));
-        annotateTokensWithoutCoveringTargetAsOther(aJCas, tokens, annotationType);
+        return (first ? BEGIN_PREFIX : INSIDE_PREFIX) + value;
     }
 
-    private void annotateTokensWithoutCoveringTargetAsOther(JCas aJCas, List<Token> tokens,
-            Type annotationType)
+    /**
+     * Tokens without a target are labeled as {@link #OTHER_OUTCOME}, found with a linear pass
+     * over the clear bits of the covered token positions
+     */
+    @Override
+    protected void annotateTokensWithoutCoveringTarget(JCas aJCas, TokenIndex tokenIndex,
+            BitSet covered)
     {
-        for (Token t : tokens) {
-
-            List<TextClassificationTarget> targets = JCasUtil.selectCovered(aJCas,
-                    TextClassificationTarget.class, t);
-            if (!targets.isEmpty()) {
-                // some target is there i.e. has been annotated with a target - skip
-                continue;
-            }
+        for (int i = covered.nextClearBit(0); i < tokenIndex.size(); i = covered
+                .nextClearBit(i + 1)) {
+            int begin = tokenIndex.getBegin(i);
+            int end = tokenIndex.getEnd(i);
 
-            TextClassificationTarget aTarget = new TextClassificationTarget(aJCas, t.getBegin(),
-                    t.getEnd());
+            TextClassificationTarget aTarget = new TextClassificationTarget(aJCas, begin, end);
             aTarget.setId(tcId++);
             aTarget.addToIndexes();
 
-            TextClassificationOutcome outcome = new TextClassificationOutcome(aJCas, t.getBegin(),
-                    t.getEnd());
+            TextClassificationOutcome outcome = new TextClassificationOutcome(aJCas, begin, end);
             outcome.setOutcome(OTHER_OUTCOME);
             outcome.addToIndexes();
-
         }
     }
 
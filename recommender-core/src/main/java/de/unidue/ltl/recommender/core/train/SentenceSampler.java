@@ -0,0 +1,146 @@
+/*******************************************************************************
+ * Copyright 2018
+ * Language Technology Lab
+ * University of Duisburg-Essen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package de.unidue.ltl.recommender.core.train;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import org.apache.uima.cas.Type;
+import org.apache.uima.cas.text.AnnotationFS;
+import org.apache.uima.fit.util.CasUtil;
+import org.apache.uima.fit.util.JCasUtil;
+import org.apache.uima.jcas.JCas;
+
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
+
+/**
+ * Deterministic subsampling of training sentences. Sentences which contain annotations of the
+ * target layer are preferred, within both groups sentences are taken in a fixed pseudo-random
+ * order so that the sample is not biased towards the beginning of documents.
+ */
+class SentenceSampler
+{
+    private final List<int[]> sentences = new ArrayList<>();
+    private long tokens = 0;
+
+    private List<BitSet> selection;
+    private int selectedSentences;
+    private long selectedTokens;
+
+    /**
+     * Records the size of all sentences of a document and whether they contain a target
+     * annotation
+     */
+    void collect(int document, JCas jcas, Type annotationType)
+    {
+        int idx = 0;
+        for (Sentence s : JCasUtil.select(jcas, Sentence.class)) {
+            int numTokens = JCasUtil.selectCovered(jcas, Token.class, s).size();
+            boolean annotated = !CasUtil.selectCovered(jcas.getCas(), annotationType, s).isEmpty();
+            sentences.add(new int[] { document, idx++, numTokens, annotated ? 1 : 0 });
+            tokens += numTokens;
+        }
+    }
+
+    long getNumberOfTokens()
+    {
+        return tokens;
+    }
+
+    int getNumberOfSentences()
+    {
+        return sentences.size();
+    }
+
+    /**
+     * Selects sentences until the token limit is reached
+     */
+    void select(int numDocuments, long tokenLimit)
+    {
+        List<int[]> order = new ArrayList<>(sentences);
+        order.sort((a, b) -> {
+            if (a[3] != b[3]) {
+                return b[3] - a[3];
+            }
+            return Long.compare(rank(a), rank(b));
+        });
+
+        selection = new ArrayList<>();
+        for (int i = 0; i < numDocuments; i++) {
+            selection.add(new BitSet());
+        }
+        selectedSentences = 0;
+        selectedTokens = 0;
+        for (int[] s : order) {
+            if (selectedTokens + s[2] > tokenLimit) {
+                continue;
+            }
+            selection.get(s[0]).set(s[1]);
+            selectedSentences++;
+            selectedTokens += s[2];
+        }
+    }
+
+    int getNumberOfSelectedSentences()
+    {
+        return selectedSentences;
+    }
+
+    long getNumberOfSelectedTokens()
+    {
+        return selectedTokens;
+    }
+
+    /**
+     * Removes the sentences of a document which were not selected together with their tokens and
+     * target annotations
+     */
+    void removeUnselected(int document, JCas jcas, Type annotationType)
+    {
+        BitSet selected = selection.get(document);
+        List<Sentence> removed = new ArrayList<>();
+        int idx = 0;
+        for (Sentence s : JCasUtil.select(jcas, Sentence.class)) {
+            if (!selected.get(idx++)) {
+                removed.add(s);
+            }
+        }
+
+        for (Sentence s : removed) {
+            for (Token t : JCasUtil.selectCovered(jcas, Token.class, s)) {
+                t.removeFromIndexes();
+            }
+            for (AnnotationFS a : CasUtil.selectCovered(jcas.getCas(), annotationType, s)) {
+                jcas.getCas().removeFsFromIndexes(a);
+            }
+            s.removeFromIndexes();
+        }
+    }
+
+    private static long rank(int[] sentence)
+    {
+        // fixed pseudo-random order (SplitMix64 on document and sentence index)
+        long z = ((long) sentence[0] << 32 | sentence[1]) + 0x9e3779b97f4a7c15L;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -18,8 +18,7 @@
 
 package de.unidue.ltl.recommender.core.train;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.BitSet;
 
 import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
 import org.apache.uima.cas.Feature;
@@ -31,14 +30,14 @@ import org.apache.uima.fit.util.CasUtil;
 import org.apache.uima.fit.util.JCasUtil;
 import org.apache.uima.jcas.JCas;
 import org.dkpro.tc.api.type.TextClassificationOutcome;
-import org.dkpro.tc.api.type.TextClassificationSequence;
 import org.dkpro.tc.api.type.TextClassificationTarget;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import de.tudarmstadt.ukp.dkpro.core.api.featurepath.FeaturePathUtils;
 import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
-import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
+import de.unidue.ltl.recommender.core.util.SequenceWindows;
+import de.unidue.ltl.recommender.core.util.TokenIndex;
 
 /**
  * This annotator sets up the CAS with the required annotation for DKPro TC for
@@ -54,6 +53,17 @@ public class SingleTokenLevelTrainingOutcomeAnnotator extends JCasAnnotator_Impl
 	@ConfigurationParameter(name = PARAM_ANNOTATION_TARGET_FIELD_NAME, mandatory = true)
 	private String fieldName;
 
+	/**
+	 * Maximum number of tokens of a training sequence, see {@link SequenceWindows}
+	 */
+	public static final String PARAM_MAX_SEQUENCE_LENGTH = "maxSequenceLength";
+	@ConfigurationParameter(name = PARAM_MAX_SEQUENCE_LENGTH, mandatory = true, defaultValue = "0")
+	private int maxSequenceLength;
+
+	public static final String PARAM_CROSS_SENTENCE = "crossSentence";
+	@ConfigurationParameter(name = PARAM_CROSS_SENTENCE, mandatory = true, defaultValue = "false")
+	private boolean crossSentence;
+
 	int tcId = 0;
 	
 	protected Logger logger = LoggerFactory.getLogger(SingleTokenLevelTrainingOutcomeAnnotator.class);
@@ -69,46 +79,97 @@ public class SingleTokenLevelTrainingOutcomeAnnotator extends JCasAnnotator_Impl
 			loadTypeInformation(aJCas);
 		}
 
-//		List<Token> tokens = new ArrayList<Token>(JCasUtil.select(aJCas, Token.class));
-		List<AnnotationFS> classificationTargets = new ArrayList<AnnotationFS>(
-				CasUtil.select(aJCas.getCas(), annotationType));
+		TokenIndex tokenIndex = TokenIndex.build(aJCas);
+		BitSet covered = annotateTargets(aJCas, tokenIndex);
+
+		SequenceWindows windows = new SequenceWindows(aJCas, maxSequenceLength, crossSentence);
+		int next = 0;
+		for (Sentence s : JCasUtil.select(aJCas, Sentence.class)) {
+			int i = tokenIndex.firstAtOrAfter(s.getBegin());
+			if (i != next) {
+				// do not join sentences across tokens of sentences removed by the sampling
+				windows.interrupt();
+			}
+			for (; i < tokenIndex.size() && tokenIndex.getEnd(i) <= s.getEnd(); i++) {
+				windows.addToken(tokenIndex.getBegin(i), tokenIndex.getEnd(i));
+			}
+			windows.endSentence();
+			next = i;
+		}
+		windows.close();
 
-        logger.debug("Found [" + classificationTargets.size() + "] training labels of type ["
-                + annotationType.getName() + "]");
-        classificationTargets.forEach(x -> logger
-                .debug("[" + x.getCoveredText() + "->" + x.getFeatureValueAsString(feature) + "]"));
-		
-		// Annotate the targets
-		for (AnnotationFS a : classificationTargets) {
+		// Annotating all other tokens leads to an extremely skewed distribution of data, i.e. 99%
+		// will be the dummy values; better work only with what have been annotated so far
+		annotateTokensWithoutCoveringTarget(aJCas, tokenIndex, covered);
+	}
 
-			List<Token> tokensCovered = JCasUtil.selectCovered(aJCas, Token.class, a);
-			
+	/**
+	 * Creates a target and an outcome for each token covered by an annotation of the target
+	 * type. The tokens of an annotation are found with a binary search on the token offsets.
+	 *
+	 * @return the positions of the tokens which received a target
+	 */
+	protected BitSet annotateTargets(JCas aJCas, TokenIndex tokenIndex) {
+		boolean debug = logger.isDebugEnabled();
+		BitSet covered = new BitSet(tokenIndex.size());
+		int labels = 0;
+		for (AnnotationFS a : CasUtil.select(aJCas.getCas(), annotationType)) {
+			labels++;
 			// if two or more tokens are covered each is annotated separately
 			String ov = a.getFeatureValueAsString(feature);
-			if(ov == null) {
-                logger.debug("The feature value [" + feature.getName() + "] of text ["
-                        + a.getCoveredText() + "] is null - excluding information from training");
-			    continue;
+			if (debug) {
+				logger.debug("[" + a.getCoveredText() + "->" + ov + "]");
 			}
-			for (Token t : tokensCovered) {
-				TextClassificationTarget aTarget = new TextClassificationTarget(aJCas, t.getBegin(), t.getEnd());
+			if (ov == null) {
+				if (debug) {
+					logger.debug("The feature value [" + feature.getName() + "] of text ["
+							+ a.getCoveredText() + "] is null - excluding information from training");
+				}
+				continue;
+			}
+			boolean first = true;
+			for (int i = tokenIndex.firstAtOrAfter(a.getBegin()); i < tokenIndex.size()
+					&& tokenIndex.getBegin(i) < a.getEnd(); i++) {
+				if (tokenIndex.getEnd(i) > a.getEnd()) {
+					continue;
+				}
+				int begin = tokenIndex.getBegin(i);
+				int end = tokenIndex.getEnd(i);
+				TextClassificationTarget aTarget = new TextClassificationTarget(aJCas, begin, end);
 				aTarget.setId(tcId++);
 				aTarget.addToIndexes();
 
-				TextClassificationOutcome outcome = new TextClassificationOutcome(aJCas, t.getBegin(), t.getEnd());
-				outcome.setOutcome(ov);
+				TextClassificationOutcome outcome = new TextClassificationOutcome(aJCas, begin, end);
+				outcome.setOutcome(outcomeLabel(ov, first));
 				outcome.addToIndexes();
+				covered.set(i);
+				first = false;
 			}
 		}
-
-		for (Sentence s : JCasUtil.select(aJCas, Sentence.class)) {
-			TextClassificationSequence classSeq = new TextClassificationSequence(aJCas, s.getBegin(), s.getEnd());
-			classSeq.addToIndexes();
+		if (debug) {
+			logger.debug("Found [" + labels + "] training labels of type [" + annotationType.getName() + "]");
 		}
-		
-        // This leads to an extremely skewed distribution of data, i.e. 99% will be the dummy values;
-        // better work only with what have been annotated so far
-//		annotateTokensWithoutCoveringTargetAsOther(aJCas, tokens, annotationType);
+		return covered;
+	}
+
+	/**
+	 * The outcome of a token covered by an annotation, the feature value by default
+	 *
+	 * @param first
+	 *            whether the token is the first one covered by the annotation
+	 */
+	protected String outcomeLabel(String value, boolean first) {
+		return value;
+	}
+
+	/**
+	 * Called with the tokens which did not receive a target, does nothing by default
+	 *
+	 * @param covered
+	 *            the positions of the tokens which received a target
+	 */
+	protected void annotateTokensWithoutCoveringTarget(JCas aJCas, TokenIndex tokenIndex, BitSet covered) {
+		// only annotated tokens are used for training
 	}
 
     private void loadTypeInformation(JCas aJCas) {
@@ -116,24 +177,4 @@ public class SingleTokenLevelTrainingOutcomeAnnotator extends JCasAnnotator_Impl
 		feature = FeaturePathUtils.getType(aJCas.getTypeSystem(), annotationName).getFeatureByBaseName(fieldName);
 	}
 
-//	private void annotateTokensWithoutCoveringTargetAsOther(JCas aJCas, List<Token> tokens, Type annotationType) {
-//		for (Token t : tokens) {
-//
-//			List<TextClassificationTarget> targets = JCasUtil.selectCovered(aJCas, TextClassificationTarget.class, t);
-//			if (!targets.isEmpty()) {
-//				// some target is there i.e. has been annotated with a target - skip
-//				continue;
-//			}
-//
-//			TextClassificationTarget aTarget = new TextClassificationTarget(aJCas, t.getBegin(), t.getEnd());
-//			aTarget.setId(tcId++);
-//			aTarget.addToIndexes();
-//
-//			TextClassificationOutcome outcome = new TextClassificationOutcome(aJCas, t.getBegin(), t.getEnd());
-//			outcome.setOutcome(OTHER_OUTCOME);
-//			outcome.addToIndexes();
-//
-//		}
-//	}
-
 }
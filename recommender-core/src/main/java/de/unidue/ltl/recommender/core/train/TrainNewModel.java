@@ -23,11 +23,16 @@ import static org.apache.uima.fit.factory.CollectionReaderFactory.createReaderDe
 import static org.dkpro.tc.api.features.TcFeatureFactory.create;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.apache.uima.analysis_engine.AnalysisEngineDescription;
 import org.apache.uima.collection.CollectionReaderDescription;
+import org.apache.uima.fit.util.CasUtil;
+import org.apache.uima.jcas.JCas;
 import org.apache.uima.resource.ResourceInitializationException;
 import org.apache.uima.resource.metadata.TypeSystemDescription;
+import org.dkpro.tc.api.features.TcFeature;
 import org.dkpro.tc.features.ngram.CharacterNGram;
 import org.dkpro.tc.features.tcu.TargetSurfaceFormContextFeature;
 import org.dkpro.tc.ml.builder.FeatureMode;
@@ -39,32 +44,191 @@ import org.dkpro.tc.ml.experiment.builder.ExperimentType;
 
 import de.tudarmstadt.ukp.dkpro.core.io.bincas.BinaryCasReader;
 import de.unidue.ltl.recommender.core.DKProTcSkeleton;
+import de.unidue.ltl.recommender.core.features.HashedCharacterNGram;
 import de.unidue.ltl.recommender.core.train.report.CleanUpReport;
+import de.unidue.ltl.recommender.core.util.CoreUtil;
+import de.unidue.ltl.recommender.core.util.ModelMetadata;
+import de.unidue.ltl.recommender.core.util.SequenceWindows;
 
 public class TrainNewModel
         extends DKProTcSkeleton {
 
+    private TrainingProfile profile = TrainingProfile.BALANCED;
+    private int characterNGramBuckets = 0;
+    private TrainingBudget budget = TrainingBudget.UNLIMITED;
+    private long trainedTokens = 0;
+    private int maxSequenceLength = SequenceWindows.UNLIMITED;
+    private boolean crossSentence = false;
+
     public TrainNewModel() throws Exception {
         super();
     }
 
+    /**
+     * Selects the feature set and learner. The profile is recorded in the {@link ModelMetadata}
+     * of the trained model.
+     *
+     * @param profile
+     *          the training profile, {@link TrainingProfile#BALANCED} by default
+     */
+    public void setProfile(TrainingProfile profile) {
+        if (profile == null) {
+            throw new NullPointerException("Training profile is null");
+        }
+        this.profile = profile;
+    }
+
+    /**
+     * Uses character n-grams hashed into the given number of buckets instead of the top-k most
+     * frequent character n-grams. This saves the frequency counting pass over the training data
+     * and keeps the model size constant. The setting is stored with the model and applied at
+     * prediction time automatically. Overrides the n-gram setting of the training profile.
+     *
+     * @param buckets
+     *          number of hash buckets, 0 (default) uses the setting of the profile
+     */
+    public void setCharacterNGramHashBuckets(int buckets) {
+        if (buckets < 0) {
+            throw new IllegalArgumentException("Number of buckets must not be negative but was ["
+                    + buckets + "]");
+        }
+        this.characterNGramBuckets = buckets;
+    }
+
+    /**
+     * Limits the size of the training run. If the training data exceeds the budget, a
+     * deterministic subsample of the sentences is trained on, preferring sentences which contain
+     * annotations of the target layer, and the number of crfsuite iterations is capped. The
+     * applied budget is recorded in the {@link ModelMetadata} of the trained model.
+     *
+     * @param budget
+     *          the budget, {@link TrainingBudget#UNLIMITED} by default
+     */
+    public void setBudget(TrainingBudget budget) {
+        if (budget == null) {
+            throw new NullPointerException("Training budget is null");
+        }
+        this.budget = budget;
+    }
+
+    /**
+     * Splits sentences with more tokens than the given length into several training sequences,
+     * see {@link SequenceWindows}. The length is recorded in the {@link ModelMetadata} and
+     * applied at prediction time automatically.
+     *
+     * @param maxSequenceLength
+     *          maximum number of tokens, {@link SequenceWindows#UNLIMITED} by default
+     */
+    public void setMaxSequenceLength(int maxSequenceLength) {
+        if (maxSequenceLength < 0) {
+            throw new IllegalArgumentException("Maximum sequence length must not be negative but was ["
+                    + maxSequenceLength + "]");
+        }
+        this.maxSequenceLength = maxSequenceLength;
+    }
+
+    /**
+     * @param crossSentence
+     *          true to pack consecutive sentences into one training sequence
+     */
+    public void setCrossSentence(boolean crossSentence) {
+        this.crossSentence = crossSentence;
+    }
+
+    /**
+     * @return the number of tokens the last run trained on
+     */
+    public long getTrainedTokens() {
+        return trainedTokens;
+    }
+
     public void run(String[] cas, String typesystem, String annotationName,
                     String annotationFieldName, File targetFolder, String anchorMode)
             throws Exception {
         dkproHome();
 
-        TypeSystemDescription typeSystem = prepare(cas, typesystem);
+        ModelMetadata metadata = new ModelMetadata();
+        TypeSystemDescription typeSystem = prepare(cas, typesystem, annotationName, metadata);
         logger.debug("Created typesystem");
 
+        int maxIterations = metadata.getBoolean(ModelMetadata.KEY_BUDGET_APPLIED, false)
+                ? budget.getMaxIterations() : 0;
+        logger.info("Training with profile [" + profile + "]");
         startTraining(binCasInputFolder, typeSystem, targetFolder, annotationName,
-                annotationFieldName, anchorMode);
+                annotationFieldName, anchorMode, features(), profile.getAlgorithm(),
+                maxIterations, maxSequenceLength, crossSentence);
         logger.debug("Training finished");
 
+        metadata.set(ModelMetadata.KEY_PROFILE, profile.name());
+        metadata.set(ModelMetadata.KEY_ANCHORING_MODE, anchorMode);
+        metadata.set(ModelMetadata.KEY_MAX_SEQUENCE_LENGTH, maxSequenceLength);
+        // sentences are only packed up to a maximum length, see SequenceWindows
+        metadata.set(ModelMetadata.KEY_CROSS_SENTENCE,
+                crossSentence && maxSequenceLength != SequenceWindows.UNLIMITED);
+        metadata.set(ModelMetadata.KEY_CHARACTER_NGRAM_BUCKETS, characterNGramBuckets());
+        if (anchorMode.equals("tokens")) {
+            metadata.set(ModelMetadata.KEY_LABEL_SCHEME,
+                    MultipleTokenSpanLevelTrainingOutcomeAnnotator.LABEL_SCHEME_BIO);
+        }
+        metadata.store(targetFolder);
+
         cleanUp();
     }
 
+    /**
+     * Writes the documents as binary CAS like {@link #prepare(String[], String)}. If the
+     * documents exceed the token limit of the budget, the sentences which were not sampled are
+     * removed before. The documents are deserialized once and kept until the sample is known.
+     */
+    private TypeSystemDescription prepare(String[] casses, String typesystem,
+            String annotationName, ModelMetadata metadata)
+            throws Exception {
+        writeTypeSystemToFile(typesystem);
+        SentenceSampler sampler = new SentenceSampler();
+        List<JCas> documents = new ArrayList<>();
+        for (int i = 0; i < casses.length; i++) {
+            JCas jCas = CoreUtil.deserialize(casses[i], typeSystemXML);
+            sampler.collect(i, jCas, CasUtil.getAnnotationType(jCas.getCas(), annotationName));
+            documents.add(jCas);
+        }
+
+        int tokenLimit = budget.getTokenLimit();
+        trainedTokens = sampler.getNumberOfTokens();
+        metadata.set(ModelMetadata.KEY_TOKENS, sampler.getNumberOfTokens());
+        boolean exceeded = sampler.getNumberOfTokens() > tokenLimit;
+        if (exceeded) {
+            sampler.select(casses.length, tokenLimit);
+        }
+        for (int i = 0; i < casses.length; i++) {
+            JCas jCas = documents.get(i);
+            if (exceeded) {
+                sampler.removeUnselected(i, jCas,
+                        CasUtil.getAnnotationType(jCas.getCas(), annotationName));
+            }
+            CoreUtil.writeCasBinary(jCas, binCasInputFolder);
+            documents.set(i, null);
+        }
+        if (!exceeded) {
+            return null;
+        }
+        trainedTokens = sampler.getNumberOfSelectedTokens();
+
+        logger.info("Training data of [" + sampler.getNumberOfTokens() + "] tokens exceeds budget "
+                + budget + " - training on [" + sampler.getNumberOfSelectedSentences() + "/"
+                + sampler.getNumberOfSentences() + "] sentences with ["
+                + sampler.getNumberOfSelectedTokens() + "] tokens");
+        metadata.set(ModelMetadata.KEY_BUDGET_APPLIED, true);
+        metadata.set(ModelMetadata.KEY_BUDGET_TOKENS, sampler.getNumberOfSelectedTokens());
+        metadata.set(ModelMetadata.KEY_BUDGET_SENTENCES, sampler.getNumberOfSelectedSentences()
+                + "/" + sampler.getNumberOfSentences());
+        metadata.set(ModelMetadata.KEY_BUDGET_MAX_ITERATIONS, budget.getMaxIterations());
+        return null;
+    }
+
     private static void startTraining(File casPredictOutput, TypeSystemDescription typeSystem,
-            File targetFolder, String annotationName, String annotationFieldName, String anchorMode)
+            File targetFolder, String annotationName, String annotationFieldName, String anchorMode,
+            TcFeature[] features, String algorithm, int maxIterations, int maxSequenceLength,
+            boolean crossSentence)
             throws Exception {
 
         CollectionReaderDescription trainReader = createReaderDescription(
@@ -76,6 +240,11 @@ public class TrainNewModel
                 BinaryCasReader.PARAM_OVERRIDE_DOCUMENT_METADATA, true
         );
 
+        MLBackend backend = maxIterations > 0
+                ? new MLBackend(new CrfSuiteAdapter(), algorithm, "-p",
+                        "max_iterations=" + maxIterations)
+                : new MLBackend(new CrfSuiteAdapter(), algorithm);
+
         ExperimentBuilder builder = new ExperimentBuilder();
         builder.experiment(ExperimentType.SAVE_MODEL, "InceptionTrain")
                 .dataReaderTrain(trainReader)
@@ -83,44 +252,71 @@ public class TrainNewModel
                 .learningMode(LearningMode.SINGLE_LABEL)
                 .outputFolder(targetFolder.getAbsolutePath())
                 .reports(new CleanUpReport())
-                .machineLearningBackend(
-                        new MLBackend(new CrfSuiteAdapter(),
-                                CrfSuiteAdapter.ALGORITHM_ADAPTIVE_REGULARIZATION_OF_WEIGHT_VECTOR))
+                .machineLearningBackend(backend)
                 .preprocessing(
-                        getModeDependentTargetDefiner(anchorMode, annotationName, annotationFieldName)
+                        getModeDependentTargetDefiner(anchorMode, annotationName, annotationFieldName,
+                                maxSequenceLength, crossSentence)
                         )
-                .features(create(TargetSurfaceFormContextFeature.class,
-                        TargetSurfaceFormContextFeature.PARAM_RELATIVE_TARGET_ANNOTATION_INDEX, -2)
-                        , create(TargetSurfaceFormContextFeature.class,
-                                TargetSurfaceFormContextFeature.PARAM_RELATIVE_TARGET_ANNOTATION_INDEX, -1)
-                        , create(TargetSurfaceFormContextFeature.class,
-                                TargetSurfaceFormContextFeature.PARAM_RELATIVE_TARGET_ANNOTATION_INDEX, 0)
-                        , create(CharacterNGram.class,
-                                CharacterNGram.PARAM_NGRAM_USE_TOP_K, 2500,
-                                CharacterNGram.PARAM_NGRAM_LOWER_CASE, true,
-                                CharacterNGram.PARAM_NGRAM_MIN_N, 2,
-                                CharacterNGram.PARAM_NGRAM_MAX_N, 4)
-                )
+                .features(features)
                 .run();
 
     }
 
+    /**
+     * @return the hash buckets of the character n-grams, 0 if the most frequent ones are used
+     */
+    private int characterNGramBuckets() {
+        return characterNGramBuckets > 0 ? characterNGramBuckets : profile.getNgramHashBuckets();
+    }
+
+    private TcFeature[] features() {
+        List<TcFeature> features = new ArrayList<>();
+        for (int idx : profile.getContextWindow()) {
+            features.add(create(TargetSurfaceFormContextFeature.class,
+                    TargetSurfaceFormContextFeature.PARAM_RELATIVE_TARGET_ANNOTATION_INDEX, idx));
+        }
+
+        int buckets = characterNGramBuckets();
+        if (buckets > 0) {
+            features.add(create(HashedCharacterNGram.class,
+                    HashedCharacterNGram.PARAM_NUMBER_OF_BUCKETS, buckets,
+                    HashedCharacterNGram.PARAM_SIGNED_HASHING, true,
+                    HashedCharacterNGram.PARAM_NGRAM_LOWER_CASE, true,
+                    HashedCharacterNGram.PARAM_NGRAM_MIN_N, profile.getNgramMinN(),
+                    HashedCharacterNGram.PARAM_NGRAM_MAX_N, profile.getNgramMaxN()));
+        }
+        else {
+            features.add(create(CharacterNGram.class,
+                    CharacterNGram.PARAM_NGRAM_USE_TOP_K, profile.getNgramTopK(),
+                    CharacterNGram.PARAM_NGRAM_LOWER_CASE, true,
+                    CharacterNGram.PARAM_NGRAM_MIN_N, profile.getNgramMinN(),
+                    CharacterNGram.PARAM_NGRAM_MAX_N, profile.getNgramMaxN()));
+        }
+
+        return features.toArray(new TcFeature[0]);
+    }
+
     private static AnalysisEngineDescription getModeDependentTargetDefiner(String anchoringMode,
-            String annotationName, String annotationFieldName) throws ResourceInitializationException
+            String annotationName, String annotationFieldName, int maxSequenceLength,
+            boolean crossSentence) throws ResourceInitializationException
     {
         if (anchoringMode.equals("singleToken")) {
             return createEngineDescription(SingleTokenLevelTrainingOutcomeAnnotator.class,
                     SingleTokenLevelTrainingOutcomeAnnotator.PARAM_ANNOTATION_TARGET_NAME,
                     annotationName,
                     SingleTokenLevelTrainingOutcomeAnnotator.PARAM_ANNOTATION_TARGET_FIELD_NAME,
-                    annotationFieldName);
+                    annotationFieldName,
+                    SingleTokenLevelTrainingOutcomeAnnotator.PARAM_MAX_SEQUENCE_LENGTH, maxSequenceLength,
+                    SingleTokenLevelTrainingOutcomeAnnotator.PARAM_CROSS_SENTENCE, crossSentence);
         }
         else if (anchoringMode.equals("tokens")) {
             return createEngineDescription(MultipleTokenSpanLevelTrainingOutcomeAnnotator.class,
                     MultipleTokenSpanLevelTrainingOutcomeAnnotator.PARAM_ANNOTATION_TARGET_NAME,
                     annotationName,
                     MultipleTokenSpanLevelTrainingOutcomeAnnotator.PARAM_ANNOTATION_TARGET_FIELD_NAME,
-                    annotationFieldName);
+                    annotationFieldName,
+                    MultipleTokenSpanLevelTrainingOutcomeAnnotator.PARAM_MAX_SEQUENCE_LENGTH, maxSequenceLength,
+                    MultipleTokenSpanLevelTrainingOutcomeAnnotator.PARAM_CROSS_SENTENCE, crossSentence);
         }
        
         
@@ -0,0 +1,82 @@
+/*******************************************************************************
+ * Copyright 2018
+ * Language Technology Lab
+ * University of Duisburg-Essen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package de.unidue.ltl.recommender.core.train;
+
+/**
+ * Upper bound for the size of a training run. A wall-clock budget is converted into a number of
+ * tokens with an estimate of the training throughput. If the training data exceeds the budget,
+ * {@link TrainNewModel} subsamples sentences and caps the crfsuite iterations.
+ */
+public class TrainingBudget
+{
+    public static final TrainingBudget UNLIMITED = new TrainingBudget(0, 0, 0, 0);
+
+    private final int maxTokens;
+    private final int maxSeconds;
+    private final double tokensPerSecond;
+    private final int maxIterations;
+
+    /**
+     * @param maxTokens
+     *            maximal number of tokens to train on, 0 for no limit
+     * @param maxSeconds
+     *            wall-clock seconds a training may take, 0 for no limit
+     * @param tokensPerSecond
+     *            estimated training throughput used to convert seconds into tokens
+     * @param maxIterations
+     *            crfsuite iterations if the budget is exceeded, 0 keeps the crfsuite default
+     */
+    public TrainingBudget(int maxTokens, int maxSeconds, double tokensPerSecond,
+            int maxIterations)
+    {
+        this.maxTokens = maxTokens;
+        this.maxSeconds = maxSeconds;
+        this.tokensPerSecond = tokensPerSecond;
+        this.maxIterations = maxIterations;
+    }
+
+    /**
+     * @return the number of tokens which can be trained on, {@link Integer#MAX_VALUE} if there is
+     *         no limit
+     */
+    public int getTokenLimit()
+    {
+        long limit = Integer.MAX_VALUE;
+        if (maxTokens > 0) {
+            limit = maxTokens;
+        }
+        if (maxSeconds > 0 && tokensPerSecond > 0) {
+            limit = Math.min(limit, (long) (maxSeconds * tokensPerSecond));
+        }
+        return (int) Math.max(1, limit);
+    }
+
+    public int getMaxIterations()
+    {
+        return maxIterations;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "maxTokens [" + maxTokens + "] maxSeconds [" + maxSeconds + "] tokensPerSecond ["
+                + String.format("%.1f", tokensPerSecond) + "] maxIterations [" + maxIterations
+                + "]";
+    }
+}
@@ -0,0 +1,116 @@
+/*******************************************************************************
+ * Copyright 2018
+ * Language Technology Lab
+ * University of Duisburg-Essen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package de.unidue.ltl.recommender.core.train;
+
+import static de.unidue.ltl.recommender.core.util.CasFingerprint.hex;
+import static de.unidue.ltl.recommender.core.util.CasFingerprint.sha256;
+import static de.unidue.ltl.recommender.core.util.CasFingerprint.update;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.File;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.uima.fit.util.JCasUtil;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.pear.util.FileUtil;
+
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
+import de.unidue.ltl.recommender.core.util.CasFingerprint;
+import de.unidue.ltl.recommender.core.util.CoreUtil;
+
+/**
+ * Canonical hash of everything a training run depends on: the text, tokens and sentences of
+ * each document, the annotations of the target layer with the value of the target feature, the
+ * anchoring mode, the feature configuration, the type system and the training budget if it
+ * truncates the documents. Other layers do not contribute. The order of the documents only
+ * contributes if the budget truncates them, as the {@link SentenceSampler} ranks the sentences by
+ * document index; two requests which only differ in the order of documents within the budget
+ * yield the same fingerprint and would train the same model.
+ */
+public class TrainingFingerprint
+{
+    /**
+     * @param cas
+     *          the input cas objects
+     * @param typesystem
+     *          the typesystem
+     * @param annotationName
+     *          the name of the annotation which is the target
+     * @param annotationFieldName
+     *          the field of the annotation in which the value is stored
+     * @param anchoringMode
+     *          the anchoring mode
+     * @param configuration
+     *          a description of the feature and learner configuration
+     * @param budget
+     *          the training budget, which only contributes if the documents exceed it
+     * @return the fingerprint as hex string
+     * @throws Exception
+     *          in case of an error
+     */
+    public static String compute(String[] cas, String typesystem, String annotationName,
+            String annotationFieldName, String anchoringMode, String configuration,
+            TrainingBudget budget)
+        throws Exception
+    {
+        File typeSystemXML = FileUtil.createTempFile("typeSystemFingerprint", ".txt");
+        try {
+            FileUtils.writeStringToFile(typeSystemXML, typesystem, UTF_8);
+
+            List<String> documents = new ArrayList<>();
+            long tokens = 0;
+            for (String c : cas) {
+                JCas jcas = CoreUtil.deserialize(c, typeSystemXML);
+                documents.add(
+                        hex(CasFingerprint.digest(jcas, annotationName, annotationFieldName)));
+                // counted like the SentenceSampler does
+                for (Sentence s : JCasUtil.select(jcas, Sentence.class)) {
+                    tokens += JCasUtil.selectCovered(jcas, Token.class, s).size();
+                }
+            }
+            // a wall-clock budget yields a different token limit after every training, it only
+            // matters if it truncates the documents
+            boolean truncated = tokens > budget.getTokenLimit();
+            if (!truncated) {
+                documents.sort(null);
+            }
+
+            MessageDigest digest = sha256();
+            update(digest, hex(sha256().digest(typesystem.getBytes(UTF_8))));
+            update(digest, annotationName);
+            update(digest, annotationFieldName);
+            update(digest, anchoringMode);
+            update(digest, configuration);
+            update(digest, truncated
+                    ? "budget=" + budget.getTokenLimit() + "/" + budget.getMaxIterations()
+                    : "budget=none");
+            for (String d : documents) {
+                update(digest, d);
+            }
+            return hex(digest.digest());
+        }
+        finally {
+            FileUtils.deleteQuietly(typeSystemXML);
+        }
+    }
+}
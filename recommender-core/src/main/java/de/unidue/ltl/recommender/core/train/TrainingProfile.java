@@ -0,0 +1,117 @@
+/*******************************************************************************
+ * Copyright 2018
+ * Language Technology Lab
+ * University of Duisburg-Essen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package de.unidue.ltl.recommender.core.train;
+
+import org.dkpro.tc.ml.crfsuite.CrfSuiteAdapter;
+
+/**
+ * Named combinations of feature set and learner which trade accuracy for training and prediction
+ * speed. {@link #BALANCED} is the configuration the recommender has always been using.
+ */
+public enum TrainingProfile
+{
+    /** Surface form of the previous and current token, hashed character 2-3 grams, perceptron */
+    FAST(new int[] { -1, 0 }, 2, 3, 0, 4096,
+            CrfSuiteAdapter.ALGORITHM_AVERAGED_PERCEPTRON),
+
+    /** Surface form of the two previous and current token, top 2500 character 2-4 grams, AROW */
+    BALANCED(new int[] { -2, -1, 0 }, 2, 4, 2500, 0,
+            CrfSuiteAdapter.ALGORITHM_ADAPTIVE_REGULARIZATION_OF_WEIGHT_VECTOR),
+
+    /** Surface form of a +/-2 token window, top 5000 character 1-5 grams, L-BFGS */
+    ACCURATE(new int[] { -2, -1, 0, 1, 2 }, 1, 5, 5000, 0, CrfSuiteAdapter.ALGORITHM_LBFGS);
+
+    private final int[] contextWindow;
+    private final int ngramMinN;
+    private final int ngramMaxN;
+    private final int ngramTopK;
+    private final int ngramHashBuckets;
+    private final String algorithm;
+
+    private TrainingProfile(int[] contextWindow, int ngramMinN, int ngramMaxN, int ngramTopK,
+            int ngramHashBuckets, String algorithm)
+    {
+        this.contextWindow = contextWindow;
+        this.ngramMinN = ngramMinN;
+        this.ngramMaxN = ngramMaxN;
+        this.ngramTopK = ngramTopK;
+        this.ngramHashBuckets = ngramHashBuckets;
+        this.algorithm = algorithm;
+    }
+
+    /**
+     * @param name
+     *            the name of a profile, case is ignored. Null or empty selects {@link #BALANCED}
+     * @return the profile
+     */
+    public static TrainingProfile fromName(String name)
+    {
+        if (name == null || name.trim().isEmpty()) {
+            return BALANCED;
+        }
+        for (TrainingProfile p : values()) {
+            if (p.name().equalsIgnoreCase(name.trim())) {
+                return p;
+            }
+        }
+        throw new IllegalArgumentException("Training profile [" + name + "] is unknown");
+    }
+
+    /**
+     * @return relative token positions of which the surface form is used as feature
+     */
+    public int[] getContextWindow()
+    {
+        return contextWindow.clone();
+    }
+
+    public int getNgramMinN()
+    {
+        return ngramMinN;
+    }
+
+    public int getNgramMaxN()
+    {
+        return ngramMaxN;
+    }
+
+    /**
+     * @return the size of the character n-gram vocabulary, only used if no hashing is configured
+     */
+    public int getNgramTopK()
+    {
+        return ngramTopK;
+    }
+
+    /**
+     * @return the number of hash buckets for character n-grams, 0 if the top-k vocabulary is used
+     */
+    public int getNgramHashBuckets()
+    {
+        return ngramHashBuckets;
+    }
+
+    /**
+     * @return the crfsuite training algorithm
+     */
+    public String getAlgorithm()
+    {
+        return algorithm;
+    }
+}
@@ -0,0 +1,140 @@
+/*******************************************************************************
+ * Copyright 2018
+ * Language Technology Lab
+ * University of Duisburg-Essen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package de.unidue.ltl.recommender.core.util;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.InputStream;
+import java.security.MessageDigest;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.uima.UIMAFramework;
+import org.apache.uima.cas.Feature;
+import org.apache.uima.cas.Type;
+import org.apache.uima.cas.impl.XmiCasDeserializer;
+import org.apache.uima.cas.text.AnnotationFS;
+import org.apache.uima.fit.factory.JCasFactory;
+import org.apache.uima.fit.util.CasUtil;
+import org.apache.uima.fit.util.JCasUtil;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.metadata.TypeSystemDescription;
+import org.apache.uima.util.XMLInputSource;
+
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
+
+/**
+ * SHA-256 hashes over the parts of a CAS the recommender reads: the document text, the
+ * sentences, the tokens and the annotations of the target layer with the value of the target
+ * feature. Other layers do not contribute.
+ */
+public class CasFingerprint
+{
+    /**
+     * Deserializes a document and hashes it
+     *
+     * @param xmi
+     *          the document as xmi string
+     * @param typesystem
+     *          the typesystem
+     * @param annotationName
+     *          the name of the annotation which is the target
+     * @param annotationFieldName
+     *          the field of the annotation in which the value is stored
+     * @return the hash of the document as hex string
+     * @throws Exception
+     *          in case of an error
+     */
+    public static String ofDocument(String xmi, String typesystem, String annotationName,
+            String annotationFieldName)
+        throws Exception
+    {
+        TypeSystemDescription tsd;
+        try (InputStream is = IOUtils.toInputStream(typesystem, UTF_8)) {
+            tsd = UIMAFramework.getXMLParser()
+                    .parseTypeSystemDescription(new XMLInputSource(is, null));
+        }
+        JCas jcas = JCasFactory.createJCas(tsd);
+        try (InputStream is = IOUtils.toInputStream(xmi, UTF_8)) {
+            XmiCasDeserializer.deserialize(is, jcas.getCas(), true);
+        }
+        return hex(digest(jcas, annotationName, annotationFieldName));
+    }
+
+    /**
+     * @param jcas
+     *          the document
+     * @param annotationName
+     *          the name of the annotation which is the target
+     * @param annotationFieldName
+     *          the field of the annotation in which the value is stored
+     * @return the hash of the document
+     */
+    public static byte[] digest(JCas jcas, String annotationName, String annotationFieldName)
+    {
+        MessageDigest digest = sha256();
+        update(digest, "D" + jcas.getDocumentText());
+        for (Sentence s : JCasUtil.select(jcas, Sentence.class)) {
+            update(digest, "S" + s.getBegin() + ":" + s.getEnd());
+        }
+        for (Token t : JCasUtil.select(jcas, Token.class)) {
+            update(digest, "T" + t.getBegin() + ":" + t.getEnd());
+        }
+
+        Type type = CasUtil.getAnnotationType(jcas.getCas(), annotationName);
+        Feature feature = type.getFeatureByBaseName(annotationFieldName);
+        for (AnnotationFS a : CasUtil.select(jcas.getCas(), type)) {
+            update(digest, "A" + a.getBegin() + ":" + a.getEnd() + ":"
+                    + (feature != null ? a.getFeatureValueAsString(feature) : ""));
+        }
+        return digest.digest();
+    }
+
+    /**
+     * Adds a length-prefixed string to a digest, which keeps a sequence of values unambiguous
+     */
+    public static void update(MessageDigest digest, String value)
+    {
+        byte[] bytes = String.valueOf(value).getBytes(UTF_8);
+        digest.update((byte) (bytes.length >>> 24));
+        digest.update((byte) (bytes.length >>> 16));
+        digest.update((byte) (bytes.length >>> 8));
+        digest.update((byte) bytes.length);
+        digest.update(bytes);
+    }
+
+    public static MessageDigest sha256()
+    {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        }
+        catch (Exception e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    public static String hex(byte[] bytes)
+    {
+        StringBuilder sb = new StringBuilder(2 * bytes.length);
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+}
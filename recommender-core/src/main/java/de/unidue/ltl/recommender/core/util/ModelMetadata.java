@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * Copyright 2018
+ * Language Technology Lab
+ * University of Duisburg-Essen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package de.unidue.ltl.recommender.core.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+/**
+ * Information about how a model was trained, stored as properties file in the model folder next
+ * to the files written by DKPro TC. Models trained before this file was introduced have none, all
+ * getters return the respective defaults in this case.
+ */
+public class ModelMetadata
+{
+    public static final String FILE_NAME = "recommender-model.properties";
+
+    public static final String KEY_PROFILE = "profile";
+    public static final String KEY_ANCHORING_MODE = "anchoringMode";
+    public static final String KEY_LABEL_SCHEME = "labelScheme";
+    public static final String KEY_MAX_SEQUENCE_LENGTH = "sequence.maxLength";
+    public static final String KEY_CROSS_SENTENCE = "sequence.crossSentence";
+    public static final String KEY_CHARACTER_NGRAM_BUCKETS = "features.characterNGramBuckets";
+    public static final String KEY_TOKENS = "tokens";
+    public static final String KEY_BUDGET_APPLIED = "budget.applied";
+    public static final String KEY_BUDGET_TOKENS = "budget.tokens";
+    public static final String KEY_BUDGET_SENTENCES = "budget.sentences";
+    public static final String KEY_BUDGET_MAX_ITERATIONS = "budget.maxIterations";
+
+    private final Properties properties = new Properties();
+
+    public static ModelMetadata load(File modelFolder) throws IOException
+    {
+        ModelMetadata metadata = new ModelMetadata();
+        File file = new File(modelFolder, FILE_NAME);
+        if (file.exists()) {
+            try (InputStream is = new FileInputStream(file)) {
+                metadata.properties.load(is);
+            }
+        }
+        return metadata;
+    }
+
+    public void store(File modelFolder) throws IOException
+    {
+        try (OutputStream os = new FileOutputStream(new File(modelFolder, FILE_NAME))) {
+            properties.store(os, "Written by the INCEpTION DKPro TC recommender");
+        }
+    }
+
+    public String get(String key, String defaultValue)
+    {
+        return properties.getProperty(key, defaultValue);
+    }
+
+    public void set(String key, Object value)
+    {
+        properties.setProperty(key, String.valueOf(value));
+    }
+
+    public int getInt(String key, int defaultValue)
+    {
+        String value = properties.getProperty(key);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+
+    public boolean getBoolean(String key, boolean defaultValue)
+    {
+        String value = properties.getProperty(key);
+        return value == null ? defaultValue : Boolean.parseBoolean(value);
+    }
+
+    @Override
+    public String toString()
+    {
+        return properties.toString();
+    }
+}
@@ -0,0 +1,177 @@
+/*******************************************************************************
+ * Copyright 2018
+ * Language Technology Lab
+ * University of Duisburg-Essen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package de.unidue.ltl.recommender.core.util;
+
+import java.util.Arrays;
+
+import org.apache.uima.jcas.JCas;
+import org.dkpro.tc.api.type.TextClassificationSequence;
+
+/**
+ * Creates the {@link TextClassificationSequence} annotations which are labeled by the model as a
+ * whole. The tokens are fed sentence by sentence; by default each sentence becomes a sequence of
+ * its own. Sentences with more than the maximum number of tokens, e.g. the result of a bad
+ * sentence splitting of tables or OCR output, are split into consecutive windows of balanced
+ * length, which bounds the cost of labeling a single sequence. In the cross sentence mode
+ * consecutive sentences are packed into one sequence as long as it does not exceed the maximum
+ * length; without a maximum length each sentence remains a sequence of its own, as a whole document
+ * would become one sequence of unbounded length. Training and prediction use the same windows so the model sees sequences of the same
+ * shape in both cases.
+ * <p>
+ * The windows do not overlap, DKPro TC assigns each target to the sequences covering it, a token
+ * in two sequences would be labeled twice.
+ */
+public class SequenceWindows
+{
+    /** no limit on the number of tokens of a sequence */
+    public static final int UNLIMITED = 0;
+
+    private final JCas jcas;
+    private final int maxLength;
+    private final boolean crossSentence;
+
+    /** token offsets of the current sentence */
+    private int[] begins = new int[64];
+    private int[] ends = new int[64];
+    private int count;
+
+    /** sentences packed into the pending sequence in the cross sentence mode */
+    private int pendingBegin;
+    private int pendingEnd;
+    private int pendingCount;
+
+    private int sequences;
+    private int split;
+
+    /**
+     * @param maxLength
+     *            maximum number of tokens of a sequence or {@link #UNLIMITED}
+     * @param crossSentence
+     *            true to pack consecutive sentences into one sequence, ignored without a maximum
+     *            length
+     */
+    public SequenceWindows(JCas jcas, int maxLength, boolean crossSentence)
+    {
+        this.jcas = jcas;
+        this.maxLength = maxLength;
+        this.crossSentence = crossSentence && maxLength != UNLIMITED;
+    }
+
+    public void addToken(int begin, int end)
+    {
+        if (count == begins.length) {
+            begins = Arrays.copyOf(begins, 2 * count);
+            ends = Arrays.copyOf(ends, 2 * count);
+        }
+        begins[count] = begin;
+        ends[count] = end;
+        count++;
+    }
+
+    /**
+     * Ends the current sentence. Its tokens either become one or more sequences or, in the cross
+     * sentence mode, are joined with the pending sequence.
+     */
+    public void endSentence()
+    {
+        if (count == 0) {
+            return;
+        }
+        boolean exceeds = maxLength != UNLIMITED && count > maxLength;
+        if (!crossSentence || exceeds) {
+            flush();
+            split(count);
+        }
+        else {
+            if (pendingCount + count > maxLength) {
+                flush();
+            }
+            if (pendingCount == 0) {
+                pendingBegin = begins[0];
+            }
+            pendingEnd = ends[count - 1];
+            pendingCount += count;
+        }
+        count = 0;
+    }
+
+    /**
+     * Ends the pending sequence, the following sentences are not joined with the previous ones.
+     * Called for sentences which are not sent to the model.
+     */
+    public void interrupt()
+    {
+        count = 0;
+        flush();
+    }
+
+    /**
+     * Writes the pending sequence, must be called after the last sentence of a document
+     */
+    public void close()
+    {
+        endSentence();
+        flush();
+    }
+
+    private void flush()
+    {
+        if (pendingCount > 0) {
+            addSequence(pendingBegin, pendingEnd);
+            pendingCount = 0;
+        }
+    }
+
+    private void split(int n)
+    {
+        int windows = maxLength == UNLIMITED ? 1 : (n + maxLength - 1) / maxLength;
+        if (windows > 1) {
+            split++;
+        }
+        int first = 0;
+        for (int w = 0; w < windows; w++) {
+            // the first (n % windows) windows take one token more
+            int length = n / windows + (w < n % windows ? 1 : 0);
+            addSequence(begins[first], ends[first + length - 1]);
+            first += length;
+        }
+    }
+
+    private void addSequence(int begin, int end)
+    {
+        new TextClassificationSequence(jcas, begin, end).addToIndexes();
+        sequences++;
+    }
+
+    /**
+     * @return the number of sequences created so far
+     */
+    public int getNumberOfSequences()
+    {
+        return sequences;
+    }
+
+    /**
+     * @return the number of sentences which were split as they exceed the maximum length
+     */
+    public int getNumberOfSplitSentences()
+    {
+        return split;
+    }
+}
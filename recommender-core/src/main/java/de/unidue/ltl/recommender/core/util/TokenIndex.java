@@ -0,0 +1,141 @@
+/*******************************************************************************
+ * Copyright 2018
+ * Language Technology Lab
+ * University of Duisburg-Essen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package de.unidue.ltl.recommender.core.util;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.Feature;
+import org.apache.uima.cas.Type;
+import org.apache.uima.cas.text.AnnotationFS;
+import org.apache.uima.fit.util.CasUtil;
+import org.apache.uima.fit.util.JCasUtil;
+import org.apache.uima.jcas.JCas;
+
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
+
+/**
+ * The tokens of a document in index order with their offsets in primitive arrays. Tokens are
+ * addressed by their position, which allows to mark sets of tokens in a {@link BitSet} and to
+ * find tokens by offset with a binary search instead of an index query.
+ */
+public class TokenIndex
+{
+    private final Token[] tokens;
+    private final int[] begins;
+    private final int[] ends;
+
+    private TokenIndex(Token[] tokens, int[] begins, int[] ends)
+    {
+        this.tokens = tokens;
+        this.begins = begins;
+        this.ends = ends;
+    }
+
+    public static TokenIndex build(JCas jcas)
+    {
+        int size = jcas.getAnnotationIndex(Token.type).size();
+        Token[] tokens = new Token[size];
+        int[] begins = new int[size];
+        int[] ends = new int[size];
+        int i = 0;
+        for (Token t : JCasUtil.select(jcas, Token.class)) {
+            tokens[i] = t;
+            begins[i] = t.getBegin();
+            ends[i] = t.getEnd();
+            i++;
+        }
+        return new TokenIndex(tokens, begins, ends);
+    }
+
+    public int size()
+    {
+        return tokens.length;
+    }
+
+    public Token get(int i)
+    {
+        return tokens[i];
+    }
+
+    public int getBegin(int i)
+    {
+        return begins[i];
+    }
+
+    public int getEnd(int i)
+    {
+        return ends[i];
+    }
+
+    /**
+     * @return the position of the first token which begins at or after the offset, or
+     *         {@link #size()} if there is none
+     */
+    public int firstAtOrAfter(int offset)
+    {
+        int idx = Arrays.binarySearch(begins, offset);
+        if (idx < 0) {
+            return -idx - 1;
+        }
+        // several tokens may begin at the same offset
+        while (idx > 0 && begins[idx - 1] == offset) {
+            idx--;
+        }
+        return idx;
+    }
+
+    /**
+     * @return the position of a token which begins at the offset, or -1 if there is none
+     */
+    public int indexOf(int begin)
+    {
+        int idx = firstAtOrAfter(begin);
+        return idx < begins.length && begins[idx] == begin ? idx : -1;
+    }
+
+    /**
+     * Marks the tokens which are covered by an annotation of the given type
+     *
+     * @param cas
+     *          the document
+     * @param type
+     *          the annotation type
+     * @param feature
+     *          if not null, only annotations with a value for this feature count
+     * @return the positions of the covered tokens
+     */
+    public BitSet covered(CAS cas, Type type, Feature feature)
+    {
+        BitSet covered = new BitSet(tokens.length);
+        for (AnnotationFS a : CasUtil.select(cas, type)) {
+            if (feature != null && a.getFeatureValueAsString(feature) == null) {
+                continue;
+            }
+            for (int i = firstAtOrAfter(a.getBegin()); i < tokens.length
+                    && begins[i] < a.getEnd(); i++) {
+                if (ends[i] <= a.getEnd()) {
+                    covered.set(i);
+                }
+            }
+        }
+        return covered;
+    }
+}
@@ -0,0 +1,116 @@
+/*******************************************************************************
+ * Copyright 2018
+ * Language Technology Lab
+ * University of Duisburg-Essen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package de.unidue.ltl.recommender.core.features;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.uima.fit.factory.ExternalResourceFactory;
+import org.apache.uima.fit.factory.JCasFactory;
+import org.apache.uima.jcas.JCas;
+import org.dkpro.tc.api.features.Feature;
+import org.dkpro.tc.api.type.TextClassificationTarget;
+import org.junit.Test;
+
+public class HashedCharacterNGramTest
+{
+    @Test
+    public void testBucketsAreStable() throws Exception
+    {
+        // the buckets are part of trained models and must not change between versions
+        Map<Integer, Integer> expected = new TreeMap<>();
+        int[][] buckets = { { 312, 1 }, { 313, 1 }, { 866, -1 }, { 902, 1 }, { 940, 1 },
+                { 1930, -1 }, { 2021, 1 }, { 2438, -1 }, { 3250, 1 }, { 3355, 1 }, { 3713, -1 },
+                { 4049, -1 } };
+        for (int[] b : buckets) {
+            expected.put(b[0], b[1]);
+        }
+
+        assertEquals(expected, extract("Haus", 2, 4, 4096, true));
+        assertEquals(expected, extract("haus", 2, 4, 4096, true));
+    }
+
+    @Test
+    public void testSignedHashing() throws Exception
+    {
+        Map<Integer, Integer> signed = extract("recommender", 2, 4, 4096, true);
+        Map<Integer, Integer> unsigned = extract("recommender", 2, 4, 4096, false);
+
+        assertEquals(unsigned.keySet(), signed.keySet());
+        int ngrams = 0;
+        for (int bucket : unsigned.keySet()) {
+            assertTrue(unsigned.get(bucket) > 0);
+            assertEquals(Math.abs((int) unsigned.get(bucket)), Math.abs((int) signed.get(bucket)));
+            ngrams += unsigned.get(bucket);
+        }
+        // 12 bigrams, 11 trigrams and 10 fourgrams of "^recommender$"
+        assertEquals(33, ngrams);
+        assertTrue(signed.containsValue(-1));
+    }
+
+    @Test
+    public void testEqualBucketsAreSummed() throws Exception
+    {
+        // "^aaaa$" has three times "aa" and twice "aaa"
+        Map<Integer, Integer> features = extract("aaaa", 2, 4, 4096, false);
+        assertEquals(3, (int) features.get(3874));
+        assertEquals(2, (int) features.get(3624));
+        assertEquals(9, features.size());
+    }
+
+    @Test
+    public void testBucketsSummingToZeroAreOmitted() throws Exception
+    {
+        // the signs of the bigrams of "^house$" cancel out in a single bucket
+        assertEquals(0, extract("house", 2, 2, 1, true).size());
+        assertEquals(-5, (int) extract("tree", 2, 2, 1, true).get(0));
+    }
+
+    private static Map<Integer, Integer> extract(String text, int minN, int maxN, int buckets,
+            boolean signed)
+        throws Exception
+    {
+        HashedCharacterNGram extractor = new HashedCharacterNGram();
+        extractor.initialize(ExternalResourceFactory
+                .createExternalResourceDescription(HashedCharacterNGram.class,
+                        HashedCharacterNGram.PARAM_NGRAM_MIN_N, minN,
+                        HashedCharacterNGram.PARAM_NGRAM_MAX_N, maxN,
+                        HashedCharacterNGram.PARAM_NUMBER_OF_BUCKETS, buckets,
+                        HashedCharacterNGram.PARAM_SIGNED_HASHING, signed)
+                .getResourceSpecifier(), new HashMap<String, Object>());
+
+        JCas jcas = JCasFactory.createJCas();
+        jcas.setDocumentText(text);
+        TextClassificationTarget target = new TextClassificationTarget(jcas, 0, text.length());
+        target.addToIndexes();
+
+        Map<Integer, Integer> features = new TreeMap<>();
+        for (Feature f : extractor.extract(jcas, target)) {
+            assertTrue(f.getName().startsWith(HashedCharacterNGram.FEATURE_PREFIX));
+            features.put(
+                    Integer.parseInt(
+                            f.getName().substring(HashedCharacterNGram.FEATURE_PREFIX.length())),
+                    ((Number) f.getValue()).intValue());
+        }
+        return features;
+    }
+}
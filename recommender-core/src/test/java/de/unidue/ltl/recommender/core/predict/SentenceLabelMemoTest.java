@@ -0,0 +1,198 @@
+/*******************************************************************************
+ * Copyright 2018
+ * Language Technology Lab
+ * University of Duisburg-Essen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package de.unidue.ltl.recommender.core.predict;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.uima.fit.factory.AnalysisEngineFactory;
+import org.apache.uima.fit.factory.JCasFactory;
+import org.apache.uima.fit.util.JCasUtil;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.jcas.tcas.Annotation;
+import org.dkpro.tc.api.type.TextClassificationOutcome;
+import org.dkpro.tc.api.type.TextClassificationSequence;
+import org.dkpro.tc.api.type.TextClassificationTarget;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
+
+public class SentenceLabelMemoTest
+{
+    JCas jcas;
+
+    @Before
+    public void setup() throws Exception
+    {
+        jcas = JCasFactory.createJCas();
+        SentenceLabelMemo.setMaximumSize(100000);
+        SentenceLabelMemo.clear();
+    }
+
+    @After
+    public void cleanUp()
+    {
+        SentenceLabelMemo.setMaximumSize(100000);
+        SentenceLabelMemo.clear();
+    }
+
+    @Test
+    public void testMemorizedSentencesAreNotLabeledAgain() throws Exception
+    {
+        memorize("m1", "a b c d e", "f g h i j", "k l m n o");
+        assertEquals(3, SentenceLabelMemo.size());
+
+        setTargets("m1", "a b c d e", "f g h i j", "k l m n o");
+        assertEquals(0, JCasUtil.select(jcas, TextClassificationSequence.class).size());
+        assertEquals(0, JCasUtil.select(jcas, TextClassificationTarget.class).size());
+        assertEquals("A B C D E F G H I J K L M N O", outcomes());
+    }
+
+    @Test
+    public void testChangedSentenceIsLabeledWithItsNeighboursAsContext() throws Exception
+    {
+        memorize("m1", "a b c d e", "f g h i j", "k l m n o");
+
+        setTargets("m1", "a b c d e", "f g x i j", "k l m n o");
+        List<TextClassificationSequence> sequences = new ArrayList<>(
+                JCasUtil.select(jcas, TextClassificationSequence.class));
+        assertEquals(1, sequences.size());
+        assertEquals("f g x i j", sequences.get(0).getCoveredText());
+        // the last tokens of the previous and the first of the next sentence are context
+        assertEquals("d e f g x i j k l", coveredText(TextClassificationTarget.class));
+        assertEquals("A B C D E " + TargetSetterAnnotator.UNKNOWN_LABEL + " "
+                + TargetSetterAnnotator.UNKNOWN_LABEL + " " + TargetSetterAnnotator.UNKNOWN_LABEL
+                + " " + TargetSetterAnnotator.UNKNOWN_LABEL + " "
+                + TargetSetterAnnotator.UNKNOWN_LABEL + " K L M N O", outcomes());
+    }
+
+    @Test
+    public void testNeighbouringTokensArePartOfTheKey() throws Exception
+    {
+        memorize("m1", "a b", "c d");
+
+        setTargets("m1", "a b", "c x");
+        assertEquals(2, JCasUtil.select(jcas, TextClassificationSequence.class).size());
+    }
+
+    @Test
+    public void testModelVersionIsPartOfTheKey() throws Exception
+    {
+        memorize("m1", "a b", "c d");
+
+        setTargets("m2", "a b", "c d");
+        assertEquals(2, JCasUtil.select(jcas, TextClassificationSequence.class).size());
+        assertEquals("a b c d", coveredText(TextClassificationTarget.class));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedSentenceIsEvicted() throws Exception
+    {
+        SentenceLabelMemo.setMaximumSize(2);
+        document("a", "b", "c");
+        SentenceTokens tokens = new SentenceTokens();
+        tokens.collect(jcas);
+
+        SentenceLabelMemo.put("m1", tokens, 0, new String[] { "A" });
+        SentenceLabelMemo.put("m1", tokens, 1, new String[] { "B" });
+        assertNotNull(SentenceLabelMemo.get("m1", tokens, 0));
+        SentenceLabelMemo.put("m1", tokens, 2, new String[] { "C" });
+
+        assertEquals(2, SentenceLabelMemo.size());
+        assertArrayEquals(new String[] { "A" }, SentenceLabelMemo.get("m1", tokens, 0));
+        assertNull(SentenceLabelMemo.get("m1", tokens, 1));
+        assertArrayEquals(new String[] { "C" }, SentenceLabelMemo.get("m1", tokens, 2));
+    }
+
+    @Test
+    public void testSizeZeroDisablesTheMemo() throws Exception
+    {
+        SentenceLabelMemo.setMaximumSize(0);
+        assertFalse(SentenceLabelMemo.isEnabled());
+
+        memorize("m1", "a b", "c d");
+        assertEquals(0, SentenceLabelMemo.size());
+    }
+
+    /**
+     * Labels every token of the document with its upper-cased text, as if predicted by a
+     * model, and memorizes the labels
+     */
+    private void memorize(String modelVersion, String... sentences) throws Exception
+    {
+        setTargets(modelVersion, sentences);
+        for (TextClassificationOutcome o : JCasUtil.select(jcas,
+                TextClassificationOutcome.class)) {
+            o.setOutcome(o.getCoveredText().toUpperCase());
+        }
+        AnalysisEngineFactory.createEngine(SentenceLabelMemoUpdater.class,
+                SentenceLabelMemoUpdater.PARAM_MODEL_VERSION, modelVersion).process(jcas);
+    }
+
+    private void setTargets(String modelVersion, String... sentences) throws Exception
+    {
+        document(sentences);
+        AnalysisEngineFactory.createEngine(TargetSetterAnnotator.class,
+                TargetSetterAnnotator.PARAM_MODEL_VERSION, modelVersion).process(jcas);
+    }
+
+    /**
+     * Creates a document of the given sentences of space separated tokens
+     */
+    private void document(String... sentences)
+    {
+        jcas.reset();
+        jcas.setDocumentText(String.join(" ", sentences));
+        int offset = 0;
+        for (String sentence : sentences) {
+            new Sentence(jcas, offset, offset + sentence.length()).addToIndexes();
+            for (String token : sentence.split(" ")) {
+                new Token(jcas, offset, offset + token.length()).addToIndexes();
+                offset += token.length() + 1;
+            }
+        }
+    }
+
+    private String outcomes()
+    {
+        List<String> labels = new ArrayList<>();
+        for (TextClassificationOutcome o : JCasUtil.select(jcas,
+                TextClassificationOutcome.class)) {
+            labels.add(o.getOutcome());
+        }
+        return String.join(" ", labels);
+    }
+
+    private String coveredText(Class<? extends Annotation> type)
+    {
+        List<String> texts = new ArrayList<>();
+        for (Annotation a : JCasUtil.select(jcas, type)) {
+            texts.add(a.getCoveredText());
+        }
+        return String.join(" ", texts);
+    }
+}
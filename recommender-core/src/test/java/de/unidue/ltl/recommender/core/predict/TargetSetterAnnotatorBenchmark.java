@@ -0,0 +1,169 @@
+/*******************************************************************************
+ * Copyright 2018
+ * Language Technology Lab
+ * University of Duisburg-Essen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package de.unidue.ltl.recommender.core.predict;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.apache.uima.fit.component.JCasAnnotator_ImplBase;
+import org.apache.uima.fit.factory.AnalysisEngineFactory;
+import org.apache.uima.fit.factory.JCasFactory;
+import org.apache.uima.fit.util.JCasUtil;
+import org.apache.uima.jcas.JCas;
+import org.dkpro.tc.api.type.TextClassificationOutcome;
+import org.dkpro.tc.api.type.TextClassificationSequence;
+import org.dkpro.tc.api.type.TextClassificationTarget;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
+
+/**
+ * Compares the sweep of {@link TargetSetterAnnotator} with the former implementation, which
+ * queried the tokens of each sentence with {@link JCasUtil#selectCovered}, on a document of 100k
+ * tokens. Not run as part of the build, start with {@link #main(String[])} from the test class
+ * path.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class TargetSetterAnnotatorBenchmark
+{
+    @Param({ "100000" })
+    int tokens;
+
+    @Param({ "20" })
+    int tokensPerSentence;
+
+    JCas jcas;
+    AnalysisEngine sweep;
+    AnalysisEngine selectCovered;
+
+    @Setup(Level.Trial)
+    public void setupTrial() throws Exception
+    {
+        jcas = JCasFactory.createJCas();
+        sweep = AnalysisEngineFactory.createEngine(TargetSetterAnnotator.class);
+        selectCovered = AnalysisEngineFactory.createEngine(SelectCoveredTargetSetter.class);
+    }
+
+    @Setup(Level.Invocation)
+    public void setupDocument()
+    {
+        jcas.reset();
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < tokens; i++) {
+            text.append("token").append(i % 1000).append(' ');
+        }
+        jcas.setDocumentText(text.toString());
+
+        int offset = 0;
+        int sentenceBegin = 0;
+        for (int i = 0; i < tokens; i++) {
+            int length = ("token" + (i % 1000)).length();
+            new Token(jcas, offset, offset + length).addToIndexes();
+            offset += length + 1;
+            if ((i + 1) % tokensPerSentence == 0 || i == tokens - 1) {
+                new Sentence(jcas, sentenceBegin, offset - 1).addToIndexes();
+                sentenceBegin = offset;
+            }
+        }
+    }
+
+    @Benchmark
+    public JCas sweep() throws Exception
+    {
+        sweep.process(jcas);
+        return jcas;
+    }
+
+    @Benchmark
+    public JCas selectCovered() throws Exception
+    {
+        selectCovered.process(jcas);
+        return jcas;
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        new Runner(new OptionsBuilder()
+                .include(TargetSetterAnnotatorBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    /**
+     * The implementation of {@link TargetSetterAnnotator} before the sweep
+     */
+    public static class SelectCoveredTargetSetter
+        extends JCasAnnotator_ImplBase
+    {
+        private static final Logger logger = LoggerFactory
+                .getLogger(SelectCoveredTargetSetter.class.getName());
+
+        int tcId = 0;
+
+        @Override
+        public void process(JCas aJCas) throws AnalysisEngineProcessException
+        {
+            List<Sentence> sents = new ArrayList<Sentence>(JCasUtil.select(aJCas, Sentence.class));
+            logger.debug("Detected [" + sents.size() + "] sentences");
+            for (int i = 0; i < sents.size(); i++) {
+                Sentence s = sents.get(i);
+                TextClassificationSequence seq = new TextClassificationSequence(aJCas,
+                        s.getBegin(), s.getEnd());
+                seq.addToIndexes();
+
+                List<Token> tokens = new ArrayList<Token>(
+                        JCasUtil.selectCovered(aJCas, Token.class, s));
+                logger.debug(
+                        "Detected [" + tokens.size() + "] tokens in sentence [" + (i + 1) + "]");
+                for (Token t : tokens) {
+                    TextClassificationTarget aTarget = new TextClassificationTarget(aJCas,
+                            t.getBegin(), t.getEnd());
+                    aTarget.setId(tcId++);
+                    aTarget.addToIndexes();
+
+                    TextClassificationOutcome outcome = new TextClassificationOutcome(aJCas,
+                            t.getBegin(), t.getEnd());
+                    outcome.setOutcome("UNKNOWN-LABEL");
+                    outcome.addToIndexes();
+                }
+            }
+        }
+    }
+}
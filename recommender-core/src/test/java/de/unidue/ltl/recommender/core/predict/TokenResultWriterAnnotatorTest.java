@@ -0,0 +1,212 @@
+/*******************************************************************************
+ * Copyright 2018
+ * Language Technology Lab
+ * University of Duisburg-Essen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package de.unidue.ltl.recommender.core.predict;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.Feature;
+import org.apache.uima.cas.Type;
+import org.apache.uima.cas.text.AnnotationFS;
+import org.apache.uima.fit.factory.AnalysisEngineFactory;
+import org.apache.uima.fit.factory.JCasFactory;
+import org.apache.uima.fit.factory.TypeSystemDescriptionFactory;
+import org.apache.uima.fit.util.CasUtil;
+import org.apache.uima.fit.util.JCasUtil;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.metadata.TypeDescription;
+import org.apache.uima.resource.metadata.TypeSystemDescription;
+import org.dkpro.tc.api.type.TextClassificationOutcome;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
+import de.unidue.ltl.recommender.core.train.MultipleTokenSpanLevelTrainingOutcomeAnnotator;
+import de.unidue.ltl.recommender.core.train.SingleTokenLevelTrainingOutcomeAnnotator;
+
+public class TokenResultWriterAnnotatorTest
+{
+    static final String LAYER = "webanno.custom.Span";
+    static final String FEATURE = "value";
+    static final String O = SingleTokenLevelTrainingOutcomeAnnotator.OTHER_OUTCOME;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    JCas jcas;
+
+    @Before
+    public void setup() throws Exception
+    {
+        TypeSystemDescription typeSystem = TypeSystemDescriptionFactory
+                .createTypeSystemDescription();
+        TypeDescription span = typeSystem.addType(LAYER, "", CAS.TYPE_NAME_ANNOTATION);
+        span.addFeature(FEATURE, "", CAS.TYPE_NAME_STRING);
+        jcas = JCasFactory.createJCas(typeSystem);
+    }
+
+    @Test
+    public void testBeginLabelSplitsAdjacentSpansOfTheSameValue() throws Exception
+    {
+        document("a b c d e", "B-PER I-PER B-PER B-LOC " + O);
+        write(MultipleTokenSpanLevelTrainingOutcomeAnnotator.LABEL_SCHEME_BIO);
+
+        assertEquals("[a b]PER [c]PER [d]LOC", spans());
+    }
+
+    @Test
+    public void testInsideLabelWithoutBeginStartsASpan() throws Exception
+    {
+        document("a b c d", O + " I-LOC I-LOC I-PER");
+        write(MultipleTokenSpanLevelTrainingOutcomeAnnotator.LABEL_SCHEME_BIO);
+
+        assertEquals("[b c]LOC [d]PER", spans());
+    }
+
+    @Test
+    public void testOtherLabelEndsTheSpan() throws Exception
+    {
+        document("a b c d", "I-PER " + O + " I-PER I-PER");
+        write(MultipleTokenSpanLevelTrainingOutcomeAnnotator.LABEL_SCHEME_BIO);
+
+        assertEquals("[a]PER [c d]PER", spans());
+    }
+
+    @Test
+    public void testSpansEndAtSentenceBoundaries() throws Exception
+    {
+        document("a b|c d", "B-PER I-PER I-PER I-PER");
+        write(MultipleTokenSpanLevelTrainingOutcomeAnnotator.LABEL_SCHEME_BIO);
+
+        assertEquals("[a b]PER [c d]PER", spans());
+    }
+
+    @Test
+    public void testSpansEndOutsideOfSentencesWithoutRange() throws Exception
+    {
+        document("a b|c|d e", "B-PER I-PER I-PER I-PER I-PER");
+        JCasUtil.selectByIndex(jcas, Sentence.class, 1).removeFromIndexes();
+        write(MultipleTokenSpanLevelTrainingOutcomeAnnotator.LABEL_SCHEME_BIO);
+
+        assertEquals("[a b]PER [c]PER [d e]PER", spans());
+    }
+
+    @Test
+    public void testLabelsOfModelWithoutSchemeAreKept() throws Exception
+    {
+        document("a b c d", "B-PER I-PER PER PER");
+        write(TokenResultWriterAnnotator.LABEL_SCHEME_NONE);
+
+        assertEquals("[a]B-PER [b]I-PER [c d]PER", spans());
+    }
+
+    @Test
+    public void testRangeWithoutSentences() throws Exception
+    {
+        document("a b c d", "B-PER I-PER B-PER I-PER");
+        removeSentences(0);
+        write(MultipleTokenSpanLevelTrainingOutcomeAnnotator.LABEL_SCHEME_BIO,
+                TokenResultWriterAnnotator.PARAM_RANGE_BEGIN, 0,
+                TokenResultWriterAnnotator.PARAM_RANGE_END, 7);
+
+        assertEquals("", spans());
+    }
+
+    @Test
+    public void testOutcomesAfterTheLastSentenceAreOutOfRange() throws Exception
+    {
+        document("a b|c d", "B-PER I-PER B-PER I-PER");
+        removeSentences(1);
+        write(MultipleTokenSpanLevelTrainingOutcomeAnnotator.LABEL_SCHEME_BIO,
+                TokenResultWriterAnnotator.PARAM_RANGE_BEGIN, 0,
+                TokenResultWriterAnnotator.PARAM_RANGE_END, 7);
+
+        assertEquals("[a b]PER", spans());
+    }
+
+    /**
+     * Removes the sentences from the given index on
+     */
+    private void removeSentences(int first)
+    {
+        List<Sentence> sentences = new ArrayList<>(JCasUtil.select(jcas, Sentence.class));
+        for (Sentence s : sentences.subList(first, sentences.size())) {
+            s.removeFromIndexes();
+        }
+    }
+
+    /**
+     * Creates a document of single character tokens with one outcome per token, '|' separates
+     * sentences
+     */
+    private void document(String text, String labels)
+    {
+        jcas.reset();
+        jcas.setDocumentText(text.replace('|', ' '));
+        String[] outcomes = labels.split(" ");
+        int sentenceBegin = 0;
+        int token = 0;
+        for (String sentence : text.split("\\|")) {
+            int sentenceEnd = sentenceBegin + sentence.trim().length();
+            new Sentence(jcas, sentenceBegin, sentenceEnd).addToIndexes();
+            for (int offset = sentenceBegin; offset < sentenceEnd; offset += 2) {
+                TextClassificationOutcome o = new TextClassificationOutcome(jcas, offset,
+                        offset + 1);
+                o.setOutcome(outcomes[token++]);
+                o.addToIndexes();
+            }
+            sentenceBegin = sentenceEnd + 1;
+        }
+    }
+
+    private void write(String labelScheme, Object... parameters) throws Exception
+    {
+        List<Object> configuration = new ArrayList<>();
+        configuration.add(TokenResultWriterAnnotator.PARAM_ANNOTATION_TARGET_NAME);
+        configuration.add(LAYER);
+        configuration.add(TokenResultWriterAnnotator.PARAM_ANNOTATION_TARGET_FIELD_NAME);
+        configuration.add(FEATURE);
+        configuration.add(TokenResultWriterAnnotator.PARAM_LABEL_SCHEME);
+        configuration.add(labelScheme);
+        configuration.add(TokenResultWriterAnnotator.PARAM_OUTPUT_FOLDER);
+        configuration.add(folder.getRoot());
+        for (Object p : parameters) {
+            configuration.add(p);
+        }
+        AnalysisEngineFactory
+                .createEngine(TokenResultWriterAnnotator.class, configuration.toArray())
+                .process(jcas);
+        assertEquals(0, JCasUtil.select(jcas, TextClassificationOutcome.class).size());
+    }
+
+    private String spans()
+    {
+        Type type = CasUtil.getAnnotationType(jcas.getCas(), LAYER);
+        Feature value = type.getFeatureByBaseName(FEATURE);
+        List<String> spans = new ArrayList<>();
+        for (AnnotationFS a : CasUtil.select(jcas.getCas(), type)) {
+            spans.add("[" + a.getCoveredText() + "]" + a.getFeatureValueAsString(value));
+        }
+        return String.join(" ", spans);
+    }
+}
@@ -0,0 +1,170 @@
+/*******************************************************************************
+ * Copyright 2018
+ * Language Technology Lab
+ * University of Duisburg-Essen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package de.unidue.ltl.recommender.core.train;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.Type;
+import org.apache.uima.cas.text.AnnotationFS;
+import org.apache.uima.fit.factory.JCasFactory;
+import org.apache.uima.fit.factory.TypeSystemDescriptionFactory;
+import org.apache.uima.fit.util.CasUtil;
+import org.apache.uima.fit.util.JCasUtil;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.jcas.tcas.Annotation;
+import org.apache.uima.resource.metadata.TypeSystemDescription;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
+
+public class SentenceSamplerTest
+{
+    static final String LAYER = "webanno.custom.Span";
+
+    TypeSystemDescription typeSystem;
+
+    @Before
+    public void setup() throws Exception
+    {
+        typeSystem = TypeSystemDescriptionFactory.createTypeSystemDescription();
+        typeSystem.addType(LAYER, "", CAS.TYPE_NAME_ANNOTATION);
+    }
+
+    @Test
+    public void testSelectionIsDeterministic() throws Exception
+    {
+        String[] sentences = { "a b", "c d", "e f", "g h", "i j", "k l", "m n", "o p" };
+        JCas first = document(sentences);
+        JCas second = document(sentences);
+
+        sample(6, first);
+        sample(6, second);
+
+        assertEquals(3, JCasUtil.select(first, Sentence.class).size());
+        assertEquals(coveredText(first, Sentence.class), coveredText(second, Sentence.class));
+    }
+
+    @Test
+    public void testAnnotatedSentencesArePreferred() throws Exception
+    {
+        JCas jcas = document("a b", "c [d]", "e f", "[g] h", "i j");
+
+        SentenceSampler sampler = sample(4, jcas);
+
+        assertEquals(10, sampler.getNumberOfTokens());
+        assertEquals(2, sampler.getNumberOfSelectedSentences());
+        assertEquals(4, sampler.getNumberOfSelectedTokens());
+        assertEquals("c d|g h", coveredText(jcas, Sentence.class));
+    }
+
+    @Test
+    public void testUnselectedTokensAndAnnotationsAreRemoved() throws Exception
+    {
+        JCas jcas = document("[a] b", "[c] d", "e f");
+
+        sample(2, jcas);
+
+        List<String> sentences = new ArrayList<>();
+        for (Sentence s : JCasUtil.select(jcas, Sentence.class)) {
+            sentences.add(s.getCoveredText());
+        }
+        assertEquals(1, sentences.size());
+        assertEquals(sentences.get(0).replace("|", " "), coveredText(jcas, Token.class)
+                .replace("|", " "));
+        assertEquals(sentences.get(0).substring(0, 1), annotations(jcas));
+    }
+
+    @Test
+    public void testSentenceExceedingTheLimitIsSkipped() throws Exception
+    {
+        JCas jcas = document("a b c d e", "f g");
+
+        SentenceSampler sampler = sample(3, jcas);
+
+        assertEquals(1, sampler.getNumberOfSelectedSentences());
+        assertEquals("f g", coveredText(jcas, Sentence.class));
+    }
+
+    private SentenceSampler sample(long tokenLimit, JCas jcas)
+    {
+        Type type = CasUtil.getAnnotationType(jcas.getCas(), LAYER);
+        SentenceSampler sampler = new SentenceSampler();
+        sampler.collect(0, jcas, type);
+        sampler.select(1, tokenLimit);
+        sampler.removeUnselected(0, jcas, type);
+        return sampler;
+    }
+
+    /**
+     * Creates a document of the given sentences of space separated single character tokens,
+     * tokens in brackets are annotated
+     */
+    private JCas document(String... sentences) throws Exception
+    {
+        JCas jcas = JCasFactory.createJCas(typeSystem);
+        Type type = CasUtil.getAnnotationType(jcas.getCas(), LAYER);
+        StringBuilder text = new StringBuilder();
+        for (String sentence : sentences) {
+            if (text.length() > 0) {
+                text.append(' ');
+            }
+            int begin = text.length();
+            for (String token : sentence.split(" ")) {
+                if (text.length() > begin) {
+                    text.append(' ');
+                }
+                boolean annotated = token.startsWith("[");
+                token = token.replaceAll("[\\[\\]]", "");
+                new Token(jcas, text.length(), text.length() + token.length()).addToIndexes();
+                if (annotated) {
+                    jcas.getCas().addFsToIndexes(jcas.getCas().createAnnotation(type,
+                            text.length(), text.length() + token.length()));
+                }
+                text.append(token);
+            }
+            new Sentence(jcas, begin, text.length()).addToIndexes();
+        }
+        jcas.setDocumentText(text.toString());
+        return jcas;
+    }
+
+    private static String coveredText(JCas jcas, Class<? extends Annotation> type)
+    {
+        List<String> texts = new ArrayList<>();
+        for (Annotation a : JCasUtil.select(jcas, type)) {
+            texts.add(a.getCoveredText());
+        }
+        return String.join("|", texts);
+    }
+
+    private static String annotations(JCas jcas)
+    {
+        List<String> texts = new ArrayList<>();
+        for (AnnotationFS a : CasUtil.select(jcas.getCas(),
+                CasUtil.getAnnotationType(jcas.getCas(), LAYER))) {
+            texts.add(a.getCoveredText());
+        }
+        return String.join("|", texts);
+    }
+}
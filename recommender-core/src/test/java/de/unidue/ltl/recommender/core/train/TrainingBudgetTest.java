@@ -0,0 +1,38 @@
+/*******************************************************************************
+ * Copyright 2018
+ * Language Technology Lab
+ * University of Duisburg-Essen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package de.unidue.ltl.recommender.core.train;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class TrainingBudgetTest
+{
+    @Test
+    public void testTokenLimitOfBudget()
+    {
+        assertEquals(Integer.MAX_VALUE, TrainingBudget.UNLIMITED.getTokenLimit());
+        assertEquals(1000, new TrainingBudget(1000, 0, 2000, 50).getTokenLimit());
+        assertEquals(20000, new TrainingBudget(0, 10, 2000, 50).getTokenLimit());
+        assertEquals(1000, new TrainingBudget(1000, 10, 2000, 50).getTokenLimit());
+        // a throughput estimate of zero disables the wall-clock limit
+        assertEquals(Integer.MAX_VALUE, new TrainingBudget(0, 10, 0, 50).getTokenLimit());
+        assertEquals(Integer.MAX_VALUE,
+                new TrainingBudget(0, Integer.MAX_VALUE, 1e6, 50).getTokenLimit());
+    }
+}
@@ -0,0 +1,149 @@
+/*******************************************************************************
+ * Copyright 2018
+ * Language Technology Lab
+ * University of Duisburg-Essen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package de.unidue.ltl.recommender.core.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.uima.fit.factory.JCasFactory;
+import org.apache.uima.fit.util.JCasUtil;
+import org.apache.uima.jcas.JCas;
+import org.dkpro.tc.api.type.TextClassificationSequence;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SequenceWindowsTest
+{
+    JCas jcas;
+
+    @Before
+    public void setup() throws Exception
+    {
+        jcas = JCasFactory.createJCas();
+        jcas.setDocumentText("a b c d e f g h i j k l m n o p q r s t");
+    }
+
+    @Test
+    public void testEachSentenceIsASequenceByDefault()
+    {
+        SequenceWindows windows = new SequenceWindows(jcas, SequenceWindows.UNLIMITED, false);
+        sentence(windows, 0, 3);
+        sentence(windows, 3, 5);
+        windows.close();
+
+        assertEquals("a b c|d e", sequences());
+        assertEquals(2, windows.getNumberOfSequences());
+        assertEquals(0, windows.getNumberOfSplitSentences());
+    }
+
+    @Test
+    public void testLongSentenceIsSplitIntoBalancedWindows()
+    {
+        SequenceWindows windows = new SequenceWindows(jcas, 4, false);
+        sentence(windows, 0, 10);
+        sentence(windows, 10, 14);
+        windows.close();
+
+        // 10 tokens need three windows, the first takes the remaining token
+        assertEquals("a b c d|e f g|h i j|k l m n", sequences());
+        assertEquals(4, windows.getNumberOfSequences());
+        assertEquals(1, windows.getNumberOfSplitSentences());
+    }
+
+    @Test
+    public void testCrossSentencePacksSentencesUpToTheMaximumLength()
+    {
+        SequenceWindows windows = new SequenceWindows(jcas, 5, true);
+        sentence(windows, 0, 2);
+        sentence(windows, 2, 5);
+        sentence(windows, 5, 7);
+        // a sentence exceeding the length is split and ends the pending sequence
+        sentence(windows, 7, 14);
+        sentence(windows, 14, 16);
+        windows.close();
+
+        assertEquals("a b c d e|f g|h i j k|l m n|o p", sequences());
+        assertEquals(1, windows.getNumberOfSplitSentences());
+    }
+
+    @Test
+    public void testCrossSentenceWithoutLimitKeepsSentences()
+    {
+        SequenceWindows windows = new SequenceWindows(jcas, SequenceWindows.UNLIMITED, true);
+        sentence(windows, 0, 3);
+        sentence(windows, 3, 8);
+        windows.close();
+
+        assertEquals("a b c|d e f g h", sequences());
+    }
+
+    @Test
+    public void testInterruptEndsThePendingSequence()
+    {
+        SequenceWindows windows = new SequenceWindows(jcas, 10, true);
+        sentence(windows, 0, 2);
+        sentence(windows, 2, 4);
+        // a sentence which is not sent to the model, its tokens are dropped
+        windows.addToken(offset(4), offset(4) + 1);
+        windows.interrupt();
+        sentence(windows, 5, 7);
+        windows.close();
+
+        assertEquals("a b c d|f g", sequences());
+    }
+
+    @Test
+    public void testCloseEndsTheLastSentence()
+    {
+        SequenceWindows windows = new SequenceWindows(jcas, 10, true);
+        sentence(windows, 0, 2);
+        windows.addToken(offset(2), offset(2) + 1);
+        windows.close();
+
+        assertEquals("a b c", sequences());
+        assertEquals(1, windows.getNumberOfSequences());
+    }
+
+    /**
+     * Adds the single character tokens with the given indices as a sentence
+     */
+    private void sentence(SequenceWindows windows, int first, int end)
+    {
+        for (int i = first; i < end; i++) {
+            windows.addToken(offset(i), offset(i) + 1);
+        }
+        windows.endSentence();
+    }
+
+    private static int offset(int token)
+    {
+        return 2 * token;
+    }
+
+    private String sequences()
+    {
+        List<String> texts = new ArrayList<>();
+        for (TextClassificationSequence s : JCasUtil.select(jcas,
+                TextClassificationSequence.class)) {
+            texts.add(s.getCoveredText());
+        }
+        return String.join("|", texts);
+    }
+}
@@ -19,20 +19,44 @@
 package de.unidue.ltl.recommender.repository;
 
 import java.io.IOException;
-import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * A model in the {@link ModelRepository}. The repository retains several versions of a model. The
+ * entry points to the version used for predictions, which is the newest one unless the entry is
+ * pinned to a version.
+ * <p>
+ * Predictions hold a read access on a version while they use its files; any number of readers
+ * proceed concurrently. Each version counts its readers, the entry is switched to another
+ * version without waiting for them. The files of a version are only deleted or replaced once it
+ * is closed, which succeeds when it has no readers.
+ */
 public class Entry
 {
     private static final Logger logger = LoggerFactory.getLogger(Entry.class.getName());
     
-    private AtomicInteger modelAccesses = new AtomicInteger(0);
-    private Semaphore modelUpdateOperation = new Semaphore(1, true);
-    long timestamp;
-    String id;
+    private final AtomicLong totalAccesses = new AtomicLong(0);
+    private volatile long lastAccess = System.currentTimeMillis();
+    /** running read accesses of this version, {@link #CLOSED} while its files are changed */
+    private final AtomicInteger readers = new AtomicInteger(0);
+    private static final int CLOSED = -1;
+    /** the version the entry points to, null for a version itself */
+    private volatile Entry current;
+    /** serializes updates of the entry, held while the new version is copied */
+    final ReentrantLock updateLock = new ReentrantLock();
+    volatile long timestamp;
+    final String id;
+    volatile String fingerprint;
+    volatile long size;
+    volatile String checksum;
+    volatile boolean pinned;
+    /** set when the entry was evicted from the repository, its files are deleted */
+    volatile boolean removed;
     
 
     public Entry(String modelId, long timestamp)
@@ -41,41 +65,115 @@ public class Entry
         this.timestamp = timestamp;
     }
 
-    public synchronized void updateTimeStamp(long timestamp) throws InterruptedException, IOException
+    public void updateTimeStamp(long timestamp) throws InterruptedException, IOException
     {
-        logger.debug("Update on model with id [" + this.id + "] current read accesses ["
-                + modelAccesses.get() + "]");
-        modelUpdateOperation.acquire();
-
-        this.timestamp = timestamp;
+        logger.debug("Update on model with id [" + this.id + "] to timestamp [" + timestamp + "]");
+        Entry version = copyVersion();
+        version.timestamp = timestamp;
+        switchTo(version);
+    }
 
-        modelUpdateOperation.release();
+    /**
+     * @return the version the entry points to, the entry itself if it is a version
+     */
+    Entry current()
+    {
+        Entry version = current;
+        return version != null ? version : this;
     }
 
-    public synchronized void beginReadAccess() throws InterruptedException
+    /**
+     * Starts a read access on this version unless it is closed. Read accesses do not block each
+     * other, each one must be ended with {@link #endReadAccess()}.
+     *
+     * @return false if the version is closed
+     */
+    boolean tryBeginReadAccess()
     {
+        while (true) {
+            int n = readers.get();
+            if (n == CLOSED) {
+                return false;
+            }
+            if (readers.compareAndSet(n, n + 1)) {
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Read access on model [" + toString()
+                            + "] - new access count [" + (n + 1) + "]");
+                }
+                return true;
+            }
+        }
+    }
 
-        logger.debug("Model update is taking place ["
-                + (modelUpdateOperation.availablePermits() == 0 ? "true" : "false") + "]");
-        if (modelUpdateOperation.tryAcquire()) {
-            modelAccesses.incrementAndGet();
-            logger.debug("Read access on model [" + id + "]- new access count ["
-                    + modelAccesses.get() + "]");
-            modelUpdateOperation.release();
+    /**
+     * @return the number of read accesses still running on this version
+     */
+    int endReadAccess()
+    {
+        int accesses = readers.decrementAndGet();
+        if (accesses == 0) {
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("Decrease model access counter to [" + accesses + "]");
         }
-        else {
-            logger.debug("Update of model [" + id + "] in progress");
+        return accesses;
+    }
+
+    /**
+     * Closes the version for new read accesses if it has none
+     *
+     * @return true if the version was closed, it must be reopened or dropped then
+     */
+    boolean tryClose()
+    {
+        return readers.compareAndSet(0, CLOSED);
+    }
+
+    /**
+     * Waits until the running read accesses ended and closes the version. New read accesses may
+     * start while waiting.
+     */
+    synchronized void close() throws InterruptedException
+    {
+        while (!tryClose()) {
             wait();
-            beginReadAccess();
         }
+    }
 
+    void reopen()
+    {
+        readers.set(0);
     }
 
-    public synchronized void endReadAccess()
+    /**
+     * Points the entry to another version of the model. Running read accesses continue with the
+     * previous version.
+     */
+    void switchTo(Entry version)
     {
-        modelAccesses.decrementAndGet();
-        logger.debug("Decrease model access counter to [" + modelAccesses.get() + "]");
-        notify();
+        copyFields(version);
+        current = version;
+    }
+
+    /**
+     * @return a copy of the version the entry currently points to
+     */
+    Entry copyVersion()
+    {
+        Entry version = new Entry(id, timestamp);
+        version.copyFields(this);
+        return version;
+    }
+
+    private void copyFields(Entry version)
+    {
+        timestamp = version.timestamp;
+        fingerprint = version.fingerprint;
+        size = version.size;
+        checksum = version.checksum;
     }
 
     public long getTimeStamp()
@@ -88,9 +186,72 @@ public class Entry
         return id;
     }
 
-    Integer getNumberOfModelAccesses()
+    /**
+     * @return a hash of the input the model was trained on, null if unknown
+     */
+    public String getFingerprint()
+    {
+        return fingerprint;
+    }
+
+    public void setFingerprint(String fingerprint)
+    {
+        this.fingerprint = fingerprint;
+    }
+
+    /**
+     * @return the size of the stored model files in bytes, as recorded at check-in
+     */
+    public long getSize()
+    {
+        return size;
+    }
+
+    /**
+     * @return a checksum of the stored model files, as recorded at check-in, null if unknown
+     */
+    public String getChecksum()
+    {
+        return checksum;
+    }
+
+    void recordAccess()
+    {
+        totalAccesses.incrementAndGet();
+        lastAccess = System.currentTimeMillis();
+    }
+
+    /**
+     * @return the number of times the model was accessed since the repository was loaded
+     */
+    public long getNumberOfAccesses()
+    {
+        return totalAccesses.get();
+    }
+
+    /**
+     * @return the time of the last access in milliseconds since the epoch, the time the
+     *         repository was loaded if the model was not accessed since
+     */
+    public long getLastAccess()
+    {
+        return lastAccess;
+    }
+
+    /**
+     * @return true if the entry keeps pointing to its version when newer versions are checked in
+     */
+    public boolean isPinned()
+    {
+        return pinned;
+    }
+
+    /**
+     * @return the number of running read accesses of this version
+     */
+    int getNumberOfReaders()
     {
-        return modelAccesses.get();
+        return Math.max(0, readers.get());
     }
 
     public String toString()
@@ -0,0 +1,40 @@
+/*******************************************************************************
+ * Copyright 2018
+ * Language Technology Lab
+ * University of Duisburg-Essen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package de.unidue.ltl.recommender.repository;
+
+import java.util.Comparator;
+
+/**
+ * Order in which models are removed from the {@link ModelRepository} when a quota is exceeded
+ */
+public enum EvictionPolicy
+{
+    /** least recently used model first */
+    LRU(Comparator.comparingLong(Entry::getLastAccess)),
+
+    /** least frequently used model first, ties are broken by the last access */
+    LFU(Comparator.comparingLong(Entry::getNumberOfAccesses)
+            .thenComparingLong(Entry::getLastAccess));
+
+    final Comparator<Entry> order;
+
+    private EvictionPolicy(Comparator<Entry> order)
+    {
+        this.order = order;
+    }
+}
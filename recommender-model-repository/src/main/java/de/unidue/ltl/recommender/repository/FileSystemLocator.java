@@ -22,6 +22,11 @@ import java.io.File;
 class FileSystemLocator
 {
     private static String CONST = "_";
+    private static String PACK_SUFFIX = ".pack";
+    private static String FINGERPRINT_SUFFIX = ".fingerprint";
+    private static String ARCHIVE_SUFFIX = ".zip";
+    private static String MARKER_SUFFIX = ".complete";
+    private static String STAGING_FOLDER = ".staging";
 
     static File locate(File root, Entry entry)
     {
@@ -31,6 +36,81 @@ class FileSystemLocator
         return new File(root, filename);
     }
 
+    static File locatePack(File root, Entry entry)
+    {
+        File folder = locate(root, entry);
+        return new File(root, folder.getName() + PACK_SUFFIX);
+    }
+
+    static File locateArchive(File root, Entry entry)
+    {
+        File folder = locate(root, entry);
+        return new File(root, folder.getName() + ARCHIVE_SUFFIX);
+    }
+
+    /**
+     * File which an external process creates once it finished writing a model folder into the
+     * repository root
+     */
+    static File locateMarker(File root, Entry entry)
+    {
+        File folder = locate(root, entry);
+        return new File(root, folder.getName() + MARKER_SUFFIX);
+    }
+
+    static boolean isMarker(String fileName)
+    {
+        return fileName.endsWith(MARKER_SUFFIX);
+    }
+
+    static String stripMarkerSuffix(String fileName)
+    {
+        if (!isMarker(fileName)) {
+            return fileName;
+        }
+        return fileName.substring(0, fileName.length() - MARKER_SUFFIX.length());
+    }
+
+    static File locateFingerprint(File root, Entry entry)
+    {
+        File folder = locate(root, entry);
+        return new File(root, folder.getName() + FINGERPRINT_SUFFIX);
+    }
+
+    /**
+     * Folder in which models are assembled before they are moved to their location, on the same
+     * file system as the repository so that the move is an atomic rename. Several processes
+     * sharing the root use a staging folder each, which they clean up on load.
+     */
+    static File locateStaging(File root, String replica)
+    {
+        return new File(root, replica == null ? STAGING_FOLDER : STAGING_FOLDER + "." + replica);
+    }
+
+    static boolean isPack(String fileName)
+    {
+        return fileName.endsWith(PACK_SUFFIX);
+    }
+
+    static boolean isArchive(String fileName)
+    {
+        return fileName.endsWith(ARCHIVE_SUFFIX);
+    }
+
+    /**
+     * @return the name of the model folder to which a compact file or an archive belongs
+     */
+    static String stripPackSuffix(String fileName)
+    {
+        if (isPack(fileName)) {
+            return fileName.substring(0, fileName.length() - PACK_SUFFIX.length());
+        }
+        if (isArchive(fileName)) {
+            return fileName.substring(0, fileName.length() - ARCHIVE_SUFFIX.length());
+        }
+        return fileName;
+    }
+
     static boolean verifyFolderName(String folderName)
     {
 
@@ -0,0 +1,93 @@
+/*******************************************************************************
+ * Copyright 2018
+ * Language Technology Lab
+ * University of Duisburg-Essen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package de.unidue.ltl.recommender.repository;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Keeps model versions on the heap, for tests and benchmarks
+ */
+public class InMemoryModelStore
+    implements ModelStore
+{
+    private final Map<String, NavigableMap<Long, Map<String, byte[]>>> models =
+            new ConcurrentHashMap<>();
+
+    @Override
+    public void put(String id, long timestamp, String artifact, InputStream content)
+        throws IOException
+    {
+        RepositoryUtil.checkModelId(id);
+        byte[] bytes = IOUtils.toByteArray(content);
+        models.computeIfAbsent(id, k -> new ConcurrentSkipListMap<>())
+                .computeIfAbsent(timestamp, k -> new ConcurrentHashMap<>()).put(artifact, bytes);
+    }
+
+    @Override
+    public InputStream get(String id, long timestamp, String artifact) throws IOException
+    {
+        NavigableMap<Long, Map<String, byte[]>> versions = models.get(id);
+        Map<String, byte[]> artifacts = versions != null ? versions.get(timestamp) : null;
+        byte[] bytes = artifacts != null ? artifacts.get(artifact) : null;
+        if (bytes == null) {
+            throw new FileNotFoundException("Artifact [" + artifact + "] of model [" + id
+                    + "] / [" + timestamp + "] does not exist");
+        }
+        return new ByteArrayInputStream(bytes);
+    }
+
+    @Override
+    public List<String> listModels()
+    {
+        List<String> ids = new ArrayList<>();
+        for (Map.Entry<String, NavigableMap<Long, Map<String, byte[]>>> e : models.entrySet()) {
+            if (!e.getValue().isEmpty()) {
+                ids.add(e.getKey());
+            }
+        }
+        ids.sort(null);
+        return ids;
+    }
+
+    @Override
+    public List<Long> listVersions(String id)
+    {
+        NavigableMap<Long, Map<String, byte[]>> versions = models.get(id);
+        return versions != null ? new ArrayList<>(versions.keySet()) : new ArrayList<>();
+    }
+
+    @Override
+    public void delete(String id, long timestamp)
+    {
+        NavigableMap<Long, Map<String, byte[]>> versions = models.get(id);
+        if (versions != null) {
+            versions.remove(timestamp);
+        }
+    }
+}
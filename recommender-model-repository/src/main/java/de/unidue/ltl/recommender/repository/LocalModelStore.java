@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * Copyright 2018
+ * Language Technology Lab
+ * University of Duisburg-Essen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package de.unidue.ltl.recommender.repository;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Stores model versions in a folder, e.g. on a network file system shared by several servers.
+ * Artifacts are stored as {@code <root>/<id>/<timestamp>/<artifact>} and written to a temporary
+ * file first, so that readers never see a partially written artifact.
+ */
+public class LocalModelStore
+    implements ModelStore
+{
+    private final File root;
+
+    public LocalModelStore(File root)
+    {
+        RepositoryUtil.nullCheck(root);
+        RepositoryUtil.createFileSystemLocation(root);
+        this.root = root;
+    }
+
+    @Override
+    public void put(String id, long timestamp, String artifact, InputStream content)
+        throws IOException
+    {
+        File target = locate(id, timestamp, artifact);
+        FileUtils.forceMkdir(target.getParentFile());
+        File tmp = new File(target.getParentFile(), "." + artifact + ".tmp");
+        try (OutputStream os = new FileOutputStream(tmp)) {
+            IOUtils.copy(content, os);
+        }
+        Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    @Override
+    public InputStream get(String id, long timestamp, String artifact) throws IOException
+    {
+        File file = locate(id, timestamp, artifact);
+        if (!file.isFile()) {
+            throw new FileNotFoundException("Artifact [" + artifact + "] of model [" + id
+                    + "] / [" + timestamp + "] does not exist");
+        }
+        return new FileInputStream(file);
+    }
+
+    @Override
+    public List<String> listModels() throws IOException
+    {
+        List<String> ids = new ArrayList<>();
+        File[] folders = root.listFiles(File::isDirectory);
+        if (folders != null) {
+            for (File folder : folders) {
+                if (folder.getName().startsWith(".")) {
+                    continue;
+                }
+                if (!listVersions(folder.getName()).isEmpty()) {
+                    ids.add(folder.getName());
+                }
+            }
+        }
+        Collections.sort(ids);
+        return ids;
+    }
+
+    @Override
+    public List<Long> listVersions(String id) throws IOException
+    {
+        RepositoryUtil.checkModelId(id);
+        List<Long> timestamps = new ArrayList<>();
+        File[] folders = new File(root, id).listFiles(File::isDirectory);
+        if (folders != null) {
+            for (File folder : folders) {
+                if (folder.getName().matches("^[0-9]+$")) {
+                    timestamps.add(Long.parseLong(folder.getName()));
+                }
+            }
+        }
+        Collections.sort(timestamps);
+        return timestamps;
+    }
+
+    @Override
+    public void delete(String id, long timestamp) throws IOException
+    {
+        RepositoryUtil.checkModelId(id);
+        FileUtils.deleteDirectory(new File(new File(root, id), Long.toString(timestamp)));
+    }
+
+    private File locate(String id, long timestamp, String artifact)
+    {
+        RepositoryUtil.checkModelId(id);
+        RepositoryUtil.checkModelId(artifact);
+        return new File(new File(new File(root, id), Long.toString(timestamp)), artifact);
+    }
+}
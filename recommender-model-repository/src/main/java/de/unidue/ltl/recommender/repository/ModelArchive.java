@@ -0,0 +1,88 @@
+/*******************************************************************************
+ * Copyright 2018
+ * Language Technology Lab
+ * University of Duisburg-Essen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package de.unidue.ltl.recommender.repository;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Compressed copy of a model folder, used for models which are not accessed for a while. Unlike
+ * a {@link ModelPack} the archive cannot be used without unpacking it.
+ */
+class ModelArchive
+{
+    /**
+     * Compresses the content of a model folder into a zip file
+     */
+    static void write(File modelFolder, File archive) throws IOException
+    {
+        List<File> files = new ArrayList<>(FileUtils.listFiles(modelFolder, null, true));
+        files.sort((a, b) -> a.getPath().compareTo(b.getPath()));
+
+        try (ZipOutputStream zos = new ZipOutputStream(
+                new BufferedOutputStream(new FileOutputStream(archive)))) {
+            zos.setLevel(Deflater.BEST_COMPRESSION);
+            for (File f : files) {
+                zos.putNextEntry(new ZipEntry(modelFolder.toURI().relativize(f.toURI()).getPath()));
+                FileUtils.copyFile(f, zos);
+                zos.closeEntry();
+            }
+        }
+    }
+
+    /**
+     * Restores the model folder from an archive
+     *
+     * @param targetFolder
+     *            the folder to create, must not exist yet
+     */
+    static void unpack(File archive, File targetFolder) throws IOException
+    {
+        String root = targetFolder.getCanonicalPath() + File.separator;
+        try (ZipInputStream zis = new ZipInputStream(
+                new BufferedInputStream(new FileInputStream(archive)))) {
+            ZipEntry ze;
+            while ((ze = zis.getNextEntry()) != null) {
+                File target = new File(targetFolder, ze.getName());
+                if (!target.getCanonicalPath().startsWith(root)) {
+                    throw new IOException("Entry [" + ze.getName() + "] of ["
+                            + archive.getAbsolutePath() + "] is outside of the model folder");
+                }
+                FileUtils.forceMkdir(target.getParentFile());
+                try (OutputStream os = new BufferedOutputStream(new FileOutputStream(target))) {
+                    IOUtils.copy(zis, os);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,221 @@
+/*******************************************************************************
+ * Copyright 2018
+ * Language Technology Lab
+ * University of Duisburg-Essen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package de.unidue.ltl.recommender.repository;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Content-addressed storage of the files of model folders below the repository root. Each
+ * distinct file content is kept once as blob named by its SHA-256 hash; the files in the version
+ * folders are hard links to the blobs. The link count of a blob thus counts its references: a
+ * blob with a single link is referenced by no version anymore and is deleted by
+ * {@link #collect()}.
+ * <p>
+ * Files in model folders are never modified in place, a changed file is always written as new
+ * file, so that sharing the content between versions and models is safe. Deduplication is
+ * disabled if the file system supports no hard links.
+ */
+class ModelBlobStore
+{
+    private static final Logger logger = LoggerFactory.getLogger(ModelBlobStore.class.getName());
+
+    static final String FOLDER = ".blobs";
+
+    private final File folder;
+    private volatile boolean enabled;
+
+    ModelBlobStore(File repositoryRoot)
+    {
+        this.folder = new File(repositoryRoot, FOLDER);
+        this.enabled = FileSystems.getDefault().supportedFileAttributeViews().contains("unix");
+    }
+
+    boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    /**
+     * Copies a folder; files whose content is stored already are linked instead of written
+     */
+    synchronized void copyDirectory(File source, File target) throws IOException
+    {
+        if (!enabled) {
+            FileUtils.copyDirectory(source, target);
+            return;
+        }
+
+        for (File file : listFiles(source)) {
+            File copy = new File(target, source.toURI().relativize(file.toURI()).getPath());
+            FileUtils.forceMkdir(copy.getParentFile());
+            if (file.length() == 0) {
+                FileUtils.copyFile(file, copy);
+                continue;
+            }
+            File blob = blob(hash(file));
+            if (!link(copy, blob)) {
+                FileUtils.copyFile(file, copy);
+                store(copy, blob);
+            }
+        }
+    }
+
+    /**
+     * Replaces the files of a folder by links to the blobs of their content, files with new
+     * content become blobs
+     */
+    synchronized void deduplicate(File modelFolder) throws IOException
+    {
+        if (!enabled) {
+            return;
+        }
+
+        for (File file : listFiles(modelFolder)) {
+            if (file.length() > 0 && linkCount(file) == 1) {
+                store(file, blob(hash(file)));
+            }
+        }
+    }
+
+    private void store(File file, File blob) throws IOException
+    {
+        if (!blob.exists()) {
+            FileUtils.forceMkdir(blob.getParentFile());
+            link(blob, file);
+            return;
+        }
+
+        File tmp = new File(file.getParentFile(), "." + file.getName() + ".link");
+        Files.deleteIfExists(tmp.toPath());
+        if (link(tmp, blob)) {
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+            logger.debug("Linked [" + file.getAbsolutePath() + "] to stored blob ["
+                    + blob.getName() + "]");
+        }
+    }
+
+    /**
+     * Creates a hard link
+     *
+     * @return false if the target does not exist or links are not supported
+     */
+    private boolean link(File link, File target) throws IOException
+    {
+        try {
+            Files.createLink(link.toPath(), target.toPath());
+            return true;
+        }
+        catch (NoSuchFileException | FileAlreadyExistsException e) {
+            return false;
+        }
+        catch (UnsupportedOperationException | FileSystemException e) {
+            logger.warn("The file system of [" + folder.getAbsolutePath()
+                    + "] does not support hard links - model files are not deduplicated ["
+                    + e.getMessage() + "]");
+            enabled = false;
+            return false;
+        }
+    }
+
+    /**
+     * Deletes the blobs which are linked from no model folder
+     *
+     * @return the number of bytes freed
+     */
+    synchronized long collect() throws IOException
+    {
+        if (!enabled || !folder.exists()) {
+            return 0;
+        }
+
+        long freed = 0;
+        int deleted = 0;
+        for (File blob : listFiles(folder)) {
+            if (linkCount(blob) <= 1) {
+                freed += blob.length();
+                deleted++;
+                Files.deleteIfExists(blob.toPath());
+            }
+        }
+        if (deleted > 0) {
+            logger.info("Deleted [" + deleted + "] unreferenced blobs of [" + freed + "] bytes");
+        }
+        return freed;
+    }
+
+    private File blob(String hash)
+    {
+        return new File(new File(folder, hash.substring(0, 2)), hash);
+    }
+
+    private static int linkCount(File file) throws IOException
+    {
+        return (Integer) Files.getAttribute(file.toPath(), "unix:nlink");
+    }
+
+    private static List<File> listFiles(File directory)
+    {
+        Collection<File> files = FileUtils.listFiles(directory, null, true);
+        return new ArrayList<>(files);
+    }
+
+    static String hash(File file) throws IOException
+    {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream is = new FileInputStream(file)) {
+            int n;
+            while ((n = is.read(buffer)) > 0) {
+                digest.update(buffer, 0, n);
+            }
+        }
+
+        StringBuilder sb = new StringBuilder();
+        for (byte b : digest.digest()) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+}
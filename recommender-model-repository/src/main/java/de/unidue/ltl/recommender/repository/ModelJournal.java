@@ -0,0 +1,326 @@
+/*******************************************************************************
+ * Copyright 2018
+ * Language Technology Lab
+ * University of Duisburg-Essen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package de.unidue.ltl.recommender.repository;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.zip.CRC32;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only log of the check-ins of a {@link ModelRepository}, stored in the repository root.
+ * Each line is one tab separated record:
+ *
+ * <pre>
+ * BEGIN    id timestamp                                 a version is about to be installed
+ * COMMIT   id timestamp size checksum fingerprint      the version is complete and current
+ * SELECT   id timestamp pinned                          the model is switched to the version
+ * DISCARD  id timestamp                                 the files of the version were deleted
+ * </pre>
+ *
+ * A committed version becomes the current version of its model unless the model is pinned to
+ * another version. Replaying the journal yields the retained versions of every model without
+ * listing the repository folder, and the versions whose check-in was interrupted. Records are
+ * flushed to disc before the journal is used further, a torn last line is ignored. The journal is
+ * compacted into one COMMIT record per retained version once it holds many superseded records;
+ * the BEGIN records of check-ins in progress are kept.
+ * <p>
+ * Several processes sharing a repository root each write their own journal, named after their
+ * replica, since every process compacts its journal from its own entries.
+ */
+class ModelJournal
+{
+    private static final Logger logger = LoggerFactory.getLogger(ModelJournal.class.getName());
+
+    static final String FILE_NAME = ".repository.journal";
+
+    private static final String BEGIN = "BEGIN";
+    private static final String COMMIT = "COMMIT";
+    private static final String SELECT = "SELECT";
+    private static final String DISCARD = "DISCARD";
+    private static final String NONE = "-";
+
+    private final File file;
+    private int records;
+    /** id and timestamp of the versions with a BEGIN but no COMMIT or DISCARD record yet */
+    private final Set<String> open = new LinkedHashSet<>();
+
+    /**
+     * @param replica
+     *            name of the process using the journal, null for the journal of a repository
+     *            root used by a single process
+     */
+    ModelJournal(File repositoryRoot, String replica)
+    {
+        this.file = new File(repositoryRoot,
+                replica == null ? FILE_NAME : FILE_NAME + "." + replica);
+    }
+
+    boolean exists()
+    {
+        return file.exists();
+    }
+
+    synchronized void begin(String id, long timestamp) throws IOException
+    {
+        append(BEGIN + "\t" + id + "\t" + timestamp);
+        open.add(id + "\t" + timestamp);
+    }
+
+    synchronized void commit(Entry entry) throws IOException
+    {
+        append(commitRecord(entry));
+        open.remove(entry.getId() + "\t" + entry.getTimeStamp());
+    }
+
+    synchronized void select(Entry entry) throws IOException
+    {
+        append(selectRecord(entry));
+    }
+
+    synchronized void discard(String id, long timestamp) throws IOException
+    {
+        append(DISCARD + "\t" + id + "\t" + timestamp);
+        open.remove(id + "\t" + timestamp);
+    }
+
+    private static String commitRecord(Entry entry)
+    {
+        return COMMIT + "\t" + entry.getId() + "\t" + entry.getTimeStamp() + "\t"
+                + entry.getSize() + "\t"
+                + (entry.getChecksum() != null ? entry.getChecksum() : NONE) + "\t"
+                + (entry.getFingerprint() != null ? entry.getFingerprint() : NONE);
+    }
+
+    private static String selectRecord(Entry entry)
+    {
+        return SELECT + "\t" + entry.getId() + "\t" + entry.getTimeStamp() + "\t"
+                + entry.isPinned();
+    }
+
+    private void append(String record) throws IOException
+    {
+        try (FileOutputStream os = new FileOutputStream(file, true)) {
+            os.write((record + "\n").getBytes(UTF_8));
+            os.getChannel().force(false);
+        }
+        records++;
+    }
+
+    /**
+     * @return the number of records in the journal
+     */
+    synchronized int getNumberOfRecords()
+    {
+        return records;
+    }
+
+    /**
+     * Reads the journal
+     *
+     * @return the versions of each model, the version each model points to and the versions
+     *         whose check-in was interrupted
+     */
+    synchronized Replay replay() throws IOException
+    {
+        Replay replay = new Replay();
+        Set<String> begun = new LinkedHashSet<>();
+        Map<String, Entry> current = new HashMap<>();
+        records = 0;
+
+        try (InputStream is = new FileInputStream(file);
+                BufferedReader reader = new BufferedReader(new InputStreamReader(is, UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] f = line.split("\t");
+                try {
+                    String id = f[1];
+                    long timestamp = Long.parseLong(f[2]);
+                    String key = id + "\t" + timestamp;
+                    NavigableMap<Long, Entry> versions = replay.versions.computeIfAbsent(id,
+                            k -> new ConcurrentSkipListMap<>());
+                    switch (f[0]) {
+                    case BEGIN:
+                        begun.add(key);
+                        break;
+                    case COMMIT:
+                        Entry version = new Entry(id, timestamp);
+                        version.size = Long.parseLong(f[3]);
+                        version.checksum = NONE.equals(f[4]) ? null : f[4];
+                        version.fingerprint = NONE.equals(f[5]) ? null : f[5];
+                        begun.remove(key);
+                        versions.put(timestamp, version);
+                        Entry pointer = current.get(id);
+                        if (pointer == null || !pointer.isPinned()) {
+                            current.put(id, version.copyVersion());
+                        }
+                        else if (pointer.getTimeStamp() == timestamp) {
+                            pointer.switchTo(version);
+                        }
+                        break;
+                    case SELECT:
+                        if (!versions.containsKey(timestamp)) {
+                            throw new IllegalArgumentException("Unknown version");
+                        }
+                        Entry selected = versions.get(timestamp).copyVersion();
+                        selected.pinned = Boolean.parseBoolean(f[3]);
+                        current.put(id, selected);
+                        break;
+                    case DISCARD:
+                        begun.remove(key);
+                        versions.remove(timestamp);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown record type");
+                    }
+                    records++;
+                }
+                catch (RuntimeException e) {
+                    logger.warn("Ignoring malformed record [" + line + "] in journal ["
+                            + file.getAbsolutePath() + "]");
+                }
+            }
+        }
+
+        // open until the files of the interrupted check-ins are discarded
+        open.clear();
+        open.addAll(begun);
+        for (String key : begun) {
+            // the files of an interrupted check-in are incomplete, even if they replaced a
+            // committed version of the same timestamp
+            String[] f = key.split("\t");
+            Entry version = new Entry(f[0], Long.parseLong(f[1]));
+            replay.versions.get(version.getId()).remove(version.getTimeStamp());
+            replay.obsolete.add(version);
+        }
+
+        for (Map.Entry<String, NavigableMap<Long, Entry>> e : replay.versions.entrySet()) {
+            if (e.getValue().isEmpty()) {
+                continue;
+            }
+            Entry entry = current.get(e.getKey());
+            if (entry == null || !e.getValue().containsKey(entry.getTimeStamp())) {
+                entry = e.getValue().lastEntry().getValue().copyVersion();
+            }
+            replay.entries.put(entry.getId(), entry);
+        }
+        replay.versions.values().removeIf(Map::isEmpty);
+        return replay;
+    }
+
+    /**
+     * Rewrites the journal with one COMMIT record per retained version and a SELECT record for
+     * each entry which does not point to its newest version, followed by the BEGIN records of the
+     * check-ins in progress, whose files are thus deleted after a crash. Entries without retained
+     * versions, e.g. evicted while the journal is compacted, are left out. The new journal
+     * replaces the old one with an atomic rename.
+     */
+    synchronized void compact(Collection<Entry> entries,
+            Map<String, ? extends NavigableMap<Long, Entry>> versions)
+        throws IOException
+    {
+        File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+        int written = 0;
+        try (FileOutputStream os = new FileOutputStream(tmp)) {
+            for (Entry entry : entries) {
+                NavigableMap<Long, Entry> retained = versions.get(entry.getId());
+                if (retained == null || retained.isEmpty()) {
+                    continue;
+                }
+                for (Entry version : retained.values()) {
+                    os.write((commitRecord(version) + "\n").getBytes(UTF_8));
+                    written++;
+                }
+                if (entry.isPinned() || retained.lastKey() != entry.getTimeStamp()) {
+                    os.write((selectRecord(entry) + "\n").getBytes(UTF_8));
+                    written++;
+                }
+            }
+            for (String key : open) {
+                os.write((BEGIN + "\t" + key + "\n").getBytes(UTF_8));
+                written++;
+            }
+            os.getChannel().force(false);
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+        logger.debug("Compacted journal [" + file.getAbsolutePath() + "] from [" + records
+                + "] to [" + written + "] records");
+        records = written;
+    }
+
+    /**
+     * Computes a CRC32 over the relative paths and the content of all files of a model folder
+     *
+     * @return the checksum in hex
+     */
+    static String checksum(File location) throws IOException
+    {
+        CRC32 crc = new CRC32();
+        List<File> files = new ArrayList<>();
+        if (location.isDirectory()) {
+            files.addAll(FileUtils.listFiles(location, null, true));
+            files.sort((a, b) -> a.getPath().compareTo(b.getPath()));
+        }
+        else {
+            files.add(location);
+        }
+
+        byte[] buffer = new byte[64 * 1024];
+        for (File f : files) {
+            crc.update(location.toURI().relativize(f.toURI()).getPath().getBytes(UTF_8));
+            try (InputStream is = new FileInputStream(f)) {
+                int n;
+                while ((n = is.read(buffer)) > 0) {
+                    crc.update(buffer, 0, n);
+                }
+            }
+        }
+        return Long.toHexString(crc.getValue());
+    }
+
+    static class Replay
+    {
+        final Map<String, Entry> entries = new LinkedHashMap<>();
+        final Map<String, NavigableMap<Long, Entry>> versions = new LinkedHashMap<>();
+        final List<Entry> obsolete = new ArrayList<>();
+    }
+}
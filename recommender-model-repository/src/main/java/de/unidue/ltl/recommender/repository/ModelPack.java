@@ -0,0 +1,427 @@
+/*******************************************************************************
+ * Copyright 2018
+ * Language Technology Lab
+ * University of Duisburg-Essen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package de.unidue.ltl.recommender.repository;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Read access to a compact model file as written by {@link ModelPackWriter}. The file is mapped
+ * into memory with {@link FileChannel#map}, entries are handed out as read-only slices of the
+ * mapping, i.e. opening a pack costs no heap beyond the entry table regardless of the model size.
+ * A single mapping is limited to 2 GB, larger packs are mapped in several chunks of whole entries.
+ * An entry must not exceed 2 GB.
+ * <p>
+ * The prediction reads the restored model folder, the pack gives access to the model without
+ * unpacking it, e.g. for inspection.
+ *
+ * <pre>
+ * magic "RMPK", int version
+ * int #strings, { int length, utf-8 bytes }*           interned path segments
+ * int #entries, { int #segments, int[] segment ids,
+ *                 byte encoding, long offset, long length }*
+ * payload
+ * </pre>
+ *
+ * Entries of encoding {@link #ENCODING_CRFSUITE} hold a crfsuite model of which the feature table
+ * was decomposed into primitive columns, see {@link CrfSuiteModel}.
+ */
+public class ModelPack
+{
+    static final byte[] MAGIC = new byte[] { 'R', 'M', 'P', 'K' };
+    static final int VERSION = 1;
+
+    static final byte ENCODING_RAW = 0;
+    static final byte ENCODING_CRFSUITE = 1;
+
+    static final byte WEIGHTS_FLOAT64 = 0;
+    static final byte WEIGHTS_FLOAT16 = 1;
+    static final byte WEIGHTS_INT8 = 2;
+
+    private final File packFile;
+    private final long size;
+    /** entry name to offset and length in the file */
+    private final Map<String, long[]> entries = new LinkedHashMap<>();
+    private final Map<String, Byte> encodings = new LinkedHashMap<>();
+    /** mappings of consecutive entries, none larger than the maximum chunk size */
+    private final List<MappedByteBuffer> chunks = new ArrayList<>();
+    private final List<Long> chunkOffsets = new ArrayList<>();
+
+    private ModelPack(File packFile, long size)
+    {
+        this.packFile = packFile;
+        this.size = size;
+    }
+
+    /**
+     * Maps a compact model file into memory
+     *
+     * @param packFile
+     *            the file written by {@link ModelPackWriter}
+     * @return the opened pack
+     * @throws IOException
+     *             if the file cannot be read or is not a model pack
+     */
+    public static ModelPack open(File packFile) throws IOException
+    {
+        return open(packFile, Integer.MAX_VALUE);
+    }
+
+    static ModelPack open(File packFile, int maxChunkSize) throws IOException
+    {
+        try (RandomAccessFile raf = new RandomAccessFile(packFile, "r");
+                FileChannel channel = raf.getChannel()) {
+            ModelPack pack = new ModelPack(packFile, channel.size());
+            // the header precedes the payload and is far smaller than a chunk
+            pack.readHeader(channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    Math.min(channel.size(), Integer.MAX_VALUE)));
+            pack.mapChunks(channel, maxChunkSize);
+            return pack;
+        }
+    }
+
+    private void readHeader(ByteBuffer header) throws IOException
+    {
+        byte[] magic = new byte[MAGIC.length];
+        header.get(magic);
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (magic[i] != MAGIC[i]) {
+                throw new IOException("[" + packFile.getAbsolutePath() + "] is not a model pack");
+            }
+        }
+        int version = header.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported model pack version [" + version + "] in ["
+                    + packFile.getAbsolutePath() + "]");
+        }
+
+        String[] segments = new String[header.getInt()];
+        for (int i = 0; i < segments.length; i++) {
+            byte[] b = new byte[header.getInt()];
+            header.get(b);
+            segments[i] = new String(b, UTF_8).intern();
+        }
+
+        int numEntries = header.getInt();
+        for (int i = 0; i < numEntries; i++) {
+            StringBuilder name = new StringBuilder();
+            int numSegments = header.getInt();
+            for (int j = 0; j < numSegments; j++) {
+                if (j > 0) {
+                    name.append('/');
+                }
+                name.append(segments[header.getInt()]);
+            }
+            byte encoding = header.get();
+            long offset = header.getLong();
+            long length = header.getLong();
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException("The entry [" + name + "] of [" + packFile.getAbsolutePath()
+                        + "] has [" + length + "] bytes, entries are limited to 2 GB");
+            }
+            if (offset < 0 || offset + length > size) {
+                throw new IOException("The entry [" + name + "] exceeds the end of ["
+                        + packFile.getAbsolutePath() + "]");
+            }
+            entries.put(name.toString(), new long[] { offset, length });
+            encodings.put(name.toString(), encoding);
+        }
+    }
+
+    /**
+     * Maps the payload in chunks, each starting at an entry and holding as many of the following
+     * entries as fit into the maximum chunk size
+     */
+    private void mapChunks(FileChannel channel, int maxChunkSize) throws IOException
+    {
+        List<long[]> locations = new ArrayList<>(entries.values());
+        locations.sort((a, b) -> Long.compare(a[0], b[0]));
+        int i = 0;
+        while (i < locations.size()) {
+            long begin = locations.get(i)[0];
+            long end = begin + locations.get(i)[1];
+            for (i++; i < locations.size(); i++) {
+                long next = locations.get(i)[0] + locations.get(i)[1];
+                if (next - begin > maxChunkSize && locations.get(i)[0] > begin) {
+                    break;
+                }
+                end = Math.max(end, next);
+            }
+            chunks.add(channel.map(FileChannel.MapMode.READ_ONLY, begin, end - begin));
+            chunkOffsets.add(begin);
+        }
+    }
+
+    /**
+     * @return the relative paths of all files in the pack, separated by '/'
+     */
+    public List<String> getEntryNames()
+    {
+        return Collections.unmodifiableList(new ArrayList<>(entries.keySet()));
+    }
+
+    /**
+     * @return size of the pack on disc in bytes
+     */
+    public long size()
+    {
+        return size;
+    }
+
+    /**
+     * Returns the stored bytes of an entry as read-only slice of the mapping. For crfsuite
+     * entries this is the compact representation, use {@link #getCrfSuiteModel(String)} or
+     * {@link #unpack(File)} to access the model.
+     *
+     * @param name
+     *            the relative path of the entry
+     * @return a read-only buffer
+     */
+    public ByteBuffer getEntry(String name)
+    {
+        long[] location = entries.get(name);
+        if (location == null) {
+            throw new IllegalArgumentException("The entry [" + name + "] is unknown");
+        }
+        // the last chunk starting at or before the entry contains it
+        int chunk = Collections.binarySearch(chunkOffsets, location[0]);
+        if (chunk < 0) {
+            chunk = -chunk - 2;
+        }
+        int position = (int) (location[0] - chunkOffsets.get(chunk));
+        ByteBuffer slice = chunks.get(chunk).duplicate();
+        slice.position(position);
+        slice.limit(position + (int) location[1]);
+        return slice.slice().asReadOnlyBuffer();
+    }
+
+    public boolean isCrfSuiteModel(String name)
+    {
+        Byte encoding = encodings.get(name);
+        return encoding != null && encoding == ENCODING_CRFSUITE;
+    }
+
+    public CrfSuiteModel getCrfSuiteModel(String name)
+    {
+        if (!isCrfSuiteModel(name)) {
+            throw new IllegalArgumentException("The entry [" + name + "] is no crfsuite model");
+        }
+        return new CrfSuiteModel(getEntry(name));
+    }
+
+    /**
+     * Restores the original model folder from the pack
+     *
+     * @param targetFolder
+     *            the folder to create, must not exist yet
+     * @throws IOException
+     *             in case of an error
+     */
+    public void unpack(File targetFolder) throws IOException
+    {
+        for (String name : entries.keySet()) {
+            File target = new File(targetFolder, name);
+            FileUtils.forceMkdir(target.getParentFile());
+            try (OutputStream os = new BufferedOutputStream(new FileOutputStream(target))) {
+                if (isCrfSuiteModel(name)) {
+                    getCrfSuiteModel(name).writeTo(os);
+                }
+                else {
+                    write(getEntry(name), os);
+                }
+            }
+        }
+    }
+
+    static void write(ByteBuffer source, OutputStream os) throws IOException
+    {
+        byte[] chunk = new byte[64 * 1024];
+        while (source.hasRemaining()) {
+            int len = Math.min(chunk.length, source.remaining());
+            source.get(chunk, 0, len);
+            os.write(chunk, 0, len);
+        }
+    }
+
+    /**
+     * A crfsuite model whose feature table is kept as primitive columns (feature type, source
+     * id, destination id, weight) in the mapped file. The label and attribute dictionaries of the
+     * original file are kept verbatim before and after the table.
+     *
+     * <pre>
+     * int #prefix bytes, prefix          crfsuite header up to the feature chunk header
+     * int #features
+     * int[] type, int[] source, int[] destination
+     * byte weight encoding, weights
+     * int #suffix bytes, suffix          remainder of the crfsuite file
+     * </pre>
+     * 
+     * Weights are either stored as double, as half precision float or as int8 values preceded by
+     * one float scale per block of {@link WeightQuantization#INT8_BLOCK_SIZE} weights.
+     */
+    public static class CrfSuiteModel
+    {
+        private final ByteBuffer data;
+        private final int prefixOffset;
+        private final int prefixLength;
+        private final int numFeatures;
+        private final int typeOffset;
+        private final int weightEncoding;
+        private final int weightOffset;
+        private final int scaleOffset;
+        private final int suffixOffset;
+        private final int suffixLength;
+
+        CrfSuiteModel(ByteBuffer data)
+        {
+            this.data = data;
+            prefixOffset = 4;
+            prefixLength = data.getInt(0);
+            numFeatures = data.getInt(prefixOffset + prefixLength);
+            typeOffset = prefixOffset + prefixLength + 4;
+            weightEncoding = data.get(typeOffset + 3 * 4 * numFeatures);
+            if (weightEncoding == WEIGHTS_INT8) {
+                scaleOffset = typeOffset + 3 * 4 * numFeatures + 1;
+                weightOffset = scaleOffset + 4 * numberOfBlocks(numFeatures);
+            }
+            else {
+                scaleOffset = -1;
+                weightOffset = typeOffset + 3 * 4 * numFeatures + 1;
+            }
+            suffixOffset = weightOffset + weightBytes() + 4;
+            suffixLength = data.getInt(suffixOffset - 4);
+        }
+
+        private int weightBytes()
+        {
+            switch (weightEncoding) {
+            case WEIGHTS_FLOAT64:
+                return 8 * numFeatures;
+            case WEIGHTS_FLOAT16:
+                return 2 * numFeatures;
+            case WEIGHTS_INT8:
+                return numFeatures;
+            }
+            throw new IllegalStateException("Unknown weight encoding [" + weightEncoding + "]");
+        }
+
+        static int numberOfBlocks(int numFeatures)
+        {
+            return (numFeatures + WeightQuantization.INT8_BLOCK_SIZE - 1)
+                    / WeightQuantization.INT8_BLOCK_SIZE;
+        }
+
+        public WeightQuantization getQuantization()
+        {
+            switch (weightEncoding) {
+            case WEIGHTS_FLOAT16:
+                return WeightQuantization.FLOAT16;
+            case WEIGHTS_INT8:
+                return WeightQuantization.INT8;
+            default:
+                return WeightQuantization.NONE;
+            }
+        }
+
+        public int getNumberOfFeatures()
+        {
+            return numFeatures;
+        }
+
+        public int getType(int i)
+        {
+            return data.getInt(typeOffset + 4 * i);
+        }
+
+        public int getSource(int i)
+        {
+            return data.getInt(typeOffset + 4 * (numFeatures + i));
+        }
+
+        public int getDestination(int i)
+        {
+            return data.getInt(typeOffset + 4 * (2 * numFeatures + i));
+        }
+
+        public double getWeight(int i)
+        {
+            switch (weightEncoding) {
+            case WEIGHTS_FLOAT16:
+                return WeightQuantization.fromFloat16(data.getShort(weightOffset + 2 * i));
+            case WEIGHTS_INT8:
+                float scale = data
+                        .getFloat(scaleOffset + 4 * (i / WeightQuantization.INT8_BLOCK_SIZE));
+                return data.get(weightOffset + i) * (double) scale;
+            default:
+                return data.getDouble(weightOffset + 8 * i);
+            }
+        }
+
+        /**
+         * Writes the model in the original crfsuite file format
+         *
+         * @param os
+         *            the target stream
+         * @throws IOException
+         *             in case of an error
+         */
+        public void writeTo(OutputStream os) throws IOException
+        {
+            write(region(prefixOffset, prefixLength), os);
+
+            ByteBuffer record = ByteBuffer.allocate(ModelPackWriter.CRF_FEATURE_SIZE)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            for (int i = 0; i < numFeatures; i++) {
+                record.clear();
+                record.putInt(getType(i));
+                record.putInt(getSource(i));
+                record.putInt(getDestination(i));
+                record.putDouble(getWeight(i));
+                os.write(record.array());
+            }
+
+            write(region(suffixOffset, suffixLength), os);
+        }
+
+        private ByteBuffer region(int offset, int length)
+        {
+            ByteBuffer region = data.duplicate();
+            region.position(offset);
+            region.limit(offset + length);
+            return region;
+        }
+    }
+}
@@ -0,0 +1,302 @@
+/*******************************************************************************
+ * Copyright 2018
+ * Language Technology Lab
+ * University of Duisburg-Essen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package de.unidue.ltl.recommender.repository;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Converts a model folder, as written by DKPro TC, into a single compact file which can be read
+ * with {@link ModelPack}. Path segments are interned into a string table, crfsuite model files
+ * are recognized by their file magic and their feature table is stored column-wise.
+ */
+public class ModelPackWriter
+{
+    private static final Logger logger = LoggerFactory.getLogger(ModelPackWriter.class.getName());
+
+    static final int CRF_HEADER_SIZE = 48;
+    static final int CRF_CHUNK_SIZE = 12;
+    static final int CRF_FEATURE_SIZE = 20;
+
+    /**
+     * Writes the content of a model folder into a pack file. The pack is written to a temporary
+     * file next to the target and renamed once complete.
+     *
+     * @param modelFolder
+     *            the model folder
+     * @param packFile
+     *            the target file
+     * @throws IOException
+     *             in case of an error
+     */
+    public static void write(File modelFolder, File packFile) throws IOException
+    {
+        write(modelFolder, packFile, WeightQuantization.NONE);
+    }
+
+    /**
+     * Writes the content of a model folder into a pack file and stores the weights of crfsuite
+     * models with the given precision. Quantization is lossy, a model unpacked from such a pack
+     * carries the rounded weights.
+     *
+     * @param modelFolder
+     *            the model folder
+     * @param packFile
+     *            the target file
+     * @param quantization
+     *            precision of the crfsuite weights
+     * @throws IOException
+     *             in case of an error
+     */
+    public static void write(File modelFolder, File packFile, WeightQuantization quantization)
+        throws IOException
+    {
+        List<String> names = new ArrayList<>();
+        List<File> files = new ArrayList<>();
+        Collection<File> listed = FileUtils.listFiles(modelFolder, null, true);
+        List<File> sorted = new ArrayList<>(listed);
+        sorted.sort((a, b) -> a.getPath().compareTo(b.getPath()));
+        for (File f : sorted) {
+            String relative = modelFolder.toURI().relativize(f.toURI()).getPath();
+            names.add(relative);
+            files.add(f);
+        }
+
+        List<String> segments = new ArrayList<>();
+        Map<String, Integer> segmentIds = new HashMap<>();
+        List<int[]> entrySegments = new ArrayList<>();
+        for (String name : names) {
+            String[] split = name.split("/");
+            int[] ids = new int[split.length];
+            for (int i = 0; i < split.length; i++) {
+                Integer id = segmentIds.get(split[i]);
+                if (id == null) {
+                    id = segments.size();
+                    segments.add(split[i]);
+                    segmentIds.put(split[i], id);
+                }
+                ids[i] = id;
+            }
+            entrySegments.add(ids);
+        }
+
+        byte[] encodings = new byte[files.size()];
+        byte[][] encoded = new byte[files.size()][];
+        long[] lengths = new long[files.size()];
+        for (int i = 0; i < files.size(); i++) {
+            encoded[i] = encodeCrfSuiteModel(files.get(i), quantization);
+            if (encoded[i] != null) {
+                encodings[i] = ModelPack.ENCODING_CRFSUITE;
+                lengths[i] = encoded[i].length;
+            }
+            else {
+                encodings[i] = ModelPack.ENCODING_RAW;
+                lengths[i] = files.get(i).length();
+            }
+        }
+
+        long headerSize = ModelPack.MAGIC.length + 4 + 4;
+        byte[][] segmentBytes = new byte[segments.size()][];
+        for (int i = 0; i < segments.size(); i++) {
+            segmentBytes[i] = segments.get(i).getBytes(UTF_8);
+            headerSize += 4 + segmentBytes[i].length;
+        }
+        headerSize += 4;
+        for (int[] ids : entrySegments) {
+            headerSize += 4 + 4 * ids.length + 1 + 8 + 8;
+        }
+
+        File tmp = new File(packFile.getParentFile(), packFile.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.write(ModelPack.MAGIC);
+            out.writeInt(ModelPack.VERSION);
+            out.writeInt(segmentBytes.length);
+            for (byte[] b : segmentBytes) {
+                out.writeInt(b.length);
+                out.write(b);
+            }
+
+            out.writeInt(files.size());
+            long offset = headerSize;
+            for (int i = 0; i < files.size(); i++) {
+                int[] ids = entrySegments.get(i);
+                out.writeInt(ids.length);
+                for (int id : ids) {
+                    out.writeInt(id);
+                }
+                out.writeByte(encodings[i]);
+                out.writeLong(offset);
+                out.writeLong(lengths[i]);
+                offset += lengths[i];
+            }
+
+            for (int i = 0; i < files.size(); i++) {
+                if (encoded[i] != null) {
+                    out.write(encoded[i]);
+                }
+                else {
+                    FileUtils.copyFile(files.get(i), out);
+                }
+            }
+        }
+
+        FileUtils.deleteQuietly(packFile);
+        if (!tmp.renameTo(packFile)) {
+            throw new IOException("Could not rename [" + tmp.getAbsolutePath() + "] to ["
+                    + packFile.getAbsolutePath() + "]");
+        }
+        logger.debug("Packed [" + files.size() + "] files of [" + modelFolder.getAbsolutePath()
+                + "] into [" + packFile.getAbsolutePath() + "] of [" + packFile.length()
+                + "] bytes");
+    }
+
+    /**
+     * Decomposes a crfsuite model file. The file format is little-endian: a header of twelve
+     * 32-bit fields starting with the magic "lCRF" and the model type "FOMC", of which the
+     * eighth field is the offset of the feature chunk. The chunk consists of a chunk header
+     * (id "FEAT", size, number of features) and one record (type, source, destination, 64-bit
+     * weight) per feature.
+     *
+     * @return the compact encoding, or null if the file is no crfsuite model
+     */
+    static byte[] encodeCrfSuiteModel(File file, WeightQuantization quantization)
+        throws IOException
+    {
+        if (file.length() < CRF_HEADER_SIZE || file.length() > Integer.MAX_VALUE) {
+            return null;
+        }
+
+        ByteBuffer crf = ByteBuffer.wrap(FileUtils.readFileToByteArray(file))
+                .order(ByteOrder.LITTLE_ENDIAN);
+        if (!hasId(crf, 0, "lCRF") || !hasId(crf, 8, "FOMC")) {
+            return null;
+        }
+
+        int offFeatures = crf.getInt(28);
+        if (offFeatures < 0 || offFeatures + CRF_CHUNK_SIZE > crf.capacity()
+                || !hasId(crf, offFeatures, "FEAT")) {
+            logger.warn("File [" + file.getAbsolutePath()
+                    + "] looks like a crfsuite model but has no feature chunk - stored as is");
+            return null;
+        }
+        int numFeatures = crf.getInt(offFeatures + 8);
+        int prefixLength = offFeatures + CRF_CHUNK_SIZE;
+        long tableEnd = prefixLength + (long) numFeatures * CRF_FEATURE_SIZE;
+        if (numFeatures < 0 || tableEnd > crf.capacity()) {
+            logger.warn("Feature table of [" + file.getAbsolutePath()
+                    + "] exceeds the file - stored as is");
+            return null;
+        }
+        int suffixLength = crf.capacity() - (int) tableEnd;
+
+        int weightBytes;
+        switch (quantization) {
+        case FLOAT16:
+            weightBytes = 2 * numFeatures;
+            break;
+        case INT8:
+            weightBytes = 4 * ModelPack.CrfSuiteModel.numberOfBlocks(numFeatures) + numFeatures;
+            break;
+        default:
+            weightBytes = 8 * numFeatures;
+        }
+
+        ByteBuffer out = ByteBuffer.allocate(4 + prefixLength + 4 + 3 * 4 * numFeatures + 1
+                + weightBytes + 4 + suffixLength);
+        out.putInt(prefixLength);
+        out.put(crf.array(), 0, prefixLength);
+        out.putInt(numFeatures);
+        for (int column = 0; column < 3; column++) {
+            for (int i = 0; i < numFeatures; i++) {
+                out.putInt(crf.getInt(prefixLength + i * CRF_FEATURE_SIZE + 4 * column));
+            }
+        }
+        double[] weights = new double[numFeatures];
+        for (int i = 0; i < numFeatures; i++) {
+            weights[i] = crf.getDouble(prefixLength + i * CRF_FEATURE_SIZE + 12);
+        }
+        out.put(quantization.encoding);
+        putWeights(out, weights, quantization);
+        out.putInt(suffixLength);
+        out.put(crf.array(), (int) tableEnd, suffixLength);
+
+        logger.debug("Compacted crfsuite model [" + file.getAbsolutePath() + "] with ["
+                + numFeatures + "] features, weight quantization [" + quantization + "]");
+        return out.array();
+    }
+
+    private static void putWeights(ByteBuffer out, double[] weights,
+            WeightQuantization quantization)
+    {
+        switch (quantization) {
+        case FLOAT16:
+            for (double w : weights) {
+                out.putShort(WeightQuantization.toFloat16((float) w));
+            }
+            break;
+        case INT8:
+            int blockSize = WeightQuantization.INT8_BLOCK_SIZE;
+            float[] scales = new float[ModelPack.CrfSuiteModel.numberOfBlocks(weights.length)];
+            for (int b = 0; b < scales.length; b++) {
+                double max = 0;
+                for (int i = b * blockSize; i < Math.min(weights.length, (b + 1) * blockSize); i++) {
+                    max = Math.max(max, Math.abs(weights[i]));
+                }
+                scales[b] = (float) (max / 127.0);
+                out.putFloat(scales[b]);
+            }
+            for (int i = 0; i < weights.length; i++) {
+                float scale = scales[i / blockSize];
+                out.put(scale == 0 ? 0 : (byte) Math.round(weights[i] / scale));
+            }
+            break;
+        default:
+            for (double w : weights) {
+                out.putDouble(w);
+            }
+        }
+    }
+
+    private static boolean hasId(ByteBuffer b, int offset, String id)
+    {
+        for (int i = 0; i < id.length(); i++) {
+            if (b.get(offset + i) != id.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -21,45 +21,449 @@ package de.unidue.ltl.recommender.repository;
 import java.io.File;
 import java.io.FileFilter;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.io.FileUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Stores the models in a folder per version below the repository root. The repository may be
+ * used concurrently: entries are registered in a concurrent map and the files of an entry are
+ * only visible once they are complete. Readers which use the files of a model bracket the use
+ * with {@link #beginReadAccess(String)} and {@link #endReadAccess(String, long)}. An update
+ * switches the entry to the new version at once, the previous version is deleted in the
+ * background after its readers are done.
+ * <p>
+ * Model folders are published with an atomic rename: a source folder on the same file system is
+ * moved into place, other sources are copied into a staging folder of the repository first.
+ * Old versions are moved out of the repository before they are deleted. After a crash the
+ * repository thus holds only complete folders, leftovers in the staging folder are deleted on
+ * {@link #screenFolderAndLoad()}.
+ * <p>
+ * Every check-in is recorded in a {@link ModelJournal}, from which the repository is loaded
+ * without listing the root folder. Versions whose check-in was interrupted are deleted on load.
+ * <p>
+ * The last {@link #setRetainedVersions(int) versions} of each model are kept. An entry can be
+ * pinned to one of them or rolled back to the previous one, which only switches the version the
+ * entry points to. Versions beyond the limit are deleted in the background.
+ * <p>
+ * Optionally identical files of all versions and models are stored only once, see
+ * {@link #setDeduplicateModels(boolean)}, and models which are not used for a while are
+ * archived, see {@link #setArchiveAfter(long)}. If the repository exceeds its
+ * {@link #setQuota(long, int) quota}, models without running read accesses are evicted.
+ * <p>
+ * Models written into the root folder by other processes are registered once they are marked
+ * as complete, see {@link #startWatching()}. Several servers may share one root folder, each with
+ * its own replica name, see {@link #ModelRepository(File, String)}.
+ */
 public class ModelRepository
 {
     private static final Logger logger = LoggerFactory.getLogger(ModelRepository.class.getName());
 
     File repositoryRoot;
-    Map<String, Entry> registerMap = new HashMap<>();
+    /** name of this process among the processes sharing the root folder, null if there are none */
+    final String replica;
+    Map<String, Entry> registerMap = new ConcurrentHashMap<>();
+    /** retained versions per model id by timestamp, including the one the entry points to */
+    Map<String, NavigableMap<Long, Entry>> versions = new ConcurrentHashMap<>();
+    final ModelJournal journal;
+    final ModelBlobStore blobs;
+
+    int retainedVersions = 1;
+    private final Set<String> pendingCollections = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService collector = Executors
+            .newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "model-version-collector");
+                t.setDaemon(true);
+                return t;
+            });
+
+    long archiveAfter = 0;
+    long maxBytes = 0;
+    int maxModels = 0;
+    EvictionPolicy evictionPolicy = EvictionPolicy.LRU;
+    private final AtomicInteger evictions = new AtomicInteger(0);
+    private final AtomicLong evictedBytes = new AtomicLong(0);
+    private ScheduledFuture<?> archiving;
+    private final AtomicInteger unpacks = new AtomicInteger(0);
+    private WatchService watchService;
+    private final Object externalLoads = new Object();
+    private final Object evictedCheckIns = new Object();
+
+    boolean compactModels = false;
+    boolean retainRawModelFolder = true;
+    WeightQuantization quantization = WeightQuantization.NONE;
+    boolean deduplicateModels = false;
 
     public ModelRepository(File storeRootDirectory)
+    {
+        this(storeRootDirectory, null);
+    }
+
+    /**
+     * Creates a repository which shares its root folder with other processes, e.g. servers on
+     * shared storage which register the models published there (see {@link #startWatching()}).
+     * Each process keeps its own journal and staging folder under its replica name, which must
+     * be the same across restarts of the process.
+     * 
+     * @param storeRootDirectory
+     *            the root folder
+     * @param replica
+     *            name of this process among those sharing the root, null if it is the only one
+     */
+    public ModelRepository(File storeRootDirectory, String replica)
     {
         this.repositoryRoot = storeRootDirectory;
+        this.replica = replica;
         RepositoryUtil.nullCheck(this.repositoryRoot);
         RepositoryUtil.createFileSystemLocation(this.repositoryRoot);
+        this.journal = new ModelJournal(this.repositoryRoot, replica);
+        this.blobs = new ModelBlobStore(this.repositoryRoot);
         logger.info("Create [" + ModelRepository.class.getSimpleName() + "] with root folder located at ["
                 + this.repositoryRoot.getAbsolutePath() + "]");
     }
 
     public void addEntry(Entry entry, File sourceLocation, boolean deleteSource) throws IOException
     {
-        registerMap.put(entry.getId(), entry);
         File target = FileSystemLocator.locate(repositoryRoot, entry);
-        FileUtils.copyDirectory(sourceLocation, target);
+        journal.begin(entry.getId(), entry.getTimeStamp());
+        install(sourceLocation, target, deleteSource);
+        compact(entry);
+        deduplicate(entry);
+        writeFingerprint(entry);
+        measure(entry);
+        Entry version = entry.copyVersion();
+        entry.switchTo(version);
+        NavigableMap<Long, Entry> retained = new ConcurrentSkipListMap<>();
+        retained.put(entry.getTimeStamp(), version);
+        versions.put(entry.getId(), retained);
+        registerMap.put(entry.getId(), entry);
+        journal.commit(entry);
+        scheduleCollection(entry.getId());
+        compactJournalIfNeeded();
+    }
+
+    /**
+     * Records size and checksum of the stored files of a version
+     */
+    private void measure(Entry version) throws IOException
+    {
+        File folder = FileSystemLocator.locate(repositoryRoot, version);
+        File pack = FileSystemLocator.locatePack(repositoryRoot, version);
+        File archive = FileSystemLocator.locateArchive(repositoryRoot, version);
+        version.size = sizeOf(version);
+        version.checksum = ModelJournal
+                .checksum(folder.exists() ? folder : pack.exists() ? pack : archive);
+    }
+
+    private long sizeOf(Entry version)
+    {
+        File folder = FileSystemLocator.locate(repositoryRoot, version);
+        long size = FileSystemLocator.locatePack(repositoryRoot, version).length()
+                + FileSystemLocator.locateArchive(repositoryRoot, version).length();
+        if (folder.exists()) {
+            size += FileUtils.sizeOfDirectory(folder);
+        }
+        return size;
+    }
+
+    private void compactJournalIfNeeded() throws IOException
+    {
+        int retained = 0;
+        for (NavigableMap<Long, Entry> v : versions.values()) {
+            retained += v.size();
+        }
+        if (journal.getNumberOfRecords() > 2 * retained + 64) {
+            compactJournal();
+        }
+    }
+
+    /**
+     * Rewrites the journal from the registered entries. Check-ins, evictions and deletions may
+     * run concurrently, see {@link ModelJournal#compact}.
+     */
+    void compactJournal() throws IOException
+    {
+        journal.compact(new ArrayList<>(registerMap.values()), versions);
+    }
+
+    /**
+     * Deletes all files of a version and records the deletion in the journal
+     */
+    private void discardVersion(Entry version) throws IOException
+    {
+        discard(FileSystemLocator.locate(repositoryRoot, version));
+        FileUtils.deleteQuietly(FileSystemLocator.locatePack(repositoryRoot, version));
+        FileUtils.deleteQuietly(FileSystemLocator.locateArchive(repositoryRoot, version));
+        FileUtils.deleteQuietly(FileSystemLocator.locateFingerprint(repositoryRoot, version));
+        FileUtils.deleteQuietly(FileSystemLocator.locateMarker(repositoryRoot, version));
+        journal.discard(version.getId(), version.getTimeStamp());
+    }
+
+    /**
+     * Creates an empty folder on the file system of the repository. A model written to this
+     * folder and checked in with deleteSource enabled is published without copying.
+     * 
+     * @param name
+     *            prefix of the folder name
+     * @return the new folder
+     * @throws IOException
+     *             in case of an error
+     */
+    public File createStagingFolder(String name) throws IOException
+    {
+        File staging = FileSystemLocator.locateStaging(repositoryRoot, replica);
+        FileUtils.forceMkdir(staging);
+        return Files.createTempDirectory(staging.toPath(), name + "-").toFile();
+    }
+
+    /**
+     * Publishes a model folder at its location in the repository with an atomic rename. The
+     * source is moved if it is to be deleted anyway and resides on the same file system,
+     * otherwise it is copied into the staging folder first.
+     */
+    private void install(File source, File target, boolean deleteSource) throws IOException
+    {
+        if (source.getCanonicalFile().equals(target.getCanonicalFile())) {
+            // written into place by another process
+            return;
+        }
+        if (target.exists()) {
+            discard(target);
+        }
+
+        if (deleteSource) {
+            try {
+                Files.move(source.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                logger.debug("Moved [" + source.getAbsolutePath() + "] to ["
+                        + target.getAbsolutePath() + "]");
+                return;
+            }
+            catch (IOException e) {
+                logger.debug("Could not move [" + source.getAbsolutePath()
+                        + "] into the repository - will copy it [" + e.getMessage() + "]");
+            }
+        }
+
+        File staged = createStagingFolder(target.getName());
+        try {
+            if (deduplicateModels) {
+                blobs.copyDirectory(source, staged);
+            }
+            else {
+                FileUtils.copyDirectory(source, staged);
+            }
+            Files.move(staged.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException e) {
+            FileUtils.deleteQuietly(staged);
+            throw e;
+        }
+        logger.debug("Copied [" + source.getAbsolutePath() + "] to ["
+                + target.getAbsolutePath() + "]");
 
         if (deleteSource) {
-            FileUtils.deleteDirectory(sourceLocation);
+            FileUtils.deleteDirectory(source);
+        }
+    }
+
+    /**
+     * Removes a model folder from the repository by moving it to the staging folder before it
+     * is deleted, so that a partially deleted folder is never found in the repository
+     */
+    private void discard(File folder) throws IOException
+    {
+        if (!folder.exists()) {
+            return;
+        }
+        File trash = createStagingFolder(folder.getName());
+        File moved = new File(trash, folder.getName());
+        try {
+            Files.move(folder.toPath(), moved.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException e) {
+            logger.debug("Could not move [" + folder.getAbsolutePath()
+                    + "] out of the repository - deleting it in place [" + e.getMessage() + "]");
+            FileUtils.deleteDirectory(folder);
+        }
+        FileUtils.deleteDirectory(trash);
+    }
+
+    /**
+     * Stores models additionally as single compact file (see {@link ModelPackWriter}) when they
+     * are added or updated
+     * 
+     * @param compactModels
+     *            true to write a compact model file for each check-in
+     */
+    public void setCompactModels(boolean compactModels)
+    {
+        this.compactModels = compactModels;
+    }
+
+    /**
+     * Whether the model folder is kept next to the compact model file. If not, the folder is
+     * deleted after compaction and restored from the compact file on first access. Only
+     * effective if {@link #setCompactModels(boolean)} is enabled.
+     * 
+     * @param retainRawModelFolder
+     *            false to store only the compact model file
+     * @throws IllegalStateException
+     *             if the folder is to be retained while weights are quantized
+     */
+    public void setRetainRawModelFolder(boolean retainRawModelFolder)
+    {
+        checkQuantization(retainRawModelFolder, quantization);
+        this.retainRawModelFolder = retainRawModelFolder;
+    }
+
+    /**
+     * Reduces the precision of the weights of crfsuite models when they are added or updated. A
+     * quantized model is stored only as compact model file and restored from it on first access,
+     * the model folder must not be retained (see {@link #setRetainRawModelFolder(boolean)}).
+     * Predictions read the restored folder, which holds the rounded weights at full precision
+     * and size; only models at rest take less space.
+     * 
+     * @param quantization
+     *            the precision of stored weights
+     * @throws IllegalStateException
+     *             if the model folder is retained
+     */
+    public void setWeightQuantization(WeightQuantization quantization)
+    {
+        RepositoryUtil.nullCheck(quantization);
+        checkQuantization(retainRawModelFolder, quantization);
+        this.quantization = quantization;
+    }
+
+    /**
+     * A retained folder would hold the full size model next to the pack, or, restored from the
+     * pack, the rounded weights at full size
+     */
+    private static void checkQuantization(boolean retainRawModelFolder,
+            WeightQuantization quantization)
+    {
+        if (retainRawModelFolder && quantization != WeightQuantization.NONE) {
+            throw new IllegalStateException("Weight quantization [" + quantization
+                    + "] requires that the raw model folder is not retained");
+        }
+    }
+
+    /**
+     * Stores each distinct file content of the models only once (see {@link ModelBlobStore}).
+     * Versions and models share identical files, e.g. feature extractor descriptors and
+     * configuration files, through hard links.
+     * 
+     * @param deduplicateModels
+     *            true to link identical files of checked in models
+     */
+    public void setDeduplicateModels(boolean deduplicateModels)
+    {
+        this.deduplicateModels = deduplicateModels;
+    }
+
+    private void deduplicate(Entry entry) throws IOException
+    {
+        File folder = FileSystemLocator.locate(repositoryRoot, entry);
+        if (deduplicateModels && folder.exists()) {
+            blobs.deduplicate(folder);
+        }
+    }
+
+    private void compact(Entry entry) throws IOException
+    {
+        if (!compactModels && quantization == WeightQuantization.NONE) {
+            return;
+        }
+
+        File folder = FileSystemLocator.locate(repositoryRoot, entry);
+        File pack = FileSystemLocator.locatePack(repositoryRoot, entry);
+        ModelPackWriter.write(folder, pack, quantization);
+        logger.info("Compacted model [" + entry.toString() + "] into [" + pack.getAbsolutePath()
+                + "] of [" + pack.length() + "] bytes, weight quantization [" + quantization
+                + "]");
+
+        // a folder published by another process is registered by the other replicas as well
+        if (!retainRawModelFolder
+                && !FileSystemLocator.locateMarker(repositoryRoot, entry).exists()) {
+            FileUtils.deleteDirectory(folder);
+        }
+    }
+
+    private void writeFingerprint(Entry entry) throws IOException
+    {
+        if (entry.getFingerprint() == null) {
+            return;
+        }
+        FileUtils.writeStringToFile(FileSystemLocator.locateFingerprint(repositoryRoot, entry),
+                entry.getFingerprint(), StandardCharsets.UTF_8);
+    }
+
+    private void readFingerprint(Entry entry) throws IOException
+    {
+        File file = FileSystemLocator.locateFingerprint(repositoryRoot, entry);
+        if (file.exists()) {
+            entry.setFingerprint(
+                    FileUtils.readFileToString(file, StandardCharsets.UTF_8).trim());
         }
     }
 
     public void updateEntry(String id, long timestamp, File updatedModelExternalLocation,
             boolean deleteSource)
         throws IOException, InterruptedException
+    {
+        updateEntry(id, timestamp, updatedModelExternalLocation, deleteSource, null);
+    }
+
+    /**
+     * Checks in a new version of an existing entry. The new version is stored next to the
+     * current one and the entry is switched to it without waiting for the running read
+     * accesses, which continue with the previous version. A pinned entry is not switched, the
+     * new version is only retained. Versions exceeding {@link #setRetainedVersions(int)} are
+     * deleted in the background once they have no readers. Only a check-in with the timestamp of
+     * the current version waits for its readers, as it replaces the files in place.
+     * 
+     * @param id
+     *            the model id
+     * @param timestamp
+     *            the timestamp of the new version
+     * @param updatedModelExternalLocation
+     *            the location of the new model
+     * @param deleteSource
+     *            if the source location shall be deleted afterwards
+     * @param fingerprint
+     *            hash of the training input of the new version, may be null
+     * @throws IOException
+     *             in case of an error
+     * @throws InterruptedException
+     *             if interrupted
+     */
+    public void updateEntry(String id, long timestamp, File updatedModelExternalLocation,
+            boolean deleteSource, String fingerprint)
+        throws IOException, InterruptedException
     {
         RepositoryUtil.nullCheck(updatedModelExternalLocation);
 
@@ -69,22 +473,361 @@ public class ModelRepository
                     "Tried to update model with id [" + id + "], which did not exist");
         }
 
-        logger.debug("Existing model found (id: [" + entry.toString() + "])");
-        File pathToOldVersion = FileSystemLocator.locate(repositoryRoot, entry);
+        entry.updateLock.lockInterruptibly();
+        if (entry.removed) {
+            // evicted while waiting for another update
+            entry.updateLock.unlock();
+            checkInEvicted(id, timestamp, updatedModelExternalLocation, deleteSource,
+                    fingerprint);
+            return;
+        }
+        try {
+            logger.debug("Existing model found (id: [" + entry.toString() + "])");
+            Entry version = new Entry(id, timestamp);
+            version.fingerprint = fingerprint;
+            // a version with the timestamp of the current one can only be replaced in place
+            boolean inUse = timestamp == entry.getTimeStamp();
 
-        entry.timestamp = timestamp;
-        File pathToInternalLocation = FileSystemLocator.locate(repositoryRoot, entry);
-        FileUtils.copyDirectory(updatedModelExternalLocation, pathToInternalLocation);
+            journal.begin(id, timestamp);
+            if (inUse) {
+                Entry replaced = entry.current();
+                replaced.close();
+                try {
+                    store(version, updatedModelExternalLocation, deleteSource);
+                }
+                catch (IOException | RuntimeException e) {
+                    replaced.reopen();
+                    throw e;
+                }
+            }
+            else {
+                store(version, updatedModelExternalLocation, deleteSource);
+            }
 
-        FileUtils.deleteDirectory(pathToOldVersion);
-        logger.info("Deleted old version [" + pathToOldVersion.getAbsolutePath() + "]");
+            versions.get(id).put(timestamp, version);
+            if (!entry.isPinned() || inUse) {
+                entry.switchTo(version);
+            }
+            journal.commit(version);
 
-        if (deleteSource) {
-            logger.info("Deleted source version of new model originally located at ["
-                    + updatedModelExternalLocation.getAbsolutePath() + "]");
-            FileUtils.deleteDirectory(updatedModelExternalLocation);
+            if (entry.getTimeStamp() != timestamp) {
+                logger.info("Model [" + id + "] is pinned to version [" + entry.getTimeStamp()
+                        + "] - retained new version [" + timestamp + "] without using it");
+            }
+        }
+        finally {
+            entry.updateLock.unlock();
         }
 
+        scheduleCollection(id);
+        compactJournalIfNeeded();
+    }
+
+    /**
+     * Checks in a version of a model which was evicted while the check-in waited. These
+     * check-ins are serialized, the first adds the model again and the others update it.
+     */
+    private void checkInEvicted(String id, long timestamp, File location, boolean deleteSource,
+            String fingerprint)
+        throws IOException, InterruptedException
+    {
+        synchronized (evictedCheckIns) {
+            Entry current = registerMap.get(id);
+            if (current == null || current.removed) {
+                Entry added = new Entry(id, timestamp);
+                added.setFingerprint(fingerprint);
+                addEntry(added, location, deleteSource);
+                scheduleCollection(id);
+                return;
+            }
+        }
+        updateEntry(id, timestamp, location, deleteSource, fingerprint);
+    }
+
+    /**
+     * Writes the files of a version to its location, replacing files of an earlier check-in of
+     * the same version
+     */
+    private void store(Entry version, File source, boolean deleteSource) throws IOException
+    {
+        FileUtils.deleteQuietly(FileSystemLocator.locatePack(repositoryRoot, version));
+        FileUtils.deleteQuietly(FileSystemLocator.locateArchive(repositoryRoot, version));
+        FileUtils.deleteQuietly(FileSystemLocator.locateFingerprint(repositoryRoot, version));
+        install(source, FileSystemLocator.locate(repositoryRoot, version), deleteSource);
+        compact(version);
+        deduplicate(version);
+        writeFingerprint(version);
+        measure(version);
+    }
+
+    /**
+     * Number of versions kept per model. The newest versions are retained, in addition to the
+     * version a model is pinned to.
+     * 
+     * @param retainedVersions
+     *            the number of versions, at least 1
+     */
+    public void setRetainedVersions(int retainedVersions)
+    {
+        if (retainedVersions < 1) {
+            throw new IllegalArgumentException(
+                    "At least one version must be retained but was [" + retainedVersions + "]");
+        }
+        this.retainedVersions = retainedVersions;
+        for (String id : registerMap.keySet()) {
+            scheduleCollection(id);
+        }
+    }
+
+    /**
+     * @param id
+     *            the model id
+     * @return the retained versions of the model, newest first
+     */
+    public List<Entry> getVersions(String id)
+    {
+        return new ArrayList<>(requireVersions(id).descendingMap().values());
+    }
+
+    /**
+     * Points the entry to a retained version and keeps it there when newer versions are checked
+     * in. Running read accesses finish with the previous version, switching the version involves
+     * no file operations.
+     * 
+     * @param id
+     *            the model id
+     * @param timestamp
+     *            the timestamp of the version
+     * @throws IOException
+     *             in case of an error
+     * @throws InterruptedException
+     *             if interrupted
+     */
+    public void pinVersion(String id, long timestamp) throws IOException, InterruptedException
+    {
+        Entry entry = requireEntry(id);
+        entry.updateLock.lockInterruptibly();
+        try {
+            Entry version = requireVersions(id).get(timestamp);
+            if (version == null) {
+                throw new IllegalArgumentException(
+                        "Version [" + timestamp + "] of model [" + id + "] is not retained");
+            }
+            select(entry, version, true);
+        }
+        finally {
+            entry.updateLock.unlock();
+        }
+    }
+
+    /**
+     * Points the entry to its newest version and follows new versions again
+     * 
+     * @param id
+     *            the model id
+     * @throws IOException
+     *             in case of an error
+     * @throws InterruptedException
+     *             if interrupted
+     */
+    public void unpinVersion(String id) throws IOException, InterruptedException
+    {
+        Entry entry = requireEntry(id);
+        entry.updateLock.lockInterruptibly();
+        try {
+            select(entry, requireVersions(id).lastEntry().getValue(), false);
+        }
+        finally {
+            entry.updateLock.unlock();
+        }
+    }
+
+    /**
+     * Pins the entry to the newest retained version older than its current one
+     * 
+     * @param id
+     *            the model id
+     * @return the timestamp of the version now in use
+     * @throws IOException
+     *             in case of an error
+     * @throws InterruptedException
+     *             if interrupted
+     */
+    public long rollback(String id) throws IOException, InterruptedException
+    {
+        Entry entry = requireEntry(id);
+        entry.updateLock.lockInterruptibly();
+        try {
+            Map.Entry<Long, Entry> previous = requireVersions(id)
+                    .lowerEntry(entry.getTimeStamp());
+            if (previous == null) {
+                throw new IllegalStateException("No version of model [" + id + "] older than ["
+                        + entry.getTimeStamp() + "] is retained");
+            }
+            select(entry, previous.getValue(), true);
+            return previous.getKey();
+        }
+        finally {
+            entry.updateLock.unlock();
+        }
+    }
+
+    private void select(Entry entry, Entry version, boolean pinned) throws IOException
+    {
+        long previous = entry.getTimeStamp();
+        entry.switchTo(version);
+        entry.pinned = pinned;
+        journal.select(entry);
+        logger.info("Switched model [" + entry.getId() + "] from version [" + previous
+                + "] to [" + version.getTimeStamp() + "]" + (pinned ? " - pinned" : ""));
+        scheduleCollection(entry.getId());
+    }
+
+    private Entry requireEntry(String id)
+    {
+        Entry entry = registerMap.get(id);
+        if (entry == null) {
+            throw new IllegalArgumentException("The id [" + id + "] is unknown");
+        }
+        return entry;
+    }
+
+    private NavigableMap<Long, Entry> requireVersions(String id)
+    {
+        NavigableMap<Long, Entry> retained = versions.get(id);
+        if (retained == null) {
+            throw new IllegalArgumentException("The id [" + id + "] is unknown");
+        }
+        return retained;
+    }
+
+    private void scheduleCollection(String id)
+    {
+        if (!pendingCollections.add(id)) {
+            return;
+        }
+        collector.execute(() -> {
+            pendingCollections.remove(id);
+            try {
+                boolean deleted = collectVersions(id) > 0;
+                deleted |= enforceQuota(id) > 0;
+                if (deleted) {
+                    blobs.collect();
+                }
+            }
+            catch (Exception e) {
+                logger.warn("Could not delete old versions of model [" + id + "]", e);
+            }
+        });
+    }
+
+    /**
+     * Deletes the versions of all models which exceed the number of retained versions. This
+     * happens in the background after each check-in, the method is for callers which need the
+     * space freed at once.
+     * 
+     * @throws IOException
+     *             in case of an error
+     * @throws InterruptedException
+     *             if interrupted
+     */
+    public void collectVersions() throws IOException, InterruptedException
+    {
+        for (String id : registerMap.keySet()) {
+            collectVersions(id);
+        }
+        enforceQuota(null);
+        blobs.collect();
+        compactJournalIfNeeded();
+    }
+
+    /**
+     * @return the number of deleted versions
+     */
+    private int collectVersions(String id) throws IOException, InterruptedException
+    {
+        Entry entry = registerMap.get(id);
+        NavigableMap<Long, Entry> retained = versions.get(id);
+        if (entry == null || retained == null) {
+            return 0;
+        }
+
+        int deleted = 0;
+        entry.updateLock.lockInterruptibly();
+        try {
+            int kept = 0;
+            for (Entry version : new ArrayList<>(retained.descendingMap().values())) {
+                if (version == entry.current() || kept < retainedVersions) {
+                    kept++;
+                    continue;
+                }
+                if (!version.tryClose()) {
+                    // collected again once its last read access ended
+                    continue;
+                }
+                retained.remove(version.getTimeStamp());
+                discardVersion(version);
+                deleted++;
+                logger.info("Deleted old version [" + version.toString() + "]");
+            }
+        }
+        finally {
+            entry.updateLock.unlock();
+        }
+        return deleted;
+    }
+
+    /**
+     * Starts using the files of the current version of a model. The files of the version are
+     * not deleted until {@link #endReadAccess(String, long)} is called; any number of read
+     * accesses run concurrently and do not wait for check-ins, which switch the entry to another
+     * version meanwhile. The files are located with {@link #getFileSystemLocationOfVersion}.
+     * 
+     * @param id
+     *            the model id
+     * @return the version which is read or null if the id is unknown, in which case no access
+     *         was started
+     * @throws InterruptedException
+     *             if interrupted while the files of the current version are replaced
+     */
+    public Entry beginReadAccess(String id) throws InterruptedException
+    {
+        while (true) {
+            Entry entry = registerMap.get(id);
+            if (entry == null) {
+                return null;
+            }
+            Entry version = entry.current();
+            if (version.tryBeginReadAccess()) {
+                entry.recordAccess();
+                return version;
+            }
+            // the version is closed while the entry is evicted, archived or replaced in place
+            Thread.sleep(1);
+        }
+    }
+
+    /**
+     * Ends a read access started with {@link #beginReadAccess(String)}. The version is deleted
+     * in the background if it is no longer retained.
+     * 
+     * @param id
+     *            the model id
+     * @param timestamp
+     *            the timestamp of the version which was read
+     */
+    public void endReadAccess(String id, long timestamp)
+    {
+        NavigableMap<Long, Entry> retained = versions.get(id);
+        Entry version = retained != null ? retained.get(timestamp) : null;
+        if (version == null) {
+            throw new IllegalStateException(
+                    "No read access on unknown version [" + id + "] / [" + timestamp + "]");
+        }
+        Entry entry = registerMap.get(id);
+        if (version.endReadAccess() == 0 && entry != null && entry.current() != version) {
+            scheduleCollection(id);
+        }
     }
 
     public List<String> getEntryIds()
@@ -100,12 +843,68 @@ public class ModelRepository
 
     void restoreSerializedEntry(Entry entry)
     {
+        Entry version = entry.copyVersion();
+        entry.switchTo(version);
+        NavigableMap<Long, Entry> retained = new ConcurrentSkipListMap<>();
+        retained.put(entry.getTimeStamp(), version);
+        versions.put(entry.getId(), retained);
         registerMap.put(entry.getId(), entry);
     }
 
+    /**
+     * Loads the entries from the journal of the repository and deletes the files of interrupted
+     * check-ins. Repositories without journal, e.g. created by an earlier version, are loaded
+     * by listing the root folder and a journal is created.
+     */
     public void screenFolderAndLoad()
     {
-        registerMap.clear();
+        // folders in the staging area are incomplete check-ins or deletions
+        FileUtils.deleteQuietly(FileSystemLocator.locateStaging(repositoryRoot, replica));
+
+        ModelJournal.Replay loaded = journal.exists() ? loadJournal() : screenFolder();
+        for (Entry entry : loaded.entries.values()) {
+            entry.switchTo(loaded.versions.get(entry.getId()).get(entry.getTimeStamp()));
+        }
+        versions.putAll(loaded.versions);
+        registerMap.keySet().retainAll(loaded.entries.keySet());
+        registerMap.putAll(loaded.entries);
+        versions.keySet().retainAll(loaded.entries.keySet());
+        for (String id : registerMap.keySet()) {
+            scheduleCollection(id);
+        }
+    }
+
+    private ModelJournal.Replay loadJournal()
+    {
+        try {
+            ModelJournal.Replay replay = journal.replay();
+            for (Entry obsolete : replay.obsolete) {
+                if (FileSystemLocator.locateMarker(repositoryRoot, obsolete).exists()) {
+                    // published completely by another process, registered again when watching
+                    logger.info("Keeping published version [" + obsolete.toString()
+                            + "] of an interrupted registration");
+                    journal.discard(obsolete.getId(), obsolete.getTimeStamp());
+                    continue;
+                }
+                logger.info("Deleting version [" + obsolete.toString()
+                        + "] of an interrupted check-in");
+                discardVersion(obsolete);
+            }
+            journal.compact(replay.entries.values(), replay.versions);
+            logger.info("Loaded [" + replay.entries.size() + "] models from the journal of ["
+                    + repositoryRoot.getAbsolutePath() + "]");
+            return replay;
+        }
+        catch (IOException e) {
+            throw new IllegalStateException(
+                    "Could not load the journal of [" + repositoryRoot.getAbsolutePath() + "]",
+                    e);
+        }
+    }
+
+    private ModelJournal.Replay screenFolder()
+    {
+        ModelJournal.Replay loaded = new ModelJournal.Replay();
 
         File[] files = repositoryRoot.listFiles(new FileFilter()
         {
@@ -113,7 +912,11 @@ public class ModelRepository
             @Override
             public boolean accept(File pathname)
             {
-                return pathname.isDirectory();
+                if (pathname.getName().startsWith(".")) {
+                    return false;
+                }
+                return pathname.isDirectory() || FileSystemLocator.isPack(pathname.getName())
+                        || FileSystemLocator.isArchive(pathname.getName());
             }
         });
 
@@ -125,27 +928,774 @@ public class ModelRepository
                 + "] folders");
 
         for (File file : files) {
-            String name = file.getName();
+            String name = FileSystemLocator.stripPackSuffix(file.getName());
+            if (!FileSystemLocator.verifyFolderName(name)) {
+                logger.warn("Ignoring [" + file.getAbsolutePath() + "] which is no model");
+                continue;
+            }
             String id = FileSystemLocator.getId(name);
             long timeStamp = FileSystemLocator.getTimeStamp(name);
-            registerMap.put(id, new Entry(id, timeStamp));
+            NavigableMap<Long, Entry> retained = loaded.versions.computeIfAbsent(id,
+                    k -> new ConcurrentSkipListMap<>());
+            if (retained.containsKey(timeStamp)) {
+                // folder and compact file of the same version
+                continue;
+            }
+            Entry version = new Entry(id, timeStamp);
+            try {
+                readFingerprint(version);
+            }
+            catch (IOException e) {
+                logger.warn("Could not read fingerprint of [" + version.toString() + "]", e);
+            }
+            retained.put(timeStamp, version);
 
             logger.info("Loaded item with id: [" + id + "] named [" + file.getName()
                     + "] in root directory [" + repositoryRoot.getAbsolutePath() + "]");
 
         }
+
+        try {
+            for (NavigableMap<Long, Entry> retained : loaded.versions.values()) {
+                for (Entry version : retained.values()) {
+                    measure(version);
+                }
+                Entry newest = retained.lastEntry().getValue();
+                loaded.entries.put(newest.getId(), newest.copyVersion());
+            }
+            journal.compact(loaded.entries.values(), loaded.versions);
+        }
+        catch (IOException e) {
+            throw new IllegalStateException(
+                    "Could not create the journal of [" + repositoryRoot.getAbsolutePath() + "]",
+                    e);
+        }
+        return loaded;
     }
 
+    /**
+     * Returns the model folder of the current version of an entry. A folder which is only
+     * stored as archive or compact model file is restored first; concurrent callers wait for a
+     * single restore.
+     * 
+     * @param id
+     *            the model id
+     * @return the model folder
+     */
     public File getFileSystemLocationOfEntry(String id)
     {
         RepositoryUtil.nullCheck(id);
 
-        if (!registerMap.containsKey(id)) {
+        Entry entry = requireEntry(id);
+        return getFileSystemLocation(entry, entry.current());
+    }
+
+    /**
+     * Returns the model folder of a version returned by {@link #beginReadAccess(String)}, which
+     * is restored first if needed like in {@link #getFileSystemLocationOfEntry(String)}
+     * 
+     * @param version
+     *            a version with a running read access
+     * @return the model folder
+     */
+    public File getFileSystemLocationOfVersion(Entry version)
+    {
+        RepositoryUtil.nullCheck(version);
+
+        return getFileSystemLocation(requireEntry(version.getId()), version);
+    }
+
+    private File getFileSystemLocation(Entry entry, Entry version)
+    {
+        entry.recordAccess();
+
+        File location = FileSystemLocator.locate(repositoryRoot, version);
+        if (!location.exists() && restore(entry, version, location)) {
+            // the restored folder counts against the quota until it is dropped again
+            version.size = sizeOf(version);
+            if (entry.current() == version) {
+                entry.size = version.size;
+            }
+        }
+
+        return location;
+    }
+
+    /**
+     * Writes a retained version of a model into a zip archive, e.g. to copy it to another
+     * repository. A version which is archived already is copied as it is. Check-ins and
+     * deletions of the model wait until the archive is written, read accesses continue.
+     * 
+     * @param id
+     *            the model id
+     * @param timestamp
+     *            the timestamp of the version
+     * @param archive
+     *            the file to write
+     * @return the version
+     * @throws IOException
+     *             in case of an error
+     * @throws InterruptedException
+     *             if interrupted
+     */
+    public Entry writeArchive(String id, long timestamp, File archive)
+        throws IOException, InterruptedException
+    {
+        Entry entry = requireEntry(id);
+        entry.updateLock.lockInterruptibly();
+        try {
+            // all operations which delete files of a version hold the update lock
+            Entry version = entry.removed ? null : requireVersions(id).get(timestamp);
+            if (version == null) {
+                throw new IllegalArgumentException(
+                        "Version [" + timestamp + "] of model [" + id + "] is not retained");
+            }
+
+            File folder = FileSystemLocator.locate(repositoryRoot, version);
+            if (!folder.exists()) {
+                // the current version may be restored concurrently, which deletes the archive
+                synchronized (entry) {
+                    File stored = FileSystemLocator.locateArchive(repositoryRoot, version);
+                    if (stored.exists()) {
+                        FileUtils.copyFile(stored, archive);
+                        return version;
+                    }
+                }
+            }
+            if (folder.exists()) {
+                ModelArchive.write(folder, archive);
+                return version;
+            }
+
+            File staged = createStagingFolder(folder.getName());
+            try {
+                File unpacked = new File(staged, folder.getName());
+                ModelPack.open(FileSystemLocator.locatePack(repositoryRoot, version))
+                        .unpack(unpacked);
+                ModelArchive.write(unpacked, archive);
+            }
+            finally {
+                FileUtils.deleteQuietly(staged);
+            }
+            return version;
+        }
+        finally {
+            entry.updateLock.unlock();
+        }
+    }
+
+    /**
+     * Opens the compact model file of an entry. The prediction does not use it but reads the
+     * model folder, which is restored from the compact file if needed. This gives access to the
+     * model without restoring the folder, e.g. for inspection.
+     * 
+     * @param id
+     *            the model id
+     * @return the memory-mapped model or null if no compact model file exists for this entry
+     * @throws IOException
+     *             in case of an error
+     */
+    public ModelPack getModelPack(String id) throws IOException
+    {
+        RepositoryUtil.nullCheck(id);
+
+        Entry entry = registerMap.get(id);
+        if (entry == null) {
             throw new IllegalArgumentException("The id [" + id + "] is unknown");
         }
-        
 
-        return FileSystemLocator.locate(repositoryRoot, registerMap.get(id));
+        File pack = FileSystemLocator.locatePack(repositoryRoot, entry);
+        if (!pack.exists()) {
+            return null;
+        }
+        return ModelPack.open(pack);
+    }
+
+    /**
+     * Restores the model folder of a version from its archive or its compact model file
+     * 
+     * @return true if the folder was restored by this call
+     */
+    private boolean restore(Entry entry, Entry version, File location)
+    {
+        synchronized (entry) {
+            if (location.exists()) {
+                return false;
+            }
+            File archive = FileSystemLocator.locateArchive(repositoryRoot, version);
+            File pack = FileSystemLocator.locatePack(repositoryRoot, version);
+            if (!archive.exists() && !pack.exists()) {
+                return false;
+            }
+
+            File source = archive.exists() ? archive : pack;
+            File tmp = new File(repositoryRoot, "." + location.getName() + ".unpack");
+            try {
+                FileUtils.deleteQuietly(tmp);
+                if (source == archive) {
+                    ModelArchive.unpack(archive, tmp);
+                }
+                else {
+                    ModelPack.open(pack).unpack(tmp);
+                }
+                if (!tmp.renameTo(location)) {
+                    throw new IOException("Could not rename [" + tmp.getAbsolutePath() + "] to ["
+                            + location.getAbsolutePath() + "]");
+                }
+                if (source == archive) {
+                    FileUtils.deleteQuietly(archive);
+                    unpacks.incrementAndGet();
+                }
+                if (deduplicateModels) {
+                    blobs.deduplicate(location);
+                }
+                logger.info("Restored model folder [" + location.getAbsolutePath() + "] from ["
+                        + source.getAbsolutePath() + "]");
+                return true;
+            }
+            catch (IOException e) {
+                FileUtils.deleteQuietly(tmp);
+                throw new IllegalStateException(
+                        "Failed to restore model [" + version.toString() + "] from ["
+                                + source.getAbsolutePath() + "]",
+                        e);
+            }
+        }
     }
 
+    /**
+     * Archives models which were not accessed for the given time. The model folders of all
+     * retained versions of such a model are replaced by compressed archives, the folder of the
+     * current version is restored on the next access. A folder restored from a compact model file
+     * which is not to be retained (see {@link #setRetainRawModelFolder(boolean)}) is deleted
+     * instead, the compact file stays the only copy. Idle models are looked for periodically in
+     * the background.
+     * 
+     * @param idleMillis
+     *            time in milliseconds after the last access, 0 to keep all models unpacked
+     */
+    public synchronized void setArchiveAfter(long idleMillis)
+    {
+        this.archiveAfter = idleMillis;
+        if (archiving != null) {
+            archiving.cancel(false);
+            archiving = null;
+        }
+        if (idleMillis <= 0) {
+            return;
+        }
+
+        long period = Math.max(1000, Math.min(idleMillis / 4, TimeUnit.HOURS.toMillis(1)));
+        archiving = collector.scheduleWithFixedDelay(() -> {
+            try {
+                archiveIdleEntries();
+            }
+            catch (Exception e) {
+                logger.warn("Could not archive idle models", e);
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Archives the models which were not accessed for the time set with
+     * {@link #setArchiveAfter(long)}
+     * 
+     * @return the number of archived model versions
+     * @throws IOException
+     *             in case of an error
+     * @throws InterruptedException
+     *             if interrupted
+     */
+    public int archiveIdleEntries() throws IOException, InterruptedException
+    {
+        if (archiveAfter <= 0) {
+            return 0;
+        }
+
+        int archived = 0;
+        for (Entry entry : registerMap.values()) {
+            if (entry.getLastAccess() < System.currentTimeMillis() - archiveAfter) {
+                archived += archive(entry);
+            }
+        }
+        if (archived > 0) {
+            // records the reduced sizes
+            journal.compact(new ArrayList<>(registerMap.values()), versions);
+        }
+        return archived;
+    }
+
+    private int archive(Entry entry) throws IOException, InterruptedException
+    {
+        int archived = 0;
+        entry.updateLock.lockInterruptibly();
+        try {
+            NavigableMap<Long, Entry> retained = versions.get(entry.getId());
+            if (retained == null) {
+                return 0;
+            }
+            for (Entry version : retained.values()) {
+                File folder = FileSystemLocator.locate(repositoryRoot, version);
+                if (!folder.exists()) {
+                    continue;
+                }
+
+                if (isRestoredFromPack(version)) {
+                    if (dropRestoredFolder(entry, version, true)) {
+                        archived++;
+                        logger.info("Deleted restored folder of idle model ["
+                                + version.toString() + "], keeping its compact model file");
+                    }
+                    continue;
+                }
+
+                File staged = createStagingFolder(folder.getName());
+                try {
+                    File tmp = new File(staged, folder.getName());
+                    ModelArchive.write(folder, tmp);
+
+                    // excludes predictions while the folder is replaced, a version in use is
+                    // archived later
+                    if (!version.tryClose()) {
+                        continue;
+                    }
+                    try {
+                        if (version == entry.current() && entry.getLastAccess() >= System
+                                .currentTimeMillis() - archiveAfter) {
+                            continue;
+                        }
+                        synchronized (entry) {
+                            Files.move(tmp.toPath(),
+                                    FileSystemLocator.locateArchive(repositoryRoot, version)
+                                            .toPath(),
+                                    StandardCopyOption.ATOMIC_MOVE);
+                            discard(folder);
+                        }
+                    }
+                    finally {
+                        version.reopen();
+                    }
+                }
+                finally {
+                    FileUtils.deleteQuietly(staged);
+                }
+
+                updateSize(entry, version);
+                archived++;
+                logger.info("Archived idle model [" + version.toString() + "] into ["
+                        + version.size + "] bytes");
+            }
+        }
+        finally {
+            entry.updateLock.unlock();
+        }
+        return archived;
+    }
+
+    /**
+     * @return true if the folder of the version can be restored from its compact model file and
+     *         is not to be retained next to it
+     */
+    private boolean isRestoredFromPack(Entry version)
+    {
+        return !retainRawModelFolder
+                && FileSystemLocator.locatePack(repositoryRoot, version).exists()
+                && FileSystemLocator.locate(repositoryRoot, version).exists();
+    }
+
+    /**
+     * Deletes the folder of a version which was restored from its compact model file. The
+     * caller holds the update lock of the entry.
+     * 
+     * @param idle
+     *            true to keep the folder of the current version if it was accessed recently
+     * @return false if the folder is in use
+     */
+    private boolean dropRestoredFolder(Entry entry, Entry version, boolean idle)
+        throws IOException
+    {
+        // excludes predictions while the folder is deleted
+        if (!version.tryClose()) {
+            return false;
+        }
+        try {
+            if (idle && version == entry.current()
+                    && entry.getLastAccess() >= System.currentTimeMillis() - archiveAfter) {
+                return false;
+            }
+            synchronized (entry) {
+                discard(FileSystemLocator.locate(repositoryRoot, version));
+            }
+        }
+        finally {
+            version.reopen();
+        }
+        updateSize(entry, version);
+        return true;
+    }
+
+    private void updateSize(Entry entry, Entry version)
+    {
+        version.size = sizeOf(version);
+        if (version == entry.current()) {
+            entry.size = version.size;
+        }
+    }
+
+    /**
+     * Limits the size of the repository. When a limit is exceeded after a check-in, the model
+     * folders restored from compact model files are deleted first, then whole models with all
+     * their versions are deleted in the order of the {@link EvictionPolicy} until the
+     * repository fits. Models with running read accesses and the model just checked in are not
+     * evicted.
+     * 
+     * @param maxBytes
+     *            the maximal size of all retained versions in bytes, 0 for no limit
+     * @param maxModels
+     *            the maximal number of models, 0 for no limit
+     */
+    public void setQuota(long maxBytes, int maxModels)
+    {
+        this.maxBytes = maxBytes;
+        this.maxModels = maxModels;
+    }
+
+    public void setEvictionPolicy(EvictionPolicy evictionPolicy)
+    {
+        RepositoryUtil.nullCheck(evictionPolicy);
+        this.evictionPolicy = evictionPolicy;
+    }
+
+    /**
+     * @return the size of all retained versions in bytes, as recorded at check-in or archiving
+     */
+    public long getTotalSize()
+    {
+        long size = 0;
+        for (NavigableMap<Long, Entry> retained : versions.values()) {
+            for (Entry version : retained.values()) {
+                size += version.getSize();
+            }
+        }
+        return size;
+    }
+
+    private boolean exceedsQuota()
+    {
+        return (maxModels > 0 && registerMap.size() > maxModels)
+                || (maxBytes > 0 && getTotalSize() > maxBytes);
+    }
+
+    /**
+     * Evicts models until the quota is met, one caller at a time so that concurrent callers do
+     * not evict more models than necessary
+     * 
+     * @param protectedId
+     *            a model which is not evicted, may be null
+     * @return the number of evicted models
+     */
+    private synchronized int enforceQuota(String protectedId) throws IOException
+    {
+        if (!exceedsQuota()) {
+            return 0;
+        }
+
+        List<Entry> candidates = new ArrayList<>(registerMap.values());
+        candidates.sort(evictionPolicy.order);
+        // restored folders are deleted first, their models stay available as compact files
+        for (Entry candidate : candidates) {
+            if (maxBytes <= 0 || getTotalSize() <= maxBytes) {
+                break;
+            }
+            dropRestoredFolders(candidate);
+        }
+        if (!exceedsQuota()) {
+            return 0;
+        }
+        int evicted = 0;
+        for (Entry candidate : candidates) {
+            if (!exceedsQuota()) {
+                break;
+            }
+            if (!candidate.getId().equals(protectedId) && evict(candidate)) {
+                evicted++;
+            }
+        }
+        if (exceedsQuota()) {
+            logger.warn("Repository exceeds its quota of [" + maxModels + "] models / ["
+                    + maxBytes + "] bytes with [" + registerMap.size() + "] models / ["
+                    + getTotalSize() + "] bytes - the remaining models are in use");
+        }
+        return evicted;
+    }
+
+    /**
+     * Deletes the restored folders of all versions of a model which are not being read or
+     * updated
+     */
+    private void dropRestoredFolders(Entry entry) throws IOException
+    {
+        if (!entry.updateLock.tryLock()) {
+            return;
+        }
+        try {
+            NavigableMap<Long, Entry> retained = versions.get(entry.getId());
+            if (retained == null) {
+                return;
+            }
+            for (Entry version : retained.values()) {
+                if (isRestoredFromPack(version) && dropRestoredFolder(entry, version, false)) {
+                    logger.info("Deleted restored folder of model [" + version.toString()
+                            + "] to meet the quota, keeping its compact model file");
+                }
+            }
+        }
+        finally {
+            entry.updateLock.unlock();
+        }
+    }
+
+    /**
+     * Removes a model and deletes all its versions unless it is being read or updated
+     */
+    boolean evict(Entry entry) throws IOException
+    {
+        if (!entry.updateLock.tryLock()) {
+            return false;
+        }
+        try {
+            NavigableMap<Long, Entry> retained = versions.get(entry.getId());
+            if (retained == null) {
+                return false;
+            }
+            List<Entry> closed = new ArrayList<>();
+            for (Entry version : retained.values()) {
+                if (!version.tryClose()) {
+                    for (Entry c : closed) {
+                        c.reopen();
+                    }
+                    return false;
+                }
+                closed.add(version);
+            }
+            entry.removed = true;
+            registerMap.remove(entry.getId(), entry);
+            versions.remove(entry.getId());
+
+            long size = 0;
+            for (Entry version : retained.values()) {
+                size += version.getSize();
+                discardVersion(version);
+            }
+            evictions.incrementAndGet();
+            evictedBytes.addAndGet(size);
+            logger.info("Evicted model [" + entry.getId() + "] with [" + retained.size()
+                    + "] versions of [" + size + "] bytes, last access ["
+                    + entry.getLastAccess() + "], accesses [" + entry.getNumberOfAccesses()
+                    + "], policy [" + evictionPolicy + "]");
+            return true;
+        }
+        finally {
+            entry.updateLock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of models evicted since the repository was created
+     */
+    public int getNumberOfEvictions()
+    {
+        return evictions.get();
+    }
+
+    /**
+     * @return the size of the models evicted since the repository was created in bytes
+     */
+    public long getEvictedBytes()
+    {
+        return evictedBytes.get();
+    }
+
+    /**
+     * @param id
+     *            the model id
+     * @return true if the current version of the model is stored as archive only
+     */
+    public boolean isArchived(String id)
+    {
+        Entry entry = registerMap.get(id);
+        if (entry == null) {
+            throw new IllegalArgumentException("The id [" + id + "] is unknown");
+        }
+        return !FileSystemLocator.locate(repositoryRoot, entry).exists()
+                && FileSystemLocator.locateArchive(repositoryRoot, entry).exists();
+    }
+
+    /**
+     * @return the number of model folders restored from an archive since the repository was
+     *         created
+     */
+    public int getNumberOfUnpacks()
+    {
+        return unpacks.get();
+    }
+
+
+    /**
+     * Watches the root folder for models published by other processes, e.g. a separate training
+     * machine or another server on shared storage. Such a process writes the model folder
+     * <code>&lt;id&gt;_&lt;timestamp&gt;</code> into the root and creates the file
+     * <code>&lt;id&gt;_&lt;timestamp&gt;.complete</code> afterwards. Once the marker is present,
+     * the folder is registered as new model or as new version of an existing model. The marker
+     * is left in place for other processes sharing the root folder, each process registers a
+     * version once as recorded in its journal. Models marked as complete before the call are
+     * registered at once.
+     * 
+     * @throws IOException
+     *             if the root folder cannot be watched
+     */
+    public synchronized void startWatching() throws IOException
+    {
+        if (watchService != null) {
+            return;
+        }
+
+        WatchService service = repositoryRoot.toPath().getFileSystem().newWatchService();
+        repositoryRoot.toPath().register(service, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+        watchService = service;
+        Thread t = new Thread(() -> watch(service), "model-repository-watcher");
+        t.setDaemon(true);
+        t.start();
+        logger.info("Watching [" + repositoryRoot.getAbsolutePath() + "] for published models");
+
+        try {
+            loadCompletedModels();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public synchronized void stopWatching() throws IOException
+    {
+        if (watchService == null) {
+            return;
+        }
+        watchService.close();
+        watchService = null;
+    }
+
+    private void watch(WatchService service)
+    {
+        while (true) {
+            WatchKey key;
+            try {
+                key = service.take();
+            }
+            catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+
+            try {
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        logger.warn("Missed changes in [" + repositoryRoot.getAbsolutePath()
+                                + "] - looking for completed models");
+                        loadCompletedModels();
+                    }
+                    else {
+                        loadCompletedModel(event.context().toString());
+                    }
+                }
+            }
+            catch (InterruptedException e) {
+                return;
+            }
+            catch (Exception e) {
+                logger.warn("Could not load a model published in ["
+                        + repositoryRoot.getAbsolutePath() + "]", e);
+            }
+
+            if (!key.reset()) {
+                logger.warn("Stopped watching [" + repositoryRoot.getAbsolutePath()
+                        + "] which is no longer accessible");
+                return;
+            }
+        }
+    }
+
+    /**
+     * Registers all model folders in the root folder which are marked as complete, see
+     * {@link #startWatching()}
+     * 
+     * @return the number of registered models
+     * @throws IOException
+     *             in case of an error
+     * @throws InterruptedException
+     *             if interrupted
+     */
+    public int loadCompletedModels() throws IOException, InterruptedException
+    {
+        File[] markers = repositoryRoot
+                .listFiles((dir, name) -> FileSystemLocator.isMarker(name) && FileSystemLocator
+                        .verifyFolderName(FileSystemLocator.stripMarkerSuffix(name)));
+        if (markers == null) {
+            return 0;
+        }
+
+        // older versions first, so that each model ends up at its newest version
+        Arrays.sort(markers, Comparator.comparingLong(m -> FileSystemLocator
+                .getTimeStamp(FileSystemLocator.stripMarkerSuffix(m.getName()))));
+        int loaded = 0;
+        for (File marker : markers) {
+            if (loadCompletedModel(marker.getName())) {
+                loaded++;
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * Registers the model folder of the given name, or the folder the given marker belongs to,
+     * if folder and marker are present. Both may appear in any order.
+     */
+    private boolean loadCompletedModel(String fileName) throws IOException, InterruptedException
+    {
+        String name = FileSystemLocator.stripMarkerSuffix(fileName);
+        if (name.startsWith(".") || !FileSystemLocator.verifyFolderName(name)) {
+            return false;
+        }
+
+        String id = FileSystemLocator.getId(name);
+        long timestamp = FileSystemLocator.getTimeStamp(name);
+        Entry version = new Entry(id, timestamp);
+        File folder = FileSystemLocator.locate(repositoryRoot, version);
+        File marker = FileSystemLocator.locateMarker(repositoryRoot, version);
+
+        synchronized (externalLoads) {
+            if (!marker.exists() || !folder.isDirectory()) {
+                return false;
+            }
+
+            NavigableMap<Long, Entry> retained = versions.get(id);
+            if (retained != null && !retained.isEmpty() && timestamp <= retained.lastKey()) {
+                // registered before, e.g. according to the journal of an earlier run, or
+                // superseded by a newer version
+                return false;
+            }
+
+            readFingerprint(version);
+            if (registerMap.containsKey(id)) {
+                updateEntry(id, timestamp, folder, false, version.getFingerprint());
+            }
+            else {
+                addEntry(version, folder, false);
+            }
+        }
+
+        logger.info("Registered model [" + version.toString() + "] published in ["
+                + repositoryRoot.getAbsolutePath() + "]");
+        return true;
+    }
 }
@@ -0,0 +1,93 @@
+/*******************************************************************************
+ * Copyright 2018
+ * Language Technology Lab
+ * University of Duisburg-Essen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package de.unidue.ltl.recommender.repository;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * Storage of model versions shared by several servers. A version of a model is addressed by the
+ * model id and its timestamp and consists of named artifacts, e.g. the archived model folder.
+ * The {@link ModelRepository} of each server serves as local cache of the store, see
+ * {@link ModelStoreCache}.
+ */
+public interface ModelStore
+{
+    /**
+     * Stores an artifact of a model version, replacing an existing one of the same name
+     * 
+     * @param id
+     *            the model id, must not contain '/'
+     * @param timestamp
+     *            the timestamp of the version
+     * @param artifact
+     *            the name of the artifact
+     * @param content
+     *            the content, read until its end but not closed
+     * @throws IOException
+     *             in case of an error
+     */
+    void put(String id, long timestamp, String artifact, InputStream content) throws IOException;
+
+    /**
+     * Reads an artifact of a model version
+     * 
+     * @param id
+     *            the model id
+     * @param timestamp
+     *            the timestamp of the version
+     * @param artifact
+     *            the name of the artifact
+     * @return the content, to be closed by the caller
+     * @throws FileNotFoundException
+     *             if the artifact does not exist
+     * @throws IOException
+     *             in case of an error
+     */
+    InputStream get(String id, long timestamp, String artifact) throws IOException;
+
+    /**
+     * @return the ids of all models with at least one version
+     * @throws IOException
+     *             in case of an error
+     */
+    List<String> listModels() throws IOException;
+
+    /**
+     * @param id
+     *            the model id
+     * @return the timestamps of the stored versions in ascending order, empty if there are none
+     * @throws IOException
+     *             in case of an error
+     */
+    List<Long> listVersions(String id) throws IOException;
+
+    /**
+     * Deletes all artifacts of a model version
+     * 
+     * @param id
+     *            the model id
+     * @param timestamp
+     *            the timestamp of the version
+     * @throws IOException
+     *             in case of an error
+     */
+    void delete(String id, long timestamp) throws IOException;
+}
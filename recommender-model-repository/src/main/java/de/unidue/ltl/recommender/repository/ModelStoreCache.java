@@ -0,0 +1,208 @@
+/*******************************************************************************
+ * Copyright 2018
+ * Language Technology Lab
+ * University of Duisburg-Essen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package de.unidue.ltl.recommender.repository;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Uses a {@link ModelRepository} as local read-through cache of a {@link ModelStore} shared by
+ * several servers. Checked in models are published to the store as archive; before a model is
+ * used, the store is asked for a newer version, at most once per refresh interval, which is
+ * downloaded into the repository. Models evicted from the repository are thus fetched again on
+ * their next use.
+ * <p>
+ * The archive is written after the other artifacts of a version, a version without archive is
+ * ignored until its upload is complete.
+ */
+public class ModelStoreCache
+{
+    private static final Logger logger = LoggerFactory.getLogger(ModelStoreCache.class.getName());
+
+    static final String MODEL_ARTIFACT = "model.zip";
+    static final String FINGERPRINT_ARTIFACT = "fingerprint";
+
+    private final ModelStore store;
+    private final ModelRepository cache;
+    private long refreshInterval = 10000;
+    private final Map<String, Long> refreshed = new ConcurrentHashMap<>();
+    private final Map<String, Object> locks = new ConcurrentHashMap<>();
+
+    public ModelStoreCache(ModelStore store, ModelRepository cache)
+    {
+        RepositoryUtil.nullCheck(store);
+        RepositoryUtil.nullCheck(cache);
+        this.store = store;
+        this.cache = cache;
+    }
+
+    /**
+     * @param refreshInterval
+     *            minimal time in milliseconds between two look-ups of the versions of a model in
+     *            the store
+     */
+    public void setRefreshInterval(long refreshInterval)
+    {
+        this.refreshInterval = refreshInterval;
+    }
+
+    /**
+     * Uploads a version of a model of the repository to the store, usually the one just checked
+     * in, which is not the current version if the model is pinned. The version is written into
+     * an archive in the repository first, the upload runs without holding any lock of the model.
+     * Versions in the store beyond the number of versions retained by the repository are
+     * deleted.
+     * 
+     * @param id
+     *            the model id
+     * @param timestamp
+     *            the timestamp of a retained version of the model
+     * @throws IOException
+     *             in case of an error
+     * @throws InterruptedException
+     *             if interrupted
+     */
+    public void publish(String id, long timestamp) throws IOException, InterruptedException
+    {
+        File staged = cache.createStagingFolder(id);
+        try {
+            File archive = new File(staged, MODEL_ARTIFACT);
+            Entry version = cache.writeArchive(id, timestamp, archive);
+            if (version.getFingerprint() != null) {
+                store.put(id, timestamp, FINGERPRINT_ARTIFACT,
+                        new ByteArrayInputStream(version.getFingerprint().getBytes(UTF_8)));
+            }
+            try (InputStream is = new FileInputStream(archive)) {
+                store.put(id, timestamp, MODEL_ARTIFACT, is);
+            }
+            logger.info("Published model [" + version.toString() + "] of [" + archive.length()
+                    + "] bytes to the model store");
+        }
+        finally {
+            FileUtils.deleteQuietly(staged);
+        }
+        refreshed.put(id, System.currentTimeMillis());
+
+        List<Long> versions = store.listVersions(id);
+        for (int i = 0; i < versions.size() - cache.retainedVersions; i++) {
+            store.delete(id, versions.get(i));
+        }
+    }
+
+    /**
+     * Downloads the newest version of a model from the store if the repository does not hold
+     * it yet
+     * 
+     * @param id
+     *            the model id
+     * @return true if a version was downloaded
+     * @throws IOException
+     *             in case of an error
+     * @throws InterruptedException
+     *             if interrupted
+     */
+    public boolean refresh(String id) throws IOException, InterruptedException
+    {
+        if (isFresh(id)) {
+            return false;
+        }
+
+        synchronized (locks.computeIfAbsent(id, k -> new Object())) {
+            if (isFresh(id)) {
+                return false;
+            }
+            refreshed.put(id, System.currentTimeMillis());
+
+            List<Long> versions = store.listVersions(id);
+            for (int i = versions.size() - 1; i >= 0; i--) {
+                long timestamp = versions.get(i);
+                if (cache.getEntry(id) != null
+                        && cache.getVersions(id).get(0).getTimeStamp() >= timestamp) {
+                    // the newest retained version is current already
+                    return false;
+                }
+                if (download(id, timestamp)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private boolean isFresh(String id)
+    {
+        Long last = refreshed.get(id);
+        return last != null && System.currentTimeMillis() - last < refreshInterval
+                && cache.getEntry(id) != null;
+    }
+
+    private boolean download(String id, long timestamp) throws IOException, InterruptedException
+    {
+        File staged = cache.createStagingFolder(id);
+        try {
+            File archive = new File(staged, MODEL_ARTIFACT);
+            try (InputStream is = store.get(id, timestamp, MODEL_ARTIFACT)) {
+                FileUtils.copyInputStreamToFile(is, archive);
+            }
+            catch (FileNotFoundException e) {
+                logger.debug("Version [" + timestamp + "] of model [" + id
+                        + "] is not completely uploaded yet");
+                return false;
+            }
+
+            String fingerprint = null;
+            try (InputStream is = store.get(id, timestamp, FINGERPRINT_ARTIFACT)) {
+                fingerprint = IOUtils.toString(is, UTF_8);
+            }
+            catch (FileNotFoundException e) {
+                // the version was trained without fingerprint
+            }
+
+            File folder = new File(staged, "model");
+            ModelArchive.unpack(archive, folder);
+            if (cache.getEntry(id) == null) {
+                Entry entry = new Entry(id, timestamp);
+                entry.setFingerprint(fingerprint);
+                cache.addEntry(entry, folder, true);
+            }
+            else {
+                cache.updateEntry(id, timestamp, folder, true, fingerprint);
+            }
+            logger.info("Downloaded model [" + id + "] / [" + timestamp + "] of ["
+                    + archive.length() + "] bytes from the model store");
+            return true;
+        }
+        finally {
+            FileUtils.deleteQuietly(staged);
+        }
+    }
+}
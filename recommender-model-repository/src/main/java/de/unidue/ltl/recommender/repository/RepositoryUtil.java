@@ -34,6 +34,17 @@ public class RepositoryUtil
         return o == null;
     }
 
+    /**
+     * Ensures that a model id can be used as single segment of a path or an object key
+     */
+    public static void checkModelId(String id)
+    {
+        nullCheck(id);
+        if (id.isEmpty() || id.contains("/") || id.contains("\\") || id.startsWith(".")) {
+            throw new IllegalArgumentException("[" + id + "] is no valid model id");
+        }
+    }
+
     public static void createFileSystemLocation(File location)
     {
         if (!location.exists()) {
@@ -0,0 +1,367 @@
+/*******************************************************************************
+ * Copyright 2018
+ * Language Technology Lab
+ * University of Duisburg-Essen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package de.unidue.ltl.recommender.repository;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.TreeMap;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.NodeList;
+
+/**
+ * Stores model versions in a bucket of an S3-compatible object store, e.g. Amazon S3 or MinIO.
+ * Artifacts are stored as objects {@code <id>/<timestamp>/<artifact>} and addressed path-style,
+ * i.e. {@code <endpoint>/<bucket>/<key>}. Requests are signed with AWS Signature Version 4; the
+ * store needs no client library.
+ * <p>
+ * Artifacts are buffered in a temporary file before they are uploaded, as the signature covers
+ * the hash of the content and the upload needs its length.
+ */
+public class S3ModelStore
+    implements ModelStore
+{
+    private static final Logger logger = LoggerFactory.getLogger(S3ModelStore.class.getName());
+
+    private static final String ALGORITHM = "AWS4-HMAC-SHA256";
+    private static final String SERVICE = "s3";
+
+    private final String endpoint;
+    private final String bucket;
+    private final String region;
+    private final String accessKey;
+    private final String secretKey;
+
+    /**
+     * @param endpoint
+     *            the base URL of the object store, e.g.
+     *            {@code https://s3.eu-central-1.amazonaws.com}
+     * @param bucket
+     *            the bucket, which must exist
+     * @param region
+     *            the region used in the signature, e.g. {@code us-east-1} for MinIO
+     * @param accessKey
+     *            the access key id
+     * @param secretKey
+     *            the secret access key
+     */
+    public S3ModelStore(String endpoint, String bucket, String region, String accessKey,
+            String secretKey)
+    {
+        RepositoryUtil.nullCheck(endpoint);
+        RepositoryUtil.nullCheck(bucket);
+        this.endpoint = endpoint.endsWith("/") ? endpoint.substring(0, endpoint.length() - 1)
+                : endpoint;
+        this.bucket = bucket;
+        this.region = region;
+        this.accessKey = accessKey;
+        this.secretKey = secretKey;
+    }
+
+    @Override
+    public void put(String id, long timestamp, String artifact, InputStream content)
+        throws IOException
+    {
+        File buffer = File.createTempFile("s3-upload", ".tmp");
+        try {
+            MessageDigest digest = sha256();
+            try (OutputStream os = new FileOutputStream(buffer)) {
+                byte[] chunk = new byte[64 * 1024];
+                int n;
+                while ((n = content.read(chunk)) > 0) {
+                    digest.update(chunk, 0, n);
+                    os.write(chunk, 0, n);
+                }
+            }
+
+            HttpURLConnection con = open("PUT", key(id, timestamp, artifact),
+                    Collections.emptyMap(), hex(digest.digest()));
+            con.setDoOutput(true);
+            con.setFixedLengthStreamingMode(buffer.length());
+            try (OutputStream os = con.getOutputStream()) {
+                FileUtils.copyFile(buffer, os);
+            }
+            check(con, "PUT", key(id, timestamp, artifact));
+            con.getInputStream().close();
+        }
+        finally {
+            FileUtils.deleteQuietly(buffer);
+        }
+    }
+
+    @Override
+    public InputStream get(String id, long timestamp, String artifact) throws IOException
+    {
+        String key = key(id, timestamp, artifact);
+        HttpURLConnection con = open("GET", key, Collections.emptyMap(), emptyPayloadHash());
+        check(con, "GET", key);
+        return con.getInputStream();
+    }
+
+    @Override
+    public List<String> listModels() throws IOException
+    {
+        List<String> ids = new ArrayList<>();
+        for (String prefix : listPrefixes("")) {
+            ids.add(prefix.substring(0, prefix.length() - 1));
+        }
+        Collections.sort(ids);
+        return ids;
+    }
+
+    @Override
+    public List<Long> listVersions(String id) throws IOException
+    {
+        RepositoryUtil.checkModelId(id);
+        List<Long> timestamps = new ArrayList<>();
+        for (String prefix : listPrefixes(id + "/")) {
+            String version = prefix.substring(id.length() + 1, prefix.length() - 1);
+            if (version.matches("^[0-9]+$")) {
+                timestamps.add(Long.parseLong(version));
+            }
+        }
+        Collections.sort(timestamps);
+        return timestamps;
+    }
+
+    @Override
+    public void delete(String id, long timestamp) throws IOException
+    {
+        RepositoryUtil.checkModelId(id);
+        for (String key : list(id + "/" + timestamp + "/", false)) {
+            HttpURLConnection con = open("DELETE", key, Collections.emptyMap(),
+                    emptyPayloadHash());
+            check(con, "DELETE", key);
+            con.getInputStream().close();
+        }
+    }
+
+    private List<String> listPrefixes(String prefix) throws IOException
+    {
+        return list(prefix, true);
+    }
+
+    /**
+     * Lists the keys with the given prefix with ListObjectsV2. With a delimiter only the common
+     * prefixes up to the next '/' are returned.
+     */
+    private List<String> list(String prefix, boolean delimited) throws IOException
+    {
+        List<String> result = new ArrayList<>();
+        String continuationToken = null;
+        do {
+            Map<String, String> query = new TreeMap<>();
+            query.put("list-type", "2");
+            query.put("prefix", prefix);
+            if (delimited) {
+                query.put("delimiter", "/");
+            }
+            if (continuationToken != null) {
+                query.put("continuation-token", continuationToken);
+            }
+
+            HttpURLConnection con = open("GET", null, query, emptyPayloadHash());
+            check(con, "LIST", prefix);
+            Document doc;
+            try (InputStream is = con.getInputStream()) {
+                DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+                factory.setNamespaceAware(false);
+                doc = factory.newDocumentBuilder().parse(is);
+            }
+            catch (Exception e) {
+                throw new IOException("Could not parse the listing of [" + prefix + "]", e);
+            }
+
+            NodeList nodes = doc.getElementsByTagName(delimited ? "Prefix" : "Key");
+            for (int i = 0; i < nodes.getLength(); i++) {
+                // the request prefix is echoed as Prefix element of the result as well
+                if (!delimited || "CommonPrefixes"
+                        .equals(nodes.item(i).getParentNode().getNodeName())) {
+                    result.add(nodes.item(i).getTextContent());
+                }
+            }
+
+            continuationToken = null;
+            NodeList truncated = doc.getElementsByTagName("IsTruncated");
+            if (truncated.getLength() > 0
+                    && "true".equals(truncated.item(0).getTextContent().trim())) {
+                NodeList token = doc.getElementsByTagName("NextContinuationToken");
+                if (token.getLength() > 0) {
+                    continuationToken = token.item(0).getTextContent();
+                }
+            }
+        }
+        while (continuationToken != null);
+        return result;
+    }
+
+    private String key(String id, long timestamp, String artifact)
+    {
+        RepositoryUtil.checkModelId(id);
+        RepositoryUtil.checkModelId(artifact);
+        return id + "/" + timestamp + "/" + artifact;
+    }
+
+    private HttpURLConnection open(String method, String key, Map<String, String> query,
+            String payloadHash)
+        throws IOException
+    {
+        String path = "/" + encode(bucket, false) + (key != null ? "/" + encode(key, true) : "");
+        StringBuilder canonicalQuery = new StringBuilder();
+        for (Map.Entry<String, String> e : new TreeMap<>(query).entrySet()) {
+            if (canonicalQuery.length() > 0) {
+                canonicalQuery.append('&');
+            }
+            canonicalQuery.append(encode(e.getKey(), false)).append('=')
+                    .append(encode(e.getValue(), false));
+        }
+
+        URL url = new URL(endpoint + path
+                + (canonicalQuery.length() > 0 ? "?" + canonicalQuery : ""));
+        String host = url.getHost() + (url.getPort() != -1 ? ":" + url.getPort() : "");
+
+        SimpleDateFormat format = new SimpleDateFormat("yyyyMMdd'T'HHmmss'Z'");
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        String amzDate = format.format(new Date());
+        String date = amzDate.substring(0, 8);
+        String scope = date + "/" + region + "/" + SERVICE + "/aws4_request";
+        String signedHeaders = "host;x-amz-content-sha256;x-amz-date";
+
+        String canonicalRequest = method + "\n" + path + "\n" + canonicalQuery + "\n" + "host:"
+                + host + "\n" + "x-amz-content-sha256:" + payloadHash + "\n" + "x-amz-date:"
+                + amzDate + "\n\n" + signedHeaders + "\n" + payloadHash;
+        String stringToSign = ALGORITHM + "\n" + amzDate + "\n" + scope + "\n"
+                + hex(sha256().digest(canonicalRequest.getBytes(UTF_8)));
+
+        byte[] signingKey = hmac(("AWS4" + secretKey).getBytes(UTF_8), date);
+        signingKey = hmac(signingKey, region);
+        signingKey = hmac(signingKey, SERVICE);
+        signingKey = hmac(signingKey, "aws4_request");
+        String signature = hex(hmac(signingKey, stringToSign));
+
+        HttpURLConnection con = (HttpURLConnection) url.openConnection();
+        con.setRequestMethod(method);
+        con.setRequestProperty("x-amz-date", amzDate);
+        con.setRequestProperty("x-amz-content-sha256", payloadHash);
+        con.setRequestProperty("Authorization",
+                ALGORITHM + " Credential=" + accessKey + "/" + scope + ", SignedHeaders="
+                        + signedHeaders + ", Signature=" + signature);
+        return con;
+    }
+
+    private void check(HttpURLConnection con, String operation, String key) throws IOException
+    {
+        int status = con.getResponseCode();
+        if (status == HttpURLConnection.HTTP_NOT_FOUND) {
+            throw new FileNotFoundException("[" + key + "] does not exist in bucket [" + bucket
+                    + "]");
+        }
+        if (status / 100 != 2) {
+            String message = "";
+            if (con.getErrorStream() != null) {
+                try (InputStream is = con.getErrorStream()) {
+                    message = IOUtils.toString(is, UTF_8);
+                }
+            }
+            throw new IOException(operation + " of [" + key + "] in bucket [" + bucket
+                    + "] failed with status [" + status + "]: " + message);
+        }
+        logger.debug(operation + " of [" + key + "] in bucket [" + bucket + "]");
+    }
+
+    /**
+     * URI encoding as required for the canonical request: everything but unreserved characters
+     * is percent-encoded, '/' is kept in object keys
+     */
+    static String encode(String value, boolean keepSlash)
+    {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : value.getBytes(UTF_8)) {
+            char c = (char) (b & 0xff);
+            if ((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')
+                    || c == '-' || c == '_' || c == '.' || c == '~' || (keepSlash && c == '/')) {
+                sb.append(c);
+            }
+            else {
+                sb.append('%').append(String.format("%02X", b & 0xff));
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String emptyPayloadHash()
+    {
+        return hex(sha256().digest(new byte[0]));
+    }
+
+    private static MessageDigest sha256()
+    {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        }
+        catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] hmac(byte[] key, String data)
+    {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(key, "HmacSHA256"));
+            return mac.doFinal(data.getBytes(UTF_8));
+        }
+        catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static String hex(byte[] bytes)
+    {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+}
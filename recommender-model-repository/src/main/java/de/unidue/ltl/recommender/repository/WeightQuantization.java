@@ -0,0 +1,93 @@
+/*******************************************************************************
+ * Copyright 2018
+ * Language Technology Lab
+ * University of Duisburg-Essen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package de.unidue.ltl.recommender.repository;
+
+/**
+ * Precision in which the weights of a crfsuite model are stored in a {@link ModelPack}
+ */
+public enum WeightQuantization
+{
+    /** 64-bit weights as in the original model, lossless */
+    NONE(ModelPack.WEIGHTS_FLOAT64),
+
+    /** IEEE 754 half precision, 2 bytes per weight */
+    FLOAT16(ModelPack.WEIGHTS_FLOAT16),
+
+    /**
+     * 1 byte per weight, scaled by the largest absolute weight of a block of
+     * {@link #INT8_BLOCK_SIZE} consecutive weights
+     */
+    INT8(ModelPack.WEIGHTS_INT8);
+
+    public static final int INT8_BLOCK_SIZE = 64;
+
+    final byte encoding;
+
+    private WeightQuantization(byte encoding)
+    {
+        this.encoding = encoding;
+    }
+
+    static short toFloat16(float value)
+    {
+        int bits = Float.floatToIntBits(value);
+        int sign = (bits >>> 16) & 0x8000;
+        int exponent = ((bits >>> 23) & 0xff) - 127 + 15;
+        int mantissa = bits & 0x7fffff;
+
+        if (((bits >>> 23) & 0xff) == 0xff) {
+            // infinity and NaN
+            return (short) (sign | 0x7c00 | (mantissa != 0 ? 0x200 : 0));
+        }
+        if (exponent >= 0x1f) {
+            // too large - saturate to infinity
+            return (short) (sign | 0x7c00);
+        }
+        if (exponent <= 0) {
+            if (exponent < -10) {
+                return (short) sign;
+            }
+            // subnormal, round to nearest
+            mantissa |= 0x800000;
+            int shift = 14 - exponent;
+            int half = (mantissa >> shift) + ((mantissa >> (shift - 1)) & 1);
+            return (short) (sign | half);
+        }
+        int half = sign | (exponent << 10) | (mantissa >> 13);
+        // round to nearest, a carry into the exponent is intended
+        return (short) (half + ((mantissa >> 12) & 1));
+    }
+
+    static float fromFloat16(short value)
+    {
+        int bits = value & 0xffff;
+        int sign = (bits & 0x8000) << 16;
+        int exponent = (bits >>> 10) & 0x1f;
+        int mantissa = bits & 0x3ff;
+
+        if (exponent == 0x1f) {
+            return Float.intBitsToFloat(sign | 0x7f800000 | (mantissa << 13));
+        }
+        if (exponent == 0) {
+            float subnormal = mantissa * (1f / (1 << 24));
+            return sign == 0 ? subnormal : -subnormal;
+        }
+        return Float.intBitsToFloat(sign | ((exponent - 15 + 127) << 23) | (mantissa << 13));
+    }
+}
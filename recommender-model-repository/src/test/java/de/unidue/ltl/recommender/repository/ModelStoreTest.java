@@ -0,0 +1,267 @@
+/*******************************************************************************
+ * Copyright 2018
+ * Language Technology Lab
+ * University of Duisburg-Essen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package de.unidue.ltl.recommender.repository;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+public class ModelStoreTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private HttpServer server;
+
+    @After
+    public void tearDown()
+    {
+        if (server != null) {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void testInMemoryStore() throws Exception
+    {
+        verifyStore(new InMemoryModelStore());
+    }
+
+    @Test
+    public void testLocalStore() throws Exception
+    {
+        verifyStore(new LocalModelStore(new File(folder.getRoot(), "store")));
+    }
+
+    @Test
+    public void testS3Store() throws Exception
+    {
+        verifyStore(new S3ModelStore(startObjectStore(), "models", "us-east-1", "key",
+                "secret"));
+    }
+
+    @Test
+    public void testReplicasShareModelsThroughStore() throws Exception
+    {
+        ModelStore store = new InMemoryModelStore();
+        File model = folder.newFolder("model");
+        FileUtils.writeStringToFile(new File(model, "classifier.ser"), "v1", UTF_8);
+
+        ModelRepository one = new ModelRepository(folder.newFolder("one"));
+        Entry entry = new Entry("ABC", 1);
+        entry.setFingerprint("f1");
+        one.addEntry(entry, model, false);
+        new ModelStoreCache(store, one).publish("ABC", 1);
+
+        ModelRepository two = new ModelRepository(folder.newFolder("two"));
+        ModelStoreCache cache = new ModelStoreCache(store, two);
+        cache.setRefreshInterval(0);
+        assertTrue(cache.refresh("ABC"));
+        assertEquals("f1", two.getEntry("ABC").getFingerprint());
+        assertEquals("v1", FileUtils.readFileToString(
+                new File(two.getFileSystemLocationOfEntry("ABC"), "classifier.ser"), UTF_8));
+
+        // a newer version published by the first replica is picked up
+        FileUtils.writeStringToFile(new File(model, "classifier.ser"), "v2", UTF_8);
+        one.updateEntry("ABC", 2, model, false, "f2");
+        new ModelStoreCache(store, one).publish("ABC", 2);
+        assertTrue(cache.refresh("ABC"));
+        assertFalse(cache.refresh("ABC"));
+        assertEquals(2, two.getEntry("ABC").getTimeStamp());
+        assertEquals(Arrays.asList(2L), store.listVersions("ABC"));
+    }
+
+    @Test
+    public void testNewVersionOfPinnedModelIsPublished() throws Exception
+    {
+        ModelStore store = new InMemoryModelStore();
+        File model = folder.newFolder("model");
+        FileUtils.writeStringToFile(new File(model, "classifier.ser"), "v1", UTF_8);
+
+        ModelRepository one = new ModelRepository(folder.newFolder("one"));
+        one.setRetainedVersions(2);
+        one.addEntry(new Entry("ABC", 1), model, false);
+        one.pinVersion("ABC", 1);
+        FileUtils.writeStringToFile(new File(model, "classifier.ser"), "v2", UTF_8);
+        one.updateEntry("ABC", 2, model, false, "f2");
+        assertEquals(1, one.getEntry("ABC").getTimeStamp());
+
+        ModelStoreCache publisher = new ModelStoreCache(store, one);
+        publisher.publish("ABC", 2);
+        assertEquals(Arrays.asList(2L), store.listVersions("ABC"));
+
+        ModelRepository two = new ModelRepository(folder.newFolder("two"));
+        assertTrue(new ModelStoreCache(store, two).refresh("ABC"));
+        assertEquals("f2", two.getEntry("ABC").getFingerprint());
+        assertEquals("v2", FileUtils.readFileToString(
+                new File(two.getFileSystemLocationOfEntry("ABC"), "classifier.ser"), UTF_8));
+    }
+
+    private void verifyStore(ModelStore store) throws IOException
+    {
+        store.put("ABC", 2, "model.zip", new ByteArrayInputStream("two".getBytes(UTF_8)));
+        store.put("ABC", 1, "model.zip", new ByteArrayInputStream("one".getBytes(UTF_8)));
+        store.put("ABC", 1, "fingerprint", new ByteArrayInputStream("f".getBytes(UTF_8)));
+        store.put("de.tud.Layer", 5, "model.zip", new ByteArrayInputStream(new byte[0]));
+
+        assertEquals(Arrays.asList("ABC", "de.tud.Layer"), store.listModels());
+        assertEquals(Arrays.asList(1L, 2L), store.listVersions("ABC"));
+        assertEquals(Arrays.asList(), store.listVersions("XYZ"));
+        try (InputStream is = store.get("ABC", 1, "model.zip")) {
+            assertEquals("one", IOUtils.toString(is, UTF_8));
+        }
+
+        store.delete("ABC", 1);
+        assertEquals(Arrays.asList(2L), store.listVersions("ABC"));
+        try {
+            store.get("ABC", 1, "fingerprint").close();
+            fail("Deleted artifact was found");
+        }
+        catch (FileNotFoundException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Starts a minimal stand-in for an S3-compatible object store which supports PUT, GET and
+     * DELETE of objects and ListObjectsV2. It checks that requests carry a signature and the
+     * hash of their content.
+     */
+    private String startObjectStore() throws IOException
+    {
+        Map<String, byte[]> objects = new ConcurrentSkipListMap<>();
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            try {
+                String path = exchange.getRequestURI().getRawPath();
+                String key = URLDecoder.decode(path.substring("/models".length()), "UTF-8");
+                key = key.startsWith("/") ? key.substring(1) : key;
+                byte[] body = IOUtils.toByteArray(exchange.getRequestBody());
+
+                String auth = exchange.getRequestHeaders().getFirst("Authorization");
+                String hash = exchange.getRequestHeaders().getFirst("x-amz-content-sha256");
+                if (auth == null || !auth.startsWith("AWS4-HMAC-SHA256 Credential=key/")
+                        || !S3ModelStore.hex(MessageDigest.getInstance("SHA-256").digest(body))
+                                .equals(hash)) {
+                    respond(exchange, 403, new byte[0]);
+                    return;
+                }
+
+                switch (exchange.getRequestMethod()) {
+                case "PUT":
+                    objects.put(key, body);
+                    respond(exchange, 200, new byte[0]);
+                    break;
+                case "DELETE":
+                    objects.remove(key);
+                    respond(exchange, 204, null);
+                    break;
+                case "GET":
+                    if (!key.isEmpty()) {
+                        byte[] object = objects.get(key);
+                        respond(exchange, object != null ? 200 : 404,
+                                object != null ? object : new byte[0]);
+                    }
+                    else {
+                        respond(exchange, 200, list(objects, exchange).getBytes(UTF_8));
+                    }
+                    break;
+                default:
+                    respond(exchange, 405, new byte[0]);
+                }
+            }
+            catch (Exception e) {
+                respond(exchange, 500, e.toString().getBytes(UTF_8));
+            }
+        });
+        server.start();
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    private static String list(Map<String, byte[]> objects, HttpExchange exchange)
+        throws IOException
+    {
+        Map<String, String> query = new TreeMap<>();
+        for (String p : exchange.getRequestURI().getRawQuery().split("&")) {
+            String[] kv = p.split("=", 2);
+            query.put(kv[0], URLDecoder.decode(kv.length > 1 ? kv[1] : "", "UTF-8"));
+        }
+        String prefix = query.getOrDefault("prefix", "");
+        String delimiter = query.get("delimiter");
+
+        StringBuilder xml = new StringBuilder("<ListBucketResult><Prefix>" + prefix
+                + "</Prefix><IsTruncated>false</IsTruncated>");
+        TreeSet<String> prefixes = new TreeSet<>();
+        for (String key : objects.keySet()) {
+            if (!key.startsWith(prefix)) {
+                continue;
+            }
+            int end = delimiter != null ? key.indexOf(delimiter, prefix.length()) : -1;
+            if (end >= 0) {
+                prefixes.add(key.substring(0, end + 1));
+            }
+            else {
+                xml.append("<Contents><Key>" + key + "</Key></Contents>");
+            }
+        }
+        for (String p : prefixes) {
+            xml.append("<CommonPrefixes><Prefix>" + p + "</Prefix></CommonPrefixes>");
+        }
+        return xml.append("</ListBucketResult>").toString();
+    }
+
+    private static void respond(HttpExchange exchange, int status, byte[] body)
+        throws IOException
+    {
+        exchange.sendResponseHeaders(status, body == null ? -1 : body.length == 0 ? -1
+                : body.length);
+        if (body != null && body.length > 0) {
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        }
+        exchange.close();
+    }
+}
@@ -18,11 +18,22 @@
 
 package de.unidue.ltl.recommender.repository;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
+import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
+import org.apache.commons.io.FileUtils;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -97,4 +108,514 @@ public class RepositoryTest
         assertEquals(123456, m.getTimeStamp());
     }
 
+    @Test
+    public void testFingerprintIsPersisted() throws IOException, InterruptedException
+    {
+        Entry entry = new Entry("ABC", 232389);
+        entry.setFingerprint("f1");
+        repository.addEntry(entry, modelDummyOne.getRoot(), true);
+        repository.updateEntry("ABC", 232390, modelDummyTwo.getRoot(), true, "f2");
+
+        repository = new ModelRepository(folder.getRoot());
+        repository.screenFolderAndLoad();
+        assertEquals(1, repository.getEntryIds().size());
+        assertEquals("f2", repository.getEntry("ABC").getFingerprint());
+    }
+
+    @Test
+    public void testUpdateDoesNotWaitForReadAccess() throws Exception
+    {
+        repository.addEntry(new Entry("ABC", 232389), modelDummyOne.getRoot(), true);
+        File oldVersion = repository.getFileSystemLocationOfEntry("ABC");
+
+        Entry version = repository.beginReadAccess("ABC");
+        repository.updateEntry("ABC", 232390, modelDummyTwo.getRoot(), true);
+
+        // new readers use the new version, the running reader keeps the version it started with
+        Entry next = repository.beginReadAccess("ABC");
+        assertEquals(232390, next.getTimeStamp());
+        assertEquals(232389, version.getTimeStamp());
+        assertEquals(oldVersion, repository.getFileSystemLocationOfVersion(version));
+        repository.collectVersions();
+        assertTrue(oldVersion.exists());
+
+        repository.endReadAccess("ABC", version.getTimeStamp());
+        repository.collectVersions();
+        assertFalse(oldVersion.exists());
+        assertEquals(1, repository.getVersions("ABC").size());
+        assertTrue(repository.getFileSystemLocationOfVersion(next).exists());
+        repository.endReadAccess("ABC", next.getTimeStamp());
+    }
+
+    @Test
+    public void testUpdateOfVersionInUseWaitsForItsReaders() throws Exception
+    {
+        repository.addEntry(new Entry("ABC", 1), modelDummyOne.getRoot(), false);
+        Entry version = repository.beginReadAccess("ABC");
+        Thread update = new Thread(() -> {
+            try {
+                repository.updateEntry("ABC", 1, modelDummyTwo.getRoot(), false, "f2");
+            }
+            catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        update.start();
+        update.join(200);
+        assertTrue(update.isAlive());
+
+        repository.endReadAccess("ABC", version.getTimeStamp());
+        update.join();
+        assertEquals("f2", repository.getEntry("ABC").getFingerprint());
+    }
+
+    @Test
+    public void testCheckInsOfEvictedModelAddItOnce() throws Exception
+    {
+        repository.addEntry(new Entry("ABC", 1), modelDummyOne.getRoot(), false);
+        Entry evicted = repository.getEntry("ABC");
+
+        // both check-ins wait for the update lock while the model is evicted
+        evicted.updateLock.lock();
+        List<Throwable> failures = new CopyOnWriteArrayList<>();
+        Thread[] updates = new Thread[2];
+        for (int i = 0; i < updates.length; i++) {
+            long timestamp = 2 + i;
+            updates[i] = new Thread(() -> {
+                try {
+                    repository.updateEntry("ABC", timestamp, modelDummyOne.getRoot(), false);
+                }
+                catch (Exception e) {
+                    failures.add(e);
+                }
+            });
+            updates[i].start();
+        }
+        for (Thread t : updates) {
+            while (!evicted.updateLock.hasQueuedThread(t)) {
+                Thread.sleep(5);
+            }
+        }
+        assertTrue(repository.evict(evicted));
+        evicted.updateLock.unlock();
+        for (Thread t : updates) {
+            t.join();
+        }
+
+        assertTrue(failures.isEmpty());
+        assertFalse(repository.getEntry("ABC").removed);
+
+        // each stored version is known to the repository, none is leaked
+        File[] folders = folder.getRoot()
+                .listFiles(f -> f.isDirectory() && f.getName().startsWith("ABC_"));
+        assertTrue(folders.length > 0);
+        for (File f : folders) {
+            long timestamp = Long.parseLong(f.getName().substring("ABC_".length()));
+            assertTrue(repository.versions.get("ABC").containsKey(timestamp));
+        }
+    }
+
+    @Test
+    public void testRollbackToRetainedVersion() throws Exception
+    {
+        repository.setRetainedVersions(2);
+        repository.addEntry(new Entry("ABC", 1), modelDummyOne.getRoot(), false);
+        repository.updateEntry("ABC", 2, modelDummyOne.getRoot(), false, "f2");
+        repository.updateEntry("ABC", 3, modelDummyOne.getRoot(), false, "f3");
+        repository.collectVersions();
+        assertEquals(2, repository.getVersions("ABC").size());
+        assertEquals(3, repository.getVersions("ABC").get(0).getTimeStamp());
+
+        assertEquals(2, repository.rollback("ABC"));
+        assertEquals("f2", repository.getEntry("ABC").getFingerprint());
+        assertTrue(repository.getEntry("ABC").isPinned());
+
+        // a pinned entry keeps its version, the new one is only retained
+        repository.updateEntry("ABC", 4, modelDummyOne.getRoot(), false, "f4");
+        repository.collectVersions();
+        assertEquals(2, repository.getEntry("ABC").getTimeStamp());
+        assertEquals(3, repository.getVersions("ABC").size());
+
+        repository = new ModelRepository(folder.getRoot());
+        repository.screenFolderAndLoad();
+        assertEquals(2, repository.getEntry("ABC").getTimeStamp());
+        assertTrue(repository.getEntry("ABC").isPinned());
+
+        repository.unpinVersion("ABC");
+        assertEquals(4, repository.getEntry("ABC").getTimeStamp());
+        assertTrue(repository.getFileSystemLocationOfEntry("ABC").exists());
+    }
+
+    @Test
+    public void testIdenticalFilesAreStoredOnce() throws Exception
+    {
+        repository.setDeduplicateModels(true);
+        FileUtils.writeStringToFile(new File(modelDummyOne.getRoot(), "features.txt"), "f1",
+                StandardCharsets.UTF_8);
+        FileUtils.writeStringToFile(new File(modelDummyTwo.getRoot(), "features.txt"), "f1",
+                StandardCharsets.UTF_8);
+        FileUtils.writeStringToFile(new File(modelDummyTwo.getRoot(), "model.bin"), "m2",
+                StandardCharsets.UTF_8);
+
+        repository.addEntry(new Entry("ABC", 1), modelDummyOne.getRoot(), false);
+        repository.addEntry(new Entry("XYZ", 1), modelDummyTwo.getRoot(), false);
+        File one = new File(repository.getFileSystemLocationOfEntry("ABC"), "features.txt");
+        File two = new File(repository.getFileSystemLocationOfEntry("XYZ"), "features.txt");
+        assertEquals(Files.getAttribute(one.toPath(), "unix:ino"),
+                Files.getAttribute(two.toPath(), "unix:ino"));
+
+        // blobs are deleted once no version links them anymore
+        repository.updateEntry("XYZ", 2, modelDummyOne.getRoot(), false);
+        repository.collectVersions();
+        File blobs = new File(folder.getRoot(), ModelBlobStore.FOLDER);
+        assertEquals(1, FileUtils.listFiles(blobs, null, true).size());
+    }
+
+    @Test
+    public void testIdleModelIsArchivedAndUnpackedOnce() throws Exception
+    {
+        FileUtils.writeStringToFile(new File(modelDummyOne.getRoot(), "classifier.ser"),
+                "model", StandardCharsets.UTF_8);
+        repository.addEntry(new Entry("ABC", 1), modelDummyOne.getRoot(), false);
+        File location = repository.getFileSystemLocationOfEntry("ABC");
+
+        repository.archiveAfter = 1;
+        Thread.sleep(10);
+        assertEquals(1, repository.archiveIdleEntries());
+        assertTrue(repository.isArchived("ABC"));
+        assertFalse(location.exists());
+
+        Thread[] readers = new Thread[4];
+        for (int i = 0; i < readers.length; i++) {
+            readers[i] = new Thread(() -> repository.getFileSystemLocationOfEntry("ABC"));
+            readers[i].start();
+        }
+        for (Thread t : readers) {
+            t.join();
+        }
+        assertEquals(1, repository.getNumberOfUnpacks());
+        assertFalse(repository.isArchived("ABC"));
+        assertEquals("model", FileUtils.readFileToString(new File(location, "classifier.ser"),
+                StandardCharsets.UTF_8));
+        assertEquals(5, repository.getEntry("ABC").getNumberOfAccesses());
+    }
+
+    @Test
+    public void testRestoredFolderOfIdleCompactModelIsDeleted() throws Exception
+    {
+        FileUtils.writeByteArrayToFile(new File(modelDummyOne.getRoot(), "classifier.ser"),
+                dummyCrfSuiteModel(new double[] { 0.25, -1.5, 3.0 }));
+        repository.setCompactModels(true);
+        repository.setRetainRawModelFolder(false);
+        repository.addEntry(new Entry("ABC", 1), modelDummyOne.getRoot(), true);
+        long packed = repository.getTotalSize();
+
+        File location = repository.getFileSystemLocationOfEntry("ABC");
+        assertTrue(location.exists());
+        assertTrue(repository.getTotalSize() > packed);
+
+        repository.archiveAfter = 1;
+        Thread.sleep(10);
+        assertEquals(1, repository.archiveIdleEntries());
+        assertFalse(location.exists());
+        assertFalse(repository.isArchived("ABC"));
+        assertEquals(packed, repository.getTotalSize());
+        assertEquals(Arrays.asList("ABC_1.pack"), Arrays.asList(folder.getRoot()
+                .list((dir, name) -> !name.startsWith("."))));
+        assertEquals(packed, FileUtils.sizeOfDirectory(folder.getRoot())
+                - new File(folder.getRoot(), ModelJournal.FILE_NAME).length());
+
+        // restored again on the next use, deleted first when the quota is exceeded
+        assertTrue(repository.getFileSystemLocationOfEntry("ABC").exists());
+        repository.setQuota(packed, 0);
+        repository.collectVersions();
+        assertFalse(location.exists());
+        assertEquals("ABC", repository.getEntry("ABC").getId());
+        assertEquals(0, repository.getNumberOfEvictions());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedModelIsEvicted() throws Exception
+    {
+        repository.setQuota(0, 2);
+        repository.addEntry(new Entry("A", 1), modelDummyOne.getRoot(), false);
+        repository.addEntry(new Entry("B", 1), modelDummyOne.getRoot(), false);
+        File a = repository.getFileSystemLocationOfEntry("A");
+        repository.beginReadAccess("A");
+        Thread.sleep(5);
+        repository.getFileSystemLocationOfEntry("B");
+
+        // A is used least recently but is being read
+        repository.addEntry(new Entry("C", 1), modelDummyOne.getRoot(), false);
+        repository.collectVersions();
+        assertEquals(null, repository.getEntry("B"));
+        assertTrue(a.exists());
+
+        repository.endReadAccess("A", 1);
+        repository.addEntry(new Entry("D", 1), modelDummyOne.getRoot(), false);
+        repository.collectVersions();
+        assertEquals(2, repository.getEntryIds().size());
+        assertEquals(null, repository.getEntry("A"));
+        assertFalse(a.exists());
+        assertEquals(2, repository.getNumberOfEvictions());
+    }
+
+    @Test
+    public void testStagedModelIsMovedIntoPlace() throws Exception
+    {
+        File staged = repository.createStagingFolder("ABC");
+        File model = new File(staged, "classifier.ser");
+        FileUtils.writeStringToFile(model, "model", StandardCharsets.UTF_8);
+        long inode = (Long) Files.getAttribute(model.toPath(), "unix:ino");
+
+        repository.addEntry(new Entry("ABC", 232389), staged, true);
+        File installed = new File(repository.getFileSystemLocationOfEntry("ABC"),
+                "classifier.ser");
+        assertFalse(staged.exists());
+        assertEquals(inode, Files.getAttribute(installed.toPath(), "unix:ino"));
+
+        // leftovers of an interrupted check-in are removed on load
+        File leftover = repository.createStagingFolder("ABC");
+        repository = new ModelRepository(folder.getRoot());
+        repository.screenFolderAndLoad();
+        assertFalse(leftover.exists());
+        assertEquals(1, repository.getEntryIds().size());
+    }
+
+    @Test
+    public void testJournalDiscardsInterruptedCheckIn() throws Exception
+    {
+        repository.addEntry(new Entry("ABC", 232389), modelDummyOne.getRoot(), false);
+
+        // a version which was moved into place but never committed
+        Entry interrupted = new Entry("XYZ", 232390);
+        repository.journal.begin(interrupted.getId(), interrupted.getTimeStamp());
+        File half = FileSystemLocator.locate(folder.getRoot(), interrupted);
+        FileUtils.writeStringToFile(new File(half, "classifier.ser"), "model",
+                StandardCharsets.UTF_8);
+
+        repository = new ModelRepository(folder.getRoot());
+        repository.screenFolderAndLoad();
+        assertFalse(half.exists());
+        assertEquals(1, repository.getEntryIds().size());
+        assertEquals(232389, repository.getEntry("ABC").getTimeStamp());
+        assertEquals(ModelJournal.checksum(repository.getFileSystemLocationOfEntry("ABC")),
+                repository.getEntry("ABC").getChecksum());
+    }
+
+    @Test
+    public void testJournalCompactionKeepsCheckInInProgress() throws Exception
+    {
+        repository.addEntry(new Entry("ABC", 232389), modelDummyOne.getRoot(), false);
+        repository.addEntry(new Entry("DEF", 232389), modelDummyOne.getRoot(), false);
+
+        Entry interrupted = new Entry("XYZ", 232390);
+        repository.journal.begin(interrupted.getId(), interrupted.getTimeStamp());
+        File half = FileSystemLocator.locate(folder.getRoot(), interrupted);
+        FileUtils.writeStringToFile(new File(half, "classifier.ser"), "model",
+                StandardCharsets.UTF_8);
+        // an entry whose versions were just removed by an eviction
+        repository.versions.remove("DEF");
+        repository.compactJournal();
+
+        repository = new ModelRepository(folder.getRoot());
+        repository.screenFolderAndLoad();
+        assertFalse(half.exists());
+        assertEquals(Arrays.asList("ABC"), repository.getEntryIds());
+    }
+
+    @Test
+    public void testCompactModelRoundTrip() throws IOException
+    {
+        byte[] crfModel = dummyCrfSuiteModel(new double[] { 0.25, -1.5, 3.0 });
+        FileUtils.writeByteArrayToFile(new File(modelDummyOne.getRoot(), "classifier.ser"),
+                crfModel);
+        FileUtils.writeStringToFile(new File(modelDummyOne.getRoot(), "features/config.txt"),
+                "CharacterNGram", StandardCharsets.UTF_8);
+
+        repository.setCompactModels(true);
+        repository.setRetainRawModelFolder(false);
+        repository.addEntry(new Entry("ABC", 232389), modelDummyOne.getRoot(), true);
+
+        ModelPack pack = repository.getModelPack("ABC");
+        assertEquals(2, pack.getEntryNames().size());
+        assertTrue(pack.isCrfSuiteModel("classifier.ser"));
+        assertEquals(3, pack.getCrfSuiteModel("classifier.ser").getNumberOfFeatures());
+        assertEquals(-1.5, pack.getCrfSuiteModel("classifier.ser").getWeight(1), 0.0);
+        assertFalse(pack.isCrfSuiteModel("features/config.txt"));
+
+        File folder = repository.getFileSystemLocationOfEntry("ABC");
+        assertArrayEquals(crfModel,
+                FileUtils.readFileToByteArray(new File(folder, "classifier.ser")));
+        assertEquals("CharacterNGram", FileUtils.readFileToString(
+                new File(folder, "features/config.txt"), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testModelPackMappedInChunks() throws IOException
+    {
+        byte[] crfModel = dummyCrfSuiteModel(new double[] { 0.25, -1.5, 3.0 });
+        FileUtils.writeByteArrayToFile(new File(modelDummyOne.getRoot(), "classifier.ser"),
+                crfModel);
+        FileUtils.writeStringToFile(new File(modelDummyOne.getRoot(), "features/config.txt"),
+                "CharacterNGram", StandardCharsets.UTF_8);
+        FileUtils.writeStringToFile(new File(modelDummyOne.getRoot(), "features/labels.txt"),
+                "B-PER I-PER O", StandardCharsets.UTF_8);
+
+        repository.setCompactModels(true);
+        Entry entry = new Entry("ABC", 232389);
+        repository.addEntry(entry, modelDummyOne.getRoot(), true);
+
+        // chunks smaller than an entry hold a single entry each
+        File packFile = FileSystemLocator.locatePack(folder.getRoot(), entry);
+        ModelPack pack = ModelPack.open(packFile, 8);
+        assertEquals(packFile.length(), pack.size());
+        assertEquals(-1.5, pack.getCrfSuiteModel("classifier.ser").getWeight(1), 0.0);
+        assertEquals("B-PER I-PER O", text(pack.getEntry("features/labels.txt")));
+        assertEquals("CharacterNGram", text(pack.getEntry("features/config.txt")));
+
+        File restored = new File(folder.getRoot(), "restored");
+        pack.unpack(restored);
+        assertArrayEquals(crfModel,
+                FileUtils.readFileToByteArray(new File(restored, "classifier.ser")));
+    }
+
+    private static String text(ByteBuffer buffer)
+    {
+        byte[] b = new byte[buffer.remaining()];
+        buffer.get(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testQuantizedModel() throws IOException
+    {
+        double[] weights = new double[150];
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = Math.sin(i) * (i % 7);
+        }
+        FileUtils.writeByteArrayToFile(new File(modelDummyOne.getRoot(), "classifier.ser"),
+                dummyCrfSuiteModel(weights));
+
+        repository.setRetainRawModelFolder(false);
+        repository.setWeightQuantization(WeightQuantization.INT8);
+        repository.addEntry(new Entry("ABC", 232389), modelDummyOne.getRoot(), true);
+
+        ModelPack.CrfSuiteModel model = repository.getModelPack("ABC")
+                .getCrfSuiteModel("classifier.ser");
+        assertEquals(WeightQuantization.INT8, model.getQuantization());
+        for (int i = 0; i < weights.length; i++) {
+            assertEquals(weights[i], model.getWeight(i), 6.0 / 254);
+            assertEquals(i + 1, model.getDestination(i));
+        }
+
+        for (float f : new float[] { 0f, 1f, -2.5f, 0.0001f, 65504f, 3.14159f }) {
+            assertEquals(f, WeightQuantization.fromFloat16(WeightQuantization.toFloat16(f)),
+                    Math.abs(f) / 1000 + 1e-7);
+        }
+
+        File restored = new File(repository.getFileSystemLocationOfEntry("ABC"), "classifier.ser");
+        assertEquals(dummyCrfSuiteModel(weights).length, restored.length());
+    }
+
+    @Test
+    public void testPublishedModelIsRegisteredOnceComplete() throws Exception
+    {
+        repository.addEntry(new Entry("ABC", 1), modelDummyOne.getRoot(), false);
+        repository.startWatching();
+        try {
+            File published = new File(folder.getRoot(), "ABC_2");
+            FileUtils.writeStringToFile(new File(published, "classifier.ser"), "model",
+                    StandardCharsets.UTF_8);
+            Thread.sleep(200);
+            assertEquals(1, repository.getEntry("ABC").getTimeStamp());
+
+            File marker = new File(folder.getRoot(), "ABC_2.complete");
+            marker.createNewFile();
+            long deadline = System.currentTimeMillis() + 10000;
+            while (repository.getEntry("ABC").getTimeStamp() != 2
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+            assertEquals(2, repository.getEntry("ABC").getTimeStamp());
+            assertEquals(published, repository.getFileSystemLocationOfEntry("ABC"));
+            assertTrue(marker.exists());
+        }
+        finally {
+            repository.stopWatching();
+        }
+
+        ModelRepository reloaded = new ModelRepository(folder.getRoot());
+        reloaded.screenFolderAndLoad();
+        assertEquals(2, reloaded.getEntry("ABC").getTimeStamp());
+    }
+
+    @Test
+    public void testPublishedModelIsRegisteredByEachReplica() throws Exception
+    {
+        ModelRepository first = new ModelRepository(folder.getRoot(), "first");
+        ModelRepository second = new ModelRepository(folder.getRoot(), "second");
+        first.screenFolderAndLoad();
+        second.screenFolderAndLoad();
+
+        publish("ABC_1");
+        assertEquals(1, first.loadCompletedModels());
+        assertEquals(1, second.loadCompletedModels());
+        assertEquals(0, first.loadCompletedModels());
+        assertEquals(1, first.getEntry("ABC").getTimeStamp());
+        assertEquals(1, second.getEntry("ABC").getTimeStamp());
+
+        // the first replica is interrupted while registering the next version
+        publish("ABC_2");
+        first.journal.begin("ABC", 2);
+
+        first = new ModelRepository(folder.getRoot(), "first");
+        first.screenFolderAndLoad();
+        assertTrue(new File(folder.getRoot(), "ABC_2").isDirectory());
+        assertEquals(1, first.getEntry("ABC").getTimeStamp());
+        assertEquals(1, first.loadCompletedModels());
+        assertEquals(1, second.loadCompletedModels());
+        assertEquals(2, first.getEntry("ABC").getTimeStamp());
+        assertEquals(2, second.getEntry("ABC").getTimeStamp());
+
+        second = new ModelRepository(folder.getRoot(), "second");
+        second.screenFolderAndLoad();
+        assertEquals(2, second.getEntry("ABC").getTimeStamp());
+        assertEquals(0, second.loadCompletedModels());
+    }
+
+    private void publish(String name) throws IOException
+    {
+        FileUtils.writeStringToFile(new File(folder.getRoot(), name + "/classifier.ser"), name,
+                StandardCharsets.UTF_8);
+        new File(folder.getRoot(), name + ".complete").createNewFile();
+    }
+
+    static byte[] dummyCrfSuiteModel(double[] weights)
+    {
+        int offFeatures = 64;
+        ByteBuffer b = ByteBuffer.allocate(offFeatures + 12 + 20 * weights.length + 8)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        b.put("lCRF".getBytes(StandardCharsets.US_ASCII));
+        b.putInt(b.capacity());
+        b.put("FOMC".getBytes(StandardCharsets.US_ASCII));
+        b.putInt(100);
+        b.putInt(weights.length);
+        b.putInt(2);
+        b.putInt(4);
+        b.putInt(offFeatures);
+        b.position(offFeatures);
+        b.put("FEAT".getBytes(StandardCharsets.US_ASCII));
+        b.putInt(12 + 20 * weights.length);
+        b.putInt(weights.length);
+        for (int i = 0; i < weights.length; i++) {
+            b.putInt(i % 2);
+            b.putInt(i);
+            b.putInt(i + 1);
+            b.putDouble(weights[i]);
+        }
+        b.put("LFRF".getBytes(StandardCharsets.US_ASCII));
+        return b.array();
+    }
+
 }
\ No newline at end of file
@@ -19,6 +19,7 @@
 package de.unidue.ltl.recommender.server;
 
 import java.io.IOException;
+import java.util.List;
 import java.util.concurrent.Semaphore;
 
 import javax.servlet.http.HttpServletResponse;
@@ -29,15 +30,22 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RestController;
 
+import de.unidue.ltl.recommender.core.train.TrainingProfile;
 import de.unidue.ltl.recommender.server.http.InceptionRequest;
 import de.unidue.ltl.recommender.server.http.PredictionRequest;
 import de.unidue.ltl.recommender.server.http.TrainingRequest;
+import de.unidue.ltl.recommender.server.repository.ModelStatistics;
+import de.unidue.ltl.recommender.server.repository.ModelVersion;
 import de.unidue.ltl.recommender.server.repository.Repository;
+import de.unidue.ltl.recommender.server.repository.RepositoryStatistics;
+import de.unidue.ltl.recommender.server.tc.prediction.BackgroundPrediction;
+import de.unidue.ltl.recommender.server.tc.prediction.PredictionCache;
 import de.unidue.ltl.recommender.server.tc.prediction.Predictor;
 import de.unidue.ltl.recommender.server.train.InceptionRecommenderModel;
 import de.unidue.ltl.recommender.server.train.Trainer;
@@ -56,17 +64,25 @@ public class RequestController
     @Autowired
     Predictor predictor;
 
+    @Autowired
+    PredictionCache predictionCache;
+
+    @Autowired
+    BackgroundPrediction backgroundPrediction;
+
     Semaphore trainingRunning = new Semaphore(1);
-    /*
-     * controls access to the model repository to avoid that a model is read of which a new version
-     * is written in the same moment. We do not keep explicitly track of which model is requested;
-     * we just block all read accesses when a model update is in progress
-     */
-    Semaphore readModelRepPermitted = new Semaphore(1);
 
     @RequestMapping(value = "/train", method = RequestMethod.POST)
     public ResponseEntity<String> executeTraining(@RequestBody TrainingRequest trainingRequest)
     {
+        // unknown profiles are rejected before the asynchronous training starts
+        TrainingProfile.fromName(trainingRequest.getMetadata().getProfile());
+        Integer buckets = trainingRequest.getMetadata().getCharacterNGramBuckets();
+        if (buckets != null && buckets < 0) {
+            throw new IllegalArgumentException(
+                    "Number of buckets must not be negative but was [" + buckets + "]");
+        }
+
         if (!trainingRunning.tryAcquire()) {
             logger.info("Received training request but trainer is currently busy ["
                     + HttpStatus.TOO_MANY_REQUESTS + "]");
@@ -90,26 +106,23 @@ public class RequestController
         {
 
             @Override
-            public synchronized void run()
+            public void run()
             {
+                if (isCurrentModel(inceptionReq)) {
+                    trainingRunning.release();
+                    return;
+                }
+
                 try {
                     try {
-                    InceptionRecommenderModel trainedModel = trainer.train(inceptionReq);
-
-                        while (!readModelRepPermitted.tryAcquire()) {
-                            logger.debug(
-                                    "Model repository is being read - check-in of new model pending");
-                            wait();
-                        }
+                        InceptionRecommenderModel trainedModel = trainer.train(inceptionReq);
+                        // waits for running predictions with the previous version of the model
                         repository.checkInModel(trainedModel, true);
                     }
                     finally {
-                        readModelRepPermitted.release();
                         trainingRunning.release();
                         logger.debug("Training finished - semaphore status trainingRunning ["
-                                + (trainingRunning.availablePermits() > 0 ? "no" : "yes")
-                                + "] readingRepositoryPermitted: ["
-                                + (readModelRepPermitted.availablePermits() > 0 ? "yes" : "no") + "]");
+                                + (trainingRunning.availablePermits() > 0 ? "no" : "yes") + "]");
                     }
                 }
                 catch (Exception e) {
@@ -125,26 +138,58 @@ public class RequestController
         logger.info("Model training started asynchronously");
     }
 
+    /**
+     * Computes the fingerprint of the training input and compares it to the one of the model in
+     * the repository. The fingerprint is kept in the request so that the trainer does not compute
+     * it a second time.
+     */
+    private boolean isCurrentModel(InceptionRequest inceptionReq)
+    {
+        try {
+            long start = System.currentTimeMillis();
+            String fingerprint = trainer.fingerprint(inceptionReq);
+            inceptionReq.setFingerprint(fingerprint);
+
+            if (fingerprint.equals(repository.getFingerprint(inceptionReq.getLayer()))) {
+                logger.info("Training input of model [" + inceptionReq.getLayer()
+                        + "] is unchanged - skipping training (fingerprint computed in ["
+                        + (System.currentTimeMillis() - start) + "] ms)");
+                return true;
+            }
+        }
+        catch (Exception e) {
+            logger.warn("Could not compare training input to current model - will train", e);
+        }
+        return false;
+    }
+
     @RequestMapping(value = "/predict", method = RequestMethod.POST)
     public ResponseEntity<String> executePrediction(
             @RequestBody PredictionRequest predictionRequest)
     {
-        if (!readModelRepPermitted.tryAcquire()) {
-            logger.debug("Model repository is being updated; try again later - http-code ["
-                    + HttpStatus.PRECONDITION_FAILED + "]");
-            return new ResponseEntity<>(HttpStatus.PRECONDITION_FAILED);
+        if (predictionRequest.getMetadata().getRange() != null) {
+            // invalid ranges are rejected before the model is accessed
+            predictionRequest.getMetadata().getRange().toPredictionRange();
         }
 
         String modelName = predictionRequest.toInceptionRequest().getLayer();
-        if (requestModelIsNotAvailable(modelName)) {
+        InceptionRecommenderModel model;
+        try {
+            model = repository.beginReadAccess(modelName);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new ResponseEntity<>(HttpStatus.SERVICE_UNAVAILABLE);
+        }
+        if (model == null) {
             logger.debug("Model [" + modelName + "] is not available - http-code ["
                     + HttpStatus.PRECONDITION_FAILED + "]");
-            releaseModelUpdateSemaphore();
             return new ResponseEntity<>(HttpStatus.PRECONDITION_FAILED);
         }
 
         try {
-            String response = prediction(predictionRequest.toInceptionRequest(), predictionRequest.getMetadata().getAnchoringMode());
+            String response = prediction(predictionRequest.toInceptionRequest(), model,
+                    predictionRequest.getMetadata().getAnchoringMode());
             return new ResponseEntity<>(response, HttpStatus.OK);
         }
         catch (Exception e) {
@@ -153,34 +198,102 @@ public class RequestController
                     e);
             return new ResponseEntity<>(e.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR);
         }
+        finally {
+            repository.endReadAccess(model);
+        }
     }
 
-    private boolean requestModelIsNotAvailable(String repKey)
+    /**
+     * Labels the document with a predictor of its own, predictions run concurrently. The caller
+     * holds a read access on the model.
+     */
+    private String prediction(InceptionRequest inceptionReq, InceptionRecommenderModel model,
+            String mode)
+        throws Exception
     {
+        PredictionCache.Key key = null;
+        if (predictionCache.isEnabled()) {
+            key = predictionCache.key(model, inceptionReq);
+            String cached = predictionCache.get(key);
+            if (cached == null && key.isRange()) {
+                // the prediction of the whole document covers the range as well
+                cached = predictionCache.get(key.withoutRange());
+            }
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        String response;
+        Predictor requestPredictor = predictor.newInstance();
         try {
-            return repository.getModel(repKey) == null;
+            requestPredictor.predict(inceptionReq, model.getFileSystemLocation(), mode);
+            response = requestPredictor.getResultsAsJson();
         }
-        catch (NullPointerException ne) {
-            return true;
+        finally {
+            requestPredictor.release();
         }
 
+        if (key != null) {
+            predictionCache.put(key, response);
+            if (key.isRange()) {
+                backgroundPrediction.submit(inceptionReq, model, key);
+            }
+        }
+        return response;
     }
 
-    private String prediction(InceptionRequest inceptionReq, String mode) throws Exception
+    @RequestMapping(value = "/repository", method = RequestMethod.GET)
+    public ResponseEntity<RepositoryStatistics> repositoryStatistics()
     {
-        InceptionRecommenderModel model = repository.getModel(inceptionReq.getLayer());
-        predictor.predict(inceptionReq, model.getFileSystemLocation(), mode);
+        return new ResponseEntity<>(repository.getRepositoryStatistics(), HttpStatus.OK);
+    }
 
-        releaseModelUpdateSemaphore();
-        return predictor.getResultsAsJson();
+    @RequestMapping(value = "/models", method = RequestMethod.GET)
+    public ResponseEntity<List<ModelStatistics>> listModels()
+    {
+        return new ResponseEntity<>(repository.getStatistics(), HttpStatus.OK);
     }
 
-    public synchronized void releaseModelUpdateSemaphore()
+    @RequestMapping(value = "/models/{id}/versions", method = RequestMethod.GET)
+    public ResponseEntity<List<ModelVersion>> listVersions(@PathVariable("id") String id)
     {
-        logger.debug(
-                "Releasing repository access and sending notification to potentially waiting thread");
-        readModelRepPermitted.release();
-        notify();
+        List<ModelVersion> versions = repository.getVersions(id);
+        if (versions == null) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+        return new ResponseEntity<>(versions, HttpStatus.OK);
+    }
+
+    @RequestMapping(value = "/models/{id}/pin/{timestamp}", method = RequestMethod.POST)
+    public ResponseEntity<String> pinVersion(@PathVariable("id") String id,
+            @PathVariable("timestamp") long timestamp)
+        throws Exception
+    {
+        repository.pinVersion(id, timestamp);
+        logger.info("Pinned model [" + id + "] to version [" + timestamp + "]");
+        return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+    }
+
+    @RequestMapping(value = "/models/{id}/pin", method = RequestMethod.DELETE)
+    public ResponseEntity<String> unpinVersion(@PathVariable("id") String id) throws Exception
+    {
+        repository.unpinVersion(id);
+        logger.info("Unpinned model [" + id + "]");
+        return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+    }
+
+    @RequestMapping(value = "/models/{id}/rollback", method = RequestMethod.POST)
+    public ResponseEntity<String> rollback(@PathVariable("id") String id) throws Exception
+    {
+        try {
+            long timestamp = repository.rollback(id);
+            logger.info("Rolled back model [" + id + "] to version [" + timestamp + "]");
+            return new ResponseEntity<>(Long.toString(timestamp), HttpStatus.OK);
+        }
+        catch (IllegalStateException e) {
+            return new ResponseEntity<>(e.getMessage(), HttpStatus.CONFLICT);
+        }
     }
 
     @ExceptionHandler
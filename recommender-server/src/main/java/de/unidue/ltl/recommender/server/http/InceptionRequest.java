@@ -25,6 +25,11 @@ public class InceptionRequest
     private String layer;
     private String feature;
     private String anchoringMode;
+    private String profile;
+    private Integer characterNGramBuckets;
+    private String fingerprint;
+    private Range range;
+    private boolean crossSentence;
 
     public String [] getDocuments()
     {
@@ -80,4 +85,70 @@ public class InceptionRequest
     {
         this.feature = feature;
     }
+
+
+    public String getProfile()
+    {
+        return profile;
+    }
+
+
+    public void setProfile(String profile)
+    {
+        this.profile = profile;
+    }
+
+
+    /**
+     * @return the number of hash buckets for character n-grams or null for the server default
+     */
+    public Integer getCharacterNGramBuckets()
+    {
+        return characterNGramBuckets;
+    }
+
+
+    public void setCharacterNGramBuckets(Integer characterNGramBuckets)
+    {
+        this.characterNGramBuckets = characterNGramBuckets;
+    }
+
+
+    /**
+     * @return the fingerprint of the training input if it was already computed, otherwise null
+     */
+    public String getFingerprint()
+    {
+        return fingerprint;
+    }
+
+
+    public void setFingerprint(String fingerprint)
+    {
+        this.fingerprint = fingerprint;
+    }
+
+
+    public Range getRange()
+    {
+        return range;
+    }
+
+
+    public void setRange(Range range)
+    {
+        this.range = range;
+    }
+
+
+    public boolean isCrossSentence()
+    {
+        return crossSentence;
+    }
+
+
+    public void setCrossSentence(boolean crossSentence)
+    {
+        this.crossSentence = crossSentence;
+    }
 }
@@ -26,18 +26,27 @@ public class Metadata {
     private final long projectId;
     private final String anchoringMode;
     private final boolean crossSentence;
+    private final String profile;
+    private final Integer characterNGramBuckets;
+    private final Range range;
 
     public Metadata(@JsonProperty(value = "layer", required = true) String aLayer,
                     @JsonProperty(value = "feature", required = true) String aFeature,
                     @JsonProperty(value = "projectId", required = true) long aProjectId,
                     @JsonProperty(value = "anchoringMode", required = true) String aAnchoringMode,
-                    @JsonProperty(value = "crossSentence", required = true) boolean aCrossSentence)
+                    @JsonProperty(value = "crossSentence", required = true) boolean aCrossSentence,
+                    @JsonProperty(value = "profile", required = false) String aProfile,
+                    @JsonProperty(value = "characterNGramBuckets", required = false) Integer aCharacterNGramBuckets,
+                    @JsonProperty(value = "range", required = false) Range aRange)
     {
         layer = aLayer;
         feature = aFeature;
         projectId = aProjectId;
         anchoringMode = aAnchoringMode;
         crossSentence = aCrossSentence;
+        profile = aProfile;
+        characterNGramBuckets = aCharacterNGramBuckets;
+        range = aRange;
     }
 
     public String getLayer()
@@ -64,4 +73,35 @@ public class Metadata {
     {
         return crossSentence;
     }
+
+    /**
+     * Optional, not sent by INCEpTION itself
+     * 
+     * @return the name of the training profile or null if the server default applies
+     */
+    public String getProfile()
+    {
+        return profile;
+    }
+
+    /**
+     * Optional, not sent by INCEpTION itself
+     * 
+     * @return the number of hash buckets for character n-grams, 0 for the setting of the profile
+     *         or null if the server default applies
+     */
+    public Integer getCharacterNGramBuckets()
+    {
+        return characterNGramBuckets;
+    }
+
+    /**
+     * Optional, not sent by INCEpTION itself
+     * 
+     * @return the part of the document to predict or null for the whole document
+     */
+    public Range getRange()
+    {
+        return range;
+    }
 }
@@ -68,6 +68,9 @@ public class PredictionRequest
         result.setLayer(getMetadata().getLayer());
         result.setFeature(getMetadata().getFeature());
         result.setAnchoringMode(getMetadata().getAnchoringMode());
+        result.setProfile(getMetadata().getProfile());
+        result.setCrossSentence(getMetadata().isCrossSentence());
+        result.setRange(getMetadata().getRange());
         return result;
     }
 }
@@ -0,0 +1,77 @@
+/*******************************************************************************
+ * Copyright 2018
+ * Language Technology Lab
+ * University of Duisburg-Essen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package de.unidue.ltl.recommender.server.http;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import de.unidue.ltl.recommender.core.predict.PredictionRange;
+
+/**
+ * Part of the document for which predictions are requested, either as character offsets or as
+ * sentence indices (unit "sentences"). The end is exclusive.
+ */
+public class Range
+{
+    public static final String UNIT_CHARACTERS = "characters";
+    public static final String UNIT_SENTENCES = "sentences";
+
+    private final int begin;
+    private final int end;
+    private final String unit;
+
+    public Range(@JsonProperty(value = "begin", required = true) int aBegin,
+            @JsonProperty(value = "end", required = true) int aEnd,
+            @JsonProperty(value = "unit", required = false) String aUnit)
+    {
+        begin = aBegin;
+        end = aEnd;
+        unit = aUnit != null ? aUnit : UNIT_CHARACTERS;
+    }
+
+    public int getBegin()
+    {
+        return begin;
+    }
+
+    public int getEnd()
+    {
+        return end;
+    }
+
+    public String getUnit()
+    {
+        return unit;
+    }
+
+    public PredictionRange toPredictionRange()
+    {
+        if (UNIT_CHARACTERS.equals(unit)) {
+            return PredictionRange.characters(begin, end);
+        }
+        else if (UNIT_SENTENCES.equals(unit)) {
+            return PredictionRange.sentences(begin, end);
+        }
+        throw new IllegalArgumentException("Unknown range unit [" + unit + "]");
+    }
+
+    @Override
+    public String toString()
+    {
+        return unit + " [" + begin + "] to [" + end + "]";
+    }
+}
@@ -70,6 +70,9 @@ public class TrainingRequest {
         result.setLayer(getMetadata().getLayer());
         result.setFeature(getMetadata().getFeature());
         result.setAnchoringMode(getMetadata().getAnchoringMode());
+        result.setProfile(getMetadata().getProfile());
+        result.setCharacterNGramBuckets(getMetadata().getCharacterNGramBuckets());
+        result.setCrossSentence(getMetadata().isCrossSentence());
         return result;
     }
 }
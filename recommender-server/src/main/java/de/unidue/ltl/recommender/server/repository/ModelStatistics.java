@@ -0,0 +1,87 @@
+/*******************************************************************************
+ * Copyright 2018
+ * Language Technology Lab
+ * University of Duisburg-Essen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package de.unidue.ltl.recommender.server.repository;
+
+/**
+ * Storage and access statistics of a model in the repository
+ */
+public class ModelStatistics
+{
+    private final String id;
+    private final long timestamp;
+    private final long size;
+    private final long accesses;
+    private final long lastAccess;
+    private final boolean archived;
+
+    public ModelStatistics(String id, long timestamp, long size, long accesses, long lastAccess,
+            boolean archived)
+    {
+        this.id = id;
+        this.timestamp = timestamp;
+        this.size = size;
+        this.accesses = accesses;
+        this.lastAccess = lastAccess;
+        this.archived = archived;
+    }
+
+    public String getId()
+    {
+        return id;
+    }
+
+    /**
+     * @return the timestamp of the version in use
+     */
+    public long getTimestamp()
+    {
+        return timestamp;
+    }
+
+    /**
+     * @return the size of the stored files of the version in use in bytes
+     */
+    public long getSize()
+    {
+        return size;
+    }
+
+    /**
+     * @return the number of accesses since the server started
+     */
+    public long getAccesses()
+    {
+        return accesses;
+    }
+
+    /**
+     * @return the time of the last access in milliseconds since the epoch
+     */
+    public long getLastAccess()
+    {
+        return lastAccess;
+    }
+
+    /**
+     * @return true if the model is stored compressed and unpacked on its next use
+     */
+    public boolean isArchived()
+    {
+        return archived;
+    }
+}
@@ -0,0 +1,74 @@
+/*******************************************************************************
+ * Copyright 2018
+ * Language Technology Lab
+ * University of Duisburg-Essen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package de.unidue.ltl.recommender.server.repository;
+
+/**
+ * A version of a model retained in the repository, as listed by the version endpoints
+ */
+public class ModelVersion
+{
+    private final long timestamp;
+    private final String fingerprint;
+    private final long size;
+    private final boolean current;
+    private final boolean pinned;
+
+    public ModelVersion(long timestamp, String fingerprint, long size, boolean current,
+            boolean pinned)
+    {
+        this.timestamp = timestamp;
+        this.fingerprint = fingerprint;
+        this.size = size;
+        this.current = current;
+        this.pinned = pinned;
+    }
+
+    public long getTimestamp()
+    {
+        return timestamp;
+    }
+
+    public String getFingerprint()
+    {
+        return fingerprint;
+    }
+
+    /**
+     * @return the size of the stored model files in bytes
+     */
+    public long getSize()
+    {
+        return size;
+    }
+
+    /**
+     * @return true if predictions use this version
+     */
+    public boolean isCurrent()
+    {
+        return current;
+    }
+
+    /**
+     * @return true if the model is pinned to this version
+     */
+    public boolean isPinned()
+    {
+        return pinned;
+    }
+}
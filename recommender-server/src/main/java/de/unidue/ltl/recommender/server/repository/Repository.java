@@ -19,6 +19,8 @@
 package de.unidue.ltl.recommender.server.repository;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.List;
 
 import de.unidue.ltl.recommender.server.train.InceptionRecommenderModel;
 
@@ -33,6 +35,104 @@ public interface Repository
      */
     InceptionRecommenderModel getModel(String id);
 
+    /**
+     * Looks up the fingerprint of the current version of a model. Unlike
+     * {@link #getModel(String)} this neither restores the model files nor counts as access.
+     * 
+     * @param id
+     *            the id value
+     * @return the fingerprint or null if there is no such model or its fingerprint is unknown
+     */
+    String getFingerprint(String id);
+
+    /**
+     * Retrieves the current version of a model and starts a read access on it. The model files
+     * are neither replaced nor deleted by a concurrent check-in until
+     * {@link #endReadAccess(InceptionRecommenderModel)} is called; read accesses do not block
+     * each other and do not wait for check-ins.
+     * 
+     * @param id
+     *            the id value
+     * @return a model or null if there is none, in which case no access was started
+     * @throws InterruptedException
+     *             if interrupted while the files of the model are replaced
+     */
+    InceptionRecommenderModel beginReadAccess(String id) throws InterruptedException;
+
+    /**
+     * Ends a read access started with {@link #beginReadAccess(String)}
+     * 
+     * @param model
+     *            the model returned by {@link #beginReadAccess(String)}
+     */
+    void endReadAccess(InceptionRecommenderModel model);
+
+    /**
+     * @return size and access statistics of all models
+     */
+    List<ModelStatistics> getStatistics();
+
+    /**
+     * @return size, quota and evictions of the repository
+     */
+    RepositoryStatistics getRepositoryStatistics();
+
+    /**
+     * Lists the retained versions of a model
+     * 
+     * @param id
+     *            the id value
+     * @return the versions, newest first, or null if there is no such model
+     */
+    List<ModelVersion> getVersions(String id);
+
+    /**
+     * Uses the given version of a model for predictions until the model is unpinned, versions
+     * checked in meanwhile are retained but not used
+     * 
+     * @param id
+     *            the id value
+     * @param timestamp
+     *            the timestamp of a retained version
+     * @throws Exception
+     *             in case of an error
+     */
+    void pinVersion(String id, long timestamp) throws Exception;
+
+    /**
+     * Uses the newest version of a model again
+     * 
+     * @param id
+     *            the id value
+     * @throws Exception
+     *             in case of an error
+     */
+    void unpinVersion(String id) throws Exception;
+
+    /**
+     * Pins a model to the newest retained version older than the one in use
+     * 
+     * @param id
+     *            the id value
+     * @return the timestamp of the version now in use
+     * @throws Exception
+     *             in case of an error, an {@link IllegalStateException} if there is no older
+     *             version
+     */
+    long rollback(String id) throws Exception;
+
+    /**
+     * Creates an empty folder on the file system of the repository for a model which is checked
+     * in afterwards. Such a model is published with a rename instead of a copy.
+     * 
+     * @param id
+     *            the id of the model
+     * @return the new folder
+     * @throws IOException
+     *             in case of an error
+     */
+    File createStagingFolder(String id) throws IOException;
+
     /**
      * Checks in a model into the repository. If a model with the specified id does not exist yet a
      * new model is registered otherwise the existing entry is overwritten.
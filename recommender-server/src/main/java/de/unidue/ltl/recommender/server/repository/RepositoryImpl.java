@@ -19,6 +19,10 @@
 package de.unidue.ltl.recommender.server.repository;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /*
  * Wrapper class for the repository
@@ -26,11 +30,18 @@ import java.io.File;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import de.unidue.ltl.recommender.repository.Entry;
+import de.unidue.ltl.recommender.repository.EvictionPolicy;
+import de.unidue.ltl.recommender.repository.LocalModelStore;
 import de.unidue.ltl.recommender.repository.ModelRepository;
+import de.unidue.ltl.recommender.repository.ModelStore;
+import de.unidue.ltl.recommender.repository.ModelStoreCache;
+import de.unidue.ltl.recommender.repository.S3ModelStore;
+import de.unidue.ltl.recommender.server.tc.prediction.PredictionCache;
 import de.unidue.ltl.recommender.server.tc.train.TcModel;
 import de.unidue.ltl.recommender.server.train.InceptionRecommenderModel;
 
@@ -43,15 +54,132 @@ public class RepositoryImpl
 
     ModelRepository rep;
 
+    @Autowired
+    PredictionCache predictionCache;
+
     @Value("${repositoryRoot}")
     File repositoryRoot;
 
-    private void init()
+    @Value("${repository.compactModels:false}")
+    boolean compactModels;
+
+    @Value("${repository.retainRawModelFolder:true}")
+    boolean retainRawModelFolder;
+
+    @Value("${repository.retainedVersions:1}")
+    int retainedVersions;
+
+    @Value("${repository.deduplicateModels:false}")
+    boolean deduplicateModels;
+
+    @Value("${repository.archiveAfterMinutes:0}")
+    long archiveAfterMinutes;
+
+    @Value("${repository.quota.maxBytes:0}")
+    long quotaMaxBytes;
+
+    @Value("${repository.quota.maxModels:0}")
+    int quotaMaxModels;
+
+    @Value("${repository.quota.evictionPolicy:LRU}")
+    EvictionPolicy evictionPolicy;
+
+    @Value("${repository.watch:false}")
+    boolean watch;
+
+    @Value("${repository.replica:}")
+    String replica;
+
+    @Value("${repository.store:}")
+    String storeType;
+
+    @Value("${repository.store.location:}")
+    String storeLocation;
+
+    @Value("${repository.store.s3.endpoint:}")
+    String s3Endpoint;
+
+    @Value("${repository.store.s3.bucket:}")
+    String s3Bucket;
+
+    @Value("${repository.store.s3.region:us-east-1}")
+    String s3Region;
+
+    @Value("${repository.store.s3.accessKey:}")
+    String s3AccessKey;
+
+    @Value("${repository.store.s3.secretKey:}")
+    String s3SecretKey;
+
+    @Value("${repository.store.refreshSeconds:10}")
+    long storeRefreshSeconds;
+
+    /** the local repository as cache of a shared model store, null if there is none */
+    ModelStoreCache storeCache;
+
+    private synchronized void init()
     {
         if (rep == null) {
             logger.info("Initializing model repository at [" + repositoryRoot + "]");
-            rep = new ModelRepository(repositoryRoot);
+            rep = new ModelRepository(repositoryRoot, replica.isEmpty() ? null : replica);
+            rep.setCompactModels(compactModels);
+            rep.setRetainRawModelFolder(retainRawModelFolder);
+            rep.setRetainedVersions(retainedVersions);
+            rep.setDeduplicateModels(deduplicateModels);
+            rep.setArchiveAfter(TimeUnit.MINUTES.toMillis(archiveAfterMinutes));
+            rep.setQuota(quotaMaxBytes, quotaMaxModels);
+            rep.setEvictionPolicy(evictionPolicy);
             rep.screenFolderAndLoad();
+            if (watch) {
+                try {
+                    rep.startWatching();
+                }
+                catch (IOException e) {
+                    logger.error("Could not watch [" + repositoryRoot
+                            + "] for models published by other processes", e);
+                }
+            }
+
+            ModelStore store = createStore();
+            if (store != null) {
+                logger.info("Sharing models through [" + store.getClass().getSimpleName() + "]");
+                storeCache = new ModelStoreCache(store, rep);
+                storeCache.setRefreshInterval(TimeUnit.SECONDS.toMillis(storeRefreshSeconds));
+            }
+        }
+    }
+
+    private ModelStore createStore()
+    {
+        switch (storeType) {
+        case "":
+            return null;
+        case "local":
+            return new LocalModelStore(new File(storeLocation));
+        case "s3":
+            return new S3ModelStore(s3Endpoint, s3Bucket, s3Region, s3AccessKey, s3SecretKey);
+        default:
+            throw new IllegalArgumentException("Unknown model store [" + storeType + "]");
+        }
+    }
+
+    /**
+     * Fetches a newer version of the model from the shared store, if any. If the store is not
+     * reachable the cached version is used.
+     */
+    private void refresh(String id) throws InterruptedException
+    {
+        if (storeCache == null) {
+            return;
+        }
+        try {
+            if (storeCache.refresh(id)) {
+                predictionCache.invalidate(id);
+            }
+        }
+        catch (IOException e) {
+            logger.warn("Could not look up model [" + id
+                    + "] in the model store - using the cached version", e);
         }
     }
 
@@ -59,6 +187,12 @@ public class RepositoryImpl
     public InceptionRecommenderModel getModel(String id)
     {
         init();
+        try {
+            refresh(id);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
         Entry entry = rep.getEntry(id);
         
 		if (entry == null) {
@@ -67,26 +201,155 @@ public class RepositoryImpl
 		}
         
         return new TcModel(entry.getId(), entry.getTimeStamp(),
-                rep.getFileSystemLocationOfEntry(entry.getId()));
+                rep.getFileSystemLocationOfEntry(entry.getId()), entry.getFingerprint());
+    }
+
+    @Override
+    public String getFingerprint(String id)
+    {
+        init();
+        Entry entry = rep.getEntry(id);
+        return entry != null ? entry.getFingerprint() : null;
+    }
+
+    @Override
+    public InceptionRecommenderModel beginReadAccess(String id) throws InterruptedException
+    {
+        init();
+        refresh(id);
+        Entry entry = rep.beginReadAccess(id);
+        if (entry == null) {
+            logger.debug("The requested model with id [" + id + "] was not found");
+            return null;
+        }
+
+        try {
+            return new TcModel(entry.getId(), entry.getTimeStamp(),
+                    rep.getFileSystemLocationOfVersion(entry), entry.getFingerprint());
+        }
+        catch (RuntimeException e) {
+            rep.endReadAccess(entry.getId(), entry.getTimeStamp());
+            throw e;
+        }
+    }
+
+    @Override
+    public void endReadAccess(InceptionRecommenderModel model)
+    {
+        rep.endReadAccess(model.getId(), model.getTimestamp());
+    }
+
+    @Override
+    public List<ModelStatistics> getStatistics()
+    {
+        init();
+        List<ModelStatistics> statistics = new ArrayList<>();
+        for (String id : rep.getEntryIds()) {
+            Entry entry = rep.getEntry(id);
+            if (entry == null) {
+                continue;
+            }
+            statistics.add(new ModelStatistics(id, entry.getTimeStamp(), entry.getSize(),
+                    entry.getNumberOfAccesses(), entry.getLastAccess(), rep.isArchived(id)));
+        }
+        return statistics;
+    }
+
+    @Override
+    public RepositoryStatistics getRepositoryStatistics()
+    {
+        init();
+        return new RepositoryStatistics(rep.getEntryIds().size(), rep.getTotalSize(),
+                quotaMaxModels, quotaMaxBytes, rep.getNumberOfEvictions(),
+                rep.getEvictedBytes(), rep.getNumberOfUnpacks());
+    }
+
+    @Override
+    public List<ModelVersion> getVersions(String id)
+    {
+        init();
+        Entry entry = rep.getEntry(id);
+        if (entry == null) {
+            return null;
+        }
+
+        List<ModelVersion> versions = new ArrayList<>();
+        for (Entry v : rep.getVersions(id)) {
+            boolean current = v.getTimeStamp() == entry.getTimeStamp();
+            versions.add(new ModelVersion(v.getTimeStamp(), v.getFingerprint(), v.getSize(),
+                    current, current && entry.isPinned()));
+        }
+        return versions;
+    }
+
+    @Override
+    public void pinVersion(String id, long timestamp) throws Exception
+    {
+        init();
+        rep.pinVersion(id, timestamp);
+        predictionCache.invalidate(id);
+    }
+
+    @Override
+    public void unpinVersion(String id) throws Exception
+    {
+        init();
+        rep.unpinVersion(id);
+        predictionCache.invalidate(id);
+    }
+
+    @Override
+    public long rollback(String id) throws Exception
+    {
+        init();
+        long timestamp = rep.rollback(id);
+        predictionCache.invalidate(id);
+        return timestamp;
+    }
+
+    @Override
+    public File createStagingFolder(String id) throws IOException
+    {
+        init();
+        return rep.createStagingFolder(id);
     }
 
     @Override
     public void checkInModel(String id, long timestamp, File sourceLocation,
             boolean deleteSourceLocation)
         throws Exception
+    {
+        checkInModel(id, timestamp, sourceLocation, deleteSourceLocation, null);
+    }
+
+    private void checkInModel(String id, long timestamp, File sourceLocation,
+            boolean deleteSourceLocation, String fingerprint)
+        throws Exception
     {
         logger.info("Checking in model with id ["+id+"]");
         
         init();
+        predictionCache.invalidate(id);
 
         if (exists(id)) {
             logger.info("The model with [" + id + "] already exists - will update existing entry");
-            rep.updateEntry(id, timestamp, sourceLocation, deleteSourceLocation);
-            return;
+            rep.updateEntry(id, timestamp, sourceLocation, deleteSourceLocation, fingerprint);
+        }
+        else {
+            Entry entry = new Entry(id, timestamp);
+            entry.setFingerprint(fingerprint);
+            rep.addEntry(entry, sourceLocation, deleteSourceLocation);
         }
 
-        Entry entry = new Entry(id, timestamp);
-        rep.addEntry(entry, sourceLocation, deleteSourceLocation);
+        if (storeCache != null) {
+            try {
+                storeCache.publish(id, timestamp);
+            }
+            catch (IOException e) {
+                logger.error("Could not publish model [" + id
+                        + "] to the model store - it is only available on this server", e);
+            }
+        }
     }
 
     @Override
@@ -96,7 +359,7 @@ public class RepositoryImpl
         init();
 
         checkInModel(irm.getId(), irm.getTimestamp(), irm.getFileSystemLocation(),
-                deleteSourceLocation);
+                deleteSourceLocation, irm.getFingerprint());
     }
 
     private boolean exists(String id)
@@ -0,0 +1,94 @@
+/*******************************************************************************
+ * Copyright 2018
+ * Language Technology Lab
+ * University of Duisburg-Essen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package de.unidue.ltl.recommender.server.repository;
+
+/**
+ * Usage of the model repository compared to its quota
+ */
+public class RepositoryStatistics
+{
+    private final int models;
+    private final long size;
+    private final int maxModels;
+    private final long maxBytes;
+    private final int evictions;
+    private final long evictedBytes;
+    private final int unpacks;
+
+    public RepositoryStatistics(int models, long size, int maxModels, long maxBytes,
+            int evictions, long evictedBytes, int unpacks)
+    {
+        this.models = models;
+        this.size = size;
+        this.maxModels = maxModels;
+        this.maxBytes = maxBytes;
+        this.evictions = evictions;
+        this.evictedBytes = evictedBytes;
+        this.unpacks = unpacks;
+    }
+
+    public int getModels()
+    {
+        return models;
+    }
+
+    /**
+     * @return the size of all retained model versions in bytes
+     */
+    public long getSize()
+    {
+        return size;
+    }
+
+    /**
+     * @return the quota on the number of models, 0 if unlimited
+     */
+    public int getMaxModels()
+    {
+        return maxModels;
+    }
+
+    /**
+     * @return the quota on the size in bytes, 0 if unlimited
+     */
+    public long getMaxBytes()
+    {
+        return maxBytes;
+    }
+
+    /**
+     * @return the number of models evicted since the server started
+     */
+    public int getEvictions()
+    {
+        return evictions;
+    }
+
+    public long getEvictedBytes()
+    {
+        return evictedBytes;
+    }
+
+    /**
+     * @return the number of archived models unpacked since the server started
+     */
+    public int getUnpacks()
+    {
+        return unpacks;
+    }
+}
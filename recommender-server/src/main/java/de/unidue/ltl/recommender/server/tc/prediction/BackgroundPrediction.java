@@ -0,0 +1,137 @@
+/*******************************************************************************
+ * Copyright 2018
+ * Language Technology Lab
+ * University of Duisburg-Essen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package de.unidue.ltl.recommender.server.tc.prediction;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import de.unidue.ltl.recommender.server.http.InceptionRequest;
+import de.unidue.ltl.recommender.server.repository.Repository;
+import de.unidue.ltl.recommender.server.train.InceptionRecommenderModel;
+
+/**
+ * Labels the whole document after a prediction request for a range of it was answered and puts
+ * the result into the {@link PredictionCache}, so that the next request for the same document is
+ * answered from the cache regardless of the range. Best effort: jobs run one after another on a
+ * single thread, jobs for a model which was replaced meanwhile are dropped and failures are only
+ * logged.
+ */
+@Component
+public class BackgroundPrediction
+{
+    private static final Logger logger = LoggerFactory
+            .getLogger(BackgroundPrediction.class.getName());
+
+    @Value("${prediction.backgroundFullDocument:false}")
+    boolean enabled;
+
+    @Autowired
+    PredictionCache predictionCache;
+
+    @Autowired
+    TcInceptionRecommenderPredictor predictorTemplate;
+
+    @Autowired
+    Repository repository;
+
+    private final Set<PredictionCache.Key> pending = ConcurrentHashMap.newKeySet();
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "background-prediction");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * Schedules the prediction of the whole document unless it is cached or already scheduled
+     *
+     * @param req
+     *            the request for a range of the document
+     * @param model
+     *            the model the range was labeled with
+     * @param key
+     *            the cache key of the range request
+     */
+    public void submit(InceptionRequest req, InceptionRecommenderModel model,
+            PredictionCache.Key key)
+    {
+        if (!enabled || !predictionCache.isEnabled()) {
+            return;
+        }
+
+        PredictionCache.Key fullKey = key.withoutRange();
+        if (predictionCache.get(fullKey) != null || !pending.add(fullKey)) {
+            return;
+        }
+
+        InceptionRequest fullReq = new InceptionRequest();
+        fullReq.setDocuments(req.getDocuments());
+        fullReq.setTypeSystem(req.getTypeSystem());
+        fullReq.setLayer(req.getLayer());
+        fullReq.setFeature(req.getFeature());
+        fullReq.setAnchoringMode(req.getAnchoringMode());
+        fullReq.setProfile(req.getProfile());
+        fullReq.setCrossSentence(req.isCrossSentence());
+
+        executor.submit(() -> {
+            TcInceptionRecommenderPredictor predictor = null;
+            InceptionRecommenderModel current = null;
+            try {
+                current = repository.beginReadAccess(model.getId());
+                if (current == null || current.getTimestamp() != model.getTimestamp()) {
+                    logger.debug("Model was replaced, dropped background prediction for "
+                            + fullKey);
+                    return;
+                }
+                predictor = predictorTemplate.copy();
+                predictor.predict(fullReq, current.getFileSystemLocation(),
+                        fullReq.getAnchoringMode());
+                predictionCache.put(fullKey, predictor.getResultsAsJson());
+                logger.debug("Cached prediction of the whole document for " + fullKey);
+            }
+            catch (Exception e) {
+                logger.warn("Background prediction for " + fullKey + " failed", e);
+            }
+            finally {
+                pending.remove(fullKey);
+                if (current != null) {
+                    repository.endReadAccess(current);
+                }
+                if (predictor != null) {
+                    predictor.release();
+                }
+            }
+        });
+    }
+
+    @PreDestroy
+    void shutdown()
+    {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,162 @@
+/*******************************************************************************
+ * Copyright 2018
+ * Language Technology Lab
+ * University of Duisburg-Essen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package de.unidue.ltl.recommender.server.tc.prediction;
+
+import java.util.Objects;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import de.unidue.ltl.recommender.core.util.CasFingerprint;
+import de.unidue.ltl.recommender.server.http.InceptionRequest;
+import de.unidue.ltl.recommender.server.train.InceptionRecommenderModel;
+
+/**
+ * Bounded cache of prediction responses. Entries are keyed by the model id and timestamp and a
+ * hash of the document (text, tokens, sentences and the annotations of the predicted layer, see
+ * {@link CasFingerprint}), the size is limited by the characters of the cached responses. Entries
+ * of a model are dropped when a new version of the model is checked in.
+ */
+@Component
+public class PredictionCache
+{
+    private static final Logger logger = LoggerFactory.getLogger(PredictionCache.class.getName());
+
+    @Value("${prediction.cache.maxCharacters:32000000}")
+    long maxCharacters;
+
+    private Cache<Key, String> cache;
+
+    @PostConstruct
+    void init()
+    {
+        cache = CacheBuilder.newBuilder()
+                .maximumWeight(maxCharacters)
+                .weigher((Key k, String v) -> v.length())
+                .recordStats()
+                .build();
+    }
+
+    public boolean isEnabled()
+    {
+        return maxCharacters > 0;
+    }
+
+    /**
+     * @return the cache key of a prediction request against a model version, requests for a range
+     *         of the document have a key of their own
+     */
+    public Key key(InceptionRecommenderModel model, InceptionRequest req) throws Exception
+    {
+        if (req.getDocuments().length != 1) {
+            throw new IllegalArgumentException("Can only handle 1 document in a request");
+        }
+        String document = CasFingerprint.ofDocument(req.getDocuments()[0], req.getTypeSystem(),
+                req.getLayer(), req.getFeature());
+        return new Key(model.getId(), model.getTimestamp(),
+                req.getFeature() + "/" + req.getAnchoringMode() + "/" + req.isCrossSentence()
+                        + "/" + document,
+                req.getRange() != null ? req.getRange().toString() : null);
+    }
+
+    public String get(Key key)
+    {
+        String response = cache.getIfPresent(key);
+        if (logger.isDebugEnabled()) {
+            logger.debug("Prediction cache " + (response != null ? "hit" : "miss") + " for "
+                    + key + " " + cache.stats());
+        }
+        return response;
+    }
+
+    public void put(Key key, String response)
+    {
+        if (isEnabled()) {
+            cache.put(key, response);
+        }
+    }
+
+    /**
+     * Drops all cached predictions of a model
+     */
+    public void invalidate(String modelId)
+    {
+        cache.asMap().keySet().removeIf(k -> k.modelId.equals(modelId));
+        logger.debug("Invalidated cached predictions of model [" + modelId + "]");
+    }
+
+    public static class Key
+    {
+        private final String modelId;
+        private final long timestamp;
+        private final String document;
+        private final String range;
+
+        Key(String modelId, long timestamp, String document, String range)
+        {
+            this.modelId = modelId;
+            this.timestamp = timestamp;
+            this.document = document;
+            this.range = range;
+        }
+
+        public boolean isRange()
+        {
+            return range != null;
+        }
+
+        /**
+         * @return the key of the same request for the whole document
+         */
+        public Key withoutRange()
+        {
+            return new Key(modelId, timestamp, document, null);
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return timestamp == other.timestamp && modelId.equals(other.modelId)
+                    && document.equals(other.document) && Objects.equals(range, other.range);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(modelId, timestamp, document, range);
+        }
+
+        @Override
+        public String toString()
+        {
+            return "[" + modelId + "] / [" + timestamp + "] / [" + document + "]"
+                    + (range != null ? " / " + range : "");
+        }
+    }
+}
@@ -29,4 +29,17 @@ public interface Predictor
     List<String> getResults() throws Exception;
     
     String getResultsAsJson() throws Exception;
+
+    /**
+     * @return a predictor with the same settings for a single request, which works in a result
+     *         folder of its own; must be released with {@link #release()}
+     * @throws Exception
+     *             in case of an error
+     */
+    Predictor newInstance() throws Exception;
+
+    /**
+     * Deletes the results of an instance created with {@link #newInstance()}
+     */
+    void release();
 }
@@ -23,6 +23,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.commons.io.FileUtils;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -30,6 +31,7 @@ import com.fasterxml.jackson.databind.SerializationFeature;
 import com.google.common.io.Files;
 
 import de.unidue.ltl.recommender.core.predict.PredictionWithModel;
+import de.unidue.ltl.recommender.core.predict.SentenceLabelMemo;
 import de.unidue.ltl.recommender.server.http.InceptionRequest;
 import de.unidue.ltl.recommender.server.http.PredictionResponse;
 
@@ -40,6 +42,15 @@ public class TcInceptionRecommenderPredictor
     PredictionWithModel pwm;
     File resultOut;
 
+    @Value("${prediction.skipAnnotatedTokens:false}")
+    boolean skipAnnotatedTokens;
+
+    /**
+     * Threads labeling the sequences of a document, 1 labels sequentially, 0 uses all processors
+     */
+    @Value("${prediction.threads:1}")
+    int threads;
+
     public TcInceptionRecommenderPredictor() throws Exception
     {
 
@@ -48,9 +59,42 @@ public class TcInceptionRecommenderPredictor
         pwm = new PredictionWithModel(resultOut);
     }
 
+    /**
+     * @return a new predictor with the same settings, which works in a result folder of its own
+     */
+    TcInceptionRecommenderPredictor copy() throws Exception
+    {
+        TcInceptionRecommenderPredictor copy = new TcInceptionRecommenderPredictor();
+        copy.skipAnnotatedTokens = skipAnnotatedTokens;
+        copy.threads = threads;
+        return copy;
+    }
+
+    @Override
+    public Predictor newInstance() throws Exception
+    {
+        return copy();
+    }
+
+    @Override
+    public void release()
+    {
+        FileUtils.deleteQuietly(resultOut);
+    }
+
+    @Value("${prediction.sentenceMemo.maxSentences:100000}")
+    void setSentenceMemoSize(int maxSentences)
+    {
+        SentenceLabelMemo.setMaximumSize(maxSentences);
+    }
+
     @Override
     public void predict(InceptionRequest req, File model, String mode) throws Exception
     {
+        pwm.setRange(req.getRange() != null ? req.getRange().toPredictionRange() : null);
+        pwm.setSkipAnnotatedTokens(skipAnnotatedTokens);
+        pwm.setCrossSentence(req.isCrossSentence());
+        pwm.setThreads(threads);
         pwm.run(req.getDocuments(), req.getTypeSystem(), req.getLayer(), req.getFeature(), model, mode);
     }
 
@@ -23,10 +23,16 @@ import java.io.File;
 import org.apache.commons.io.FileUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import de.unidue.ltl.recommender.core.train.TrainNewModel;
+import de.unidue.ltl.recommender.core.train.TrainingBudget;
+import de.unidue.ltl.recommender.core.train.TrainingFingerprint;
+import de.unidue.ltl.recommender.core.train.TrainingProfile;
 import de.unidue.ltl.recommender.server.http.InceptionRequest;
+import de.unidue.ltl.recommender.server.repository.Repository;
 import de.unidue.ltl.recommender.server.train.InceptionRecommenderModel;
 import de.unidue.ltl.recommender.server.train.Trainer;
 
@@ -37,6 +43,39 @@ public class TcInceptionRecommenderTrainer
 
     private static final Logger logger = LoggerFactory.getLogger(TcInceptionRecommenderTrainer.class.getName());
 
+    @Autowired
+    Repository repository;
+
+    @Value("${training.characterNGramBuckets:0}")
+    int characterNGramBuckets;
+
+    @Value("${training.profile:balanced}")
+    String defaultProfile;
+
+    @Value("${training.budget.maxTokens:0}")
+    int budgetMaxTokens;
+
+    @Value("${training.budget.maxSeconds:0}")
+    int budgetMaxSeconds;
+
+    @Value("${training.budget.maxIterations:50}")
+    int budgetMaxIterations;
+
+    /**
+     * Maximum number of tokens of a sequence, longer sentences are split into several sequences.
+     * Recorded with the model and applied at prediction time, 0 means no limit, which also
+     * disables packing sentences into one sequence.
+     */
+    @Value("${sequence.maxLength:200}")
+    int maxSequenceLength;
+
+    /**
+     * Training throughput in tokens per second, initialized from the configuration and
+     * refined with every finished training as exponential moving average
+     */
+    @Value("${training.budget.tokensPerSecond:2000}")
+    volatile double tokensPerSecond;
+
     @Override
     public InceptionRecommenderModel train(InceptionRequest req) throws Exception
     {
@@ -47,17 +86,83 @@ public class TcInceptionRecommenderTrainer
         String anchoringMode = req.getAnchoringMode();
 
         long timestamps = System.currentTimeMillis();
-        File modelLocation = new File(FileUtils.getTempDirectory(), layer);
+        // trained on the file system of the repository, the check-in is a rename then
+        File modelLocation = repository.createStagingFolder(layer);
 
         logger.info("Will store model temporary at [" + modelLocation.getAbsolutePath() + "]");
 
+        String fingerprint = req.getFingerprint() != null ? req.getFingerprint()
+                : fingerprint(req);
+
         TrainNewModel model = new TrainNewModel();
-        model.run(documents, typeSystem, layer, feature, modelLocation, anchoringMode);
+        model.setCharacterNGramHashBuckets(characterNGramBuckets(req));
+        model.setProfile(profile(req));
+        model.setBudget(budget());
+        model.setMaxSequenceLength(maxSequenceLength);
+        model.setCrossSentence(req.isCrossSentence());
+        long start = System.currentTimeMillis();
+        try {
+            model.run(documents, typeSystem, layer, feature, modelLocation, anchoringMode);
+        }
+        catch (Exception e) {
+            FileUtils.deleteQuietly(modelLocation);
+            throw e;
+        }
+        updateThroughput(model.getTrainedTokens(), System.currentTimeMillis() - start);
 
         logger.info("Will create model with id [" + layer + "] at location ["
                 + modelLocation.getAbsolutePath() + "]");
 
-        return new TcModel(layer, timestamps, modelLocation);
+        return new TcModel(layer, timestamps, modelLocation, fingerprint);
+    }
+
+    /**
+     * The budget only contributes if it truncates the training data. A wall-clock budget is
+     * converted with the throughput estimate, which changes with every training, so unchanged
+     * input exceeding it is trained again.
+     */
+    @Override
+    public String fingerprint(InceptionRequest req) throws Exception
+    {
+        String configuration = "profile=" + profile(req) + ";characterNGramBuckets="
+                + characterNGramBuckets(req) + ";sequence=" + maxSequenceLength + "/"
+                + req.isCrossSentence();
+        return TrainingFingerprint.compute(req.getDocuments(), req.getTypeSystem(),
+                req.getLayer(), req.getFeature(), req.getAnchoringMode(), configuration,
+                budget());
+    }
+
+    /**
+     * @return the buckets of the request if set, otherwise of the server configuration
+     */
+    private int characterNGramBuckets(InceptionRequest req)
+    {
+        return req.getCharacterNGramBuckets() != null ? req.getCharacterNGramBuckets()
+                : characterNGramBuckets;
+    }
+
+    private TrainingBudget budget()
+    {
+        return new TrainingBudget(budgetMaxTokens, budgetMaxSeconds, tokensPerSecond,
+                budgetMaxIterations);
+    }
+
+    private TrainingProfile profile(InceptionRequest req)
+    {
+        return TrainingProfile
+                .fromName(req.getProfile() != null ? req.getProfile() : defaultProfile);
+    }
+
+    private void updateThroughput(long tokens, long millis)
+    {
+        if (tokens <= 0 || millis <= 0) {
+            return;
+        }
+        double observed = tokens * 1000.0 / millis;
+        tokensPerSecond = 0.7 * tokensPerSecond + 0.3 * observed;
+        logger.debug("Trained on [" + tokens + "] tokens in [" + millis
+                + "] ms, estimated throughput is now [" + String.format("%.1f", tokensPerSecond)
+                + "] tokens per second");
     }
 
 }
@@ -27,12 +27,19 @@ public class TcModel implements InceptionRecommenderModel
     private String id;
     private long timestamp;
     private File modelLocation;
+    private String fingerprint;
 
     public TcModel(String id, long timestamp, File modelLocation)
+    {
+        this(id, timestamp, modelLocation, null);
+    }
+
+    public TcModel(String id, long timestamp, File modelLocation, String fingerprint)
     {
         this.id = id;
         this.timestamp = timestamp;
         this.modelLocation = modelLocation;
+        this.fingerprint = fingerprint;
     }
 
     @Override
@@ -53,4 +60,10 @@ public class TcModel implements InceptionRecommenderModel
         return modelLocation;
     }
 
+    @Override
+    public String getFingerprint()
+    {
+        return fingerprint;
+    }
+
 }
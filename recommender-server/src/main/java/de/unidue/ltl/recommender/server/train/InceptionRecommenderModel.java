@@ -43,4 +43,12 @@ public interface InceptionRecommenderModel
      */
     File getFileSystemLocation(); 
 
+    /**
+     * Hash of the training input the model was created from, see
+     * {@link Trainer#fingerprint(de.unidue.ltl.recommender.server.http.InceptionRequest)}
+     * @return
+     *      the fingerprint or null if unknown
+     */
+    String getFingerprint();
+
 }
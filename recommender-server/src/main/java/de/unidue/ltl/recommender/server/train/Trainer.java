@@ -23,4 +23,16 @@ import de.unidue.ltl.recommender.server.http.InceptionRequest;
 public interface Trainer
 {
     InceptionRecommenderModel train(InceptionRequest req) throws Exception;
+
+    /**
+     * Computes a canonical hash of everything a training on the request depends on. Two requests
+     * with the same fingerprint result in the same model.
+     * 
+     * @param req
+     *            the training request
+     * @return the fingerprint
+     * @throws Exception
+     *             in case of an error
+     */
+    String fingerprint(InceptionRequest req) throws Exception;
 }
@@ -0,0 +1,207 @@
+/*******************************************************************************
+ * Copyright 2018
+ * Language Technology Lab
+ * University of Duisburg-Essen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package de.unidue.ltl.recommender.server.tc.prediction;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.uima.cas.Feature;
+import org.apache.uima.cas.Type;
+import org.apache.uima.cas.impl.XmiCasDeserializer;
+import org.apache.uima.cas.text.AnnotationFS;
+import org.apache.uima.fit.factory.JCasFactory;
+import org.apache.uima.fit.util.CasUtil;
+import org.apache.uima.jcas.JCas;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.io.Files;
+
+import de.unidue.ltl.recommender.core.predict.PredictionWithModel;
+import de.unidue.ltl.recommender.repository.ModelPack;
+import de.unidue.ltl.recommender.repository.ModelPackWriter;
+import de.unidue.ltl.recommender.repository.WeightQuantization;
+import de.unidue.ltl.recommender.server.http.InceptionRequest;
+import de.unidue.ltl.recommender.server.http.PredictionRequest;
+
+/**
+ * Compares the predictions of a model with those of its quantized version on a held-out
+ * prediction request and reports how many predicted labels agree. Not run as part of the build,
+ * start with {@link #main(String[])} from the test class path.
+ *
+ * <pre>
+ * QuantizedModelEvaluation &lt;modelFolder&gt; &lt;predictionRequest.json&gt; [FLOAT16|INT8]
+ * </pre>
+ */
+public class QuantizedModelEvaluation
+{
+    public static void main(String[] args) throws Exception
+    {
+        if (args.length < 2) {
+            System.err.println("Usage: " + QuantizedModelEvaluation.class.getSimpleName()
+                    + " <modelFolder> <predictionRequest.json> [FLOAT16|INT8]");
+            System.exit(1);
+        }
+
+        File modelFolder = new File(args[0]);
+        PredictionRequest request = new ObjectMapper().readValue(new File(args[1]),
+                PredictionRequest.class);
+        WeightQuantization quantization = args.length > 2 ? WeightQuantization.valueOf(args[2])
+                : WeightQuantization.INT8;
+
+        System.out.println(evaluate(modelFolder, request, quantization));
+    }
+
+    public static Result evaluate(File modelFolder, PredictionRequest request,
+            WeightQuantization quantization)
+        throws Exception
+    {
+        File workspace = Files.createTempDir();
+        try {
+            File fullPack = new File(workspace, "full.pack");
+            ModelPackWriter.write(modelFolder, fullPack, WeightQuantization.NONE);
+            File quantizedPack = new File(workspace, "quantized.pack");
+            ModelPackWriter.write(modelFolder, quantizedPack, quantization);
+            File quantizedModel = new File(workspace, "quantizedModel");
+            ModelPack.open(quantizedPack).unpack(quantizedModel);
+
+            InceptionRequest req = request.toInceptionRequest();
+            File typeSystem = new File(workspace, "typesystem.xml");
+            FileUtils.writeStringToFile(typeSystem, req.getTypeSystem(), UTF_8);
+
+            List<Map<String, String>> reference = predict(req, modelFolder, typeSystem,
+                    new File(workspace, "referenceOut"));
+            List<Map<String, String>> quantized = predict(req, quantizedModel, typeSystem,
+                    new File(workspace, "quantizedOut"));
+
+            int predictions = 0;
+            int agreeing = 0;
+            for (int i = 0; i < req.getDocuments().length; i++) {
+                Set<String> existing = labels(req.getDocuments()[i], typeSystem, req).keySet();
+                Map<String, String> r = reference.get(i);
+                Map<String, String> q = quantized.get(i);
+                r.keySet().removeAll(existing);
+                q.keySet().removeAll(existing);
+
+                Set<String> spans = new HashSet<>(r.keySet());
+                spans.addAll(q.keySet());
+                predictions += spans.size();
+                for (String span : spans) {
+                    if (r.containsKey(span) && r.get(span).equals(q.get(span))) {
+                        agreeing++;
+                    }
+                }
+            }
+
+            return new Result(quantization, predictions, agreeing, fullPack.length(),
+                    quantizedPack.length());
+        }
+        finally {
+            FileUtils.deleteQuietly(workspace);
+        }
+    }
+
+    /**
+     * @return the predicted labels by span for each document of the request
+     */
+    private static List<Map<String, String>> predict(InceptionRequest req, File model,
+            File typeSystem, File resultFolder)
+        throws Exception
+    {
+        resultFolder.mkdirs();
+        PredictionWithModel pwm = new PredictionWithModel(resultFolder);
+        pwm.run(req.getDocuments(), req.getTypeSystem(), req.getLayer(), req.getFeature(), model,
+                req.getAnchoringMode());
+
+        List<Map<String, String>> labels = new ArrayList<>();
+        for (int i = 0; i < req.getDocuments().length; i++) {
+            File result = new File(resultFolder, "cas_" + i + ".txt");
+            labels.add(labels(FileUtils.readFileToString(result, UTF_8), typeSystem, req));
+        }
+        return labels;
+    }
+
+    private static Map<String, String> labels(String xmi, File typeSystem, InceptionRequest req)
+        throws Exception
+    {
+        JCas jcas = JCasFactory.createJCasFromPath(typeSystem.getAbsolutePath());
+        try (InputStream is = IOUtils.toInputStream(xmi, UTF_8)) {
+            XmiCasDeserializer.deserialize(is, jcas.getCas(), true);
+        }
+
+        Type type = CasUtil.getAnnotationType(jcas.getCas(), req.getLayer());
+        Feature feature = type.getFeatureByBaseName(req.getFeature());
+        Map<String, String> labels = new HashMap<>();
+        for (AnnotationFS a : CasUtil.select(jcas.getCas(), type)) {
+            labels.put(a.getBegin() + "-" + a.getEnd(), a.getFeatureValueAsString(feature));
+        }
+        return labels;
+    }
+
+    public static class Result
+    {
+        private final WeightQuantization quantization;
+        private final int predictions;
+        private final int agreeing;
+        private final long fullSize;
+        private final long quantizedSize;
+
+        Result(WeightQuantization quantization, int predictions, int agreeing, long fullSize,
+                long quantizedSize)
+        {
+            this.quantization = quantization;
+            this.predictions = predictions;
+            this.agreeing = agreeing;
+            this.fullSize = fullSize;
+            this.quantizedSize = quantizedSize;
+        }
+
+        public double getAgreement()
+        {
+            return predictions == 0 ? 1.0 : agreeing / (double) predictions;
+        }
+
+        public int getPredictions()
+        {
+            return predictions;
+        }
+
+        public int getAgreeing()
+        {
+            return agreeing;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format(
+                    "Quantization [%s]: [%d/%d] labels agree (%.2f%%), model size [%d] -> [%d] bytes",
+                    quantization, agreeing, predictions, 100 * getAgreement(), fullSize,
+                    quantizedSize);
+        }
+    }
+}